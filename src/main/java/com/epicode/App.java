@@ -5,7 +5,10 @@ import com.epicode.spesepersonali.exception.ValidationException;
 import com.epicode.spesepersonali.iterator.TransactionIterator;
 import com.epicode.spesepersonali.model.Category;
 import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.repository.LoadMode;
+import com.epicode.spesepersonali.repository.TransactionRepository;
 import com.epicode.spesepersonali.service.ExpenseService;
+import com.epicode.spesepersonali.strategy.AnalyticsReport;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -26,7 +29,8 @@ public class App {
     private final Scanner scanner;
     
     public App() throws DataAccessException {
-        this.expenseService = new ExpenseService("data/transactions.csv");
+        this.expenseService = new ExpenseService(
+                new TransactionRepository("data/transactions.csv", LoadMode.PARALLEL));
         this.scanner = new Scanner(System.in);
         logger.info("Applicazione avviata");
     }
@@ -87,6 +91,12 @@ public class App {
         }
         
         scanner.close();
+        
+        try {
+            expenseService.close();
+        } catch (DataAccessException e) {
+            System.out.println("Errore: " + e.getMessage());
+        }
     }
     
     private void showMenu() {
@@ -189,8 +199,10 @@ public class App {
     }
     
     private void showStats() {
-        Map<String, Object> totals = expenseService.getTotals();
-        Map<String, Object> categories = expenseService.getCategorySummary();
+        // Tutte le statistiche in una sola chiamata
+        AnalyticsReport report = expenseService.getStatistics();
+        Map<String, Object> totals = report.getResults(expenseService.getTotalsStrategy());
+        Map<String, Object> categories = report.getResults(expenseService.getCategoryStrategy());
         
         System.out.println("\n--- STATISTICHE ---");
         System.out.printf("Totale entrate: %.2f€%n", (Double) totals.get("totaleEntrate"));
@@ -0,0 +1,51 @@
+package com.epicode.spesepersonali.budget;
+
+import com.epicode.spesepersonali.model.Amounts;
+
+import java.time.YearMonth;
+
+/**
+ * Una regola che nel mese e' appena stata superata (exceeded) o e' appena rientrata
+ */
+public class BudgetAlert {
+    
+    private final BudgetRule rule;
+    private final YearMonth month;
+    private final long spentCents;
+    private final long limitCents;
+    private final boolean exceeded;
+    
+    BudgetAlert(BudgetRule rule, YearMonth month, long spentCents, long limitCents, boolean exceeded) {
+        this.rule = rule;
+        this.month = month;
+        this.spentCents = spentCents;
+        this.limitCents = limitCents;
+        this.exceeded = exceeded;
+    }
+    
+    public BudgetRule getRule() {
+        return rule;
+    }
+    
+    public YearMonth getMonth() {
+        return month;
+    }
+    
+    public double getSpent() {
+        return Amounts.toDouble(spentCents);
+    }
+    
+    public double getLimit() {
+        return Amounts.toDouble(limitCents);
+    }
+    
+    public boolean isExceeded() {
+        return exceeded;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("Budget %s %s in %s: %.2f€ su %.2f€",
+                rule.getName(), exceeded ? "superato" : "rientrato", month, getSpent(), getLimit());
+    }
+}
@@ -0,0 +1,11 @@
+package com.epicode.spesepersonali.budget;
+
+/**
+ * Riceve gli avvisi di budget: uno quando una regola viene superata in un mese e uno
+ * quando rientra, non uno per ogni transazione
+ */
+@FunctionalInterface
+public interface BudgetListener {
+    
+    void onBudgetAlert(BudgetAlert alert);
+}
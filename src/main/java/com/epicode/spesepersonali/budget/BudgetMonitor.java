@@ -0,0 +1,210 @@
+package com.epicode.spesepersonali.budget;
+
+import com.epicode.spesepersonali.model.Category;
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.model.TransactionType;
+import com.epicode.spesepersonali.strategy.MonthlyTimeSeries;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controlla le regole di budget a ogni transazione.
+ *
+ * Le entrate e spese totali per mese non sono sue: legge la serie mensile che il
+ * chiamante tiene gia' aggiornata (i totali del servizio), che deve contenere la
+ * transazione prima di add, remove o update. Tiene invece contatori per mese solo per
+ * le categorie con una regola, comprese le spese delle sottocategorie: vengono calcolati
+ * da categorySpending quando arriva la prima regola della categoria e poi aggiornati
+ * a ogni transazione. Senza regole di categoria non c'e' niente da contare.
+ *
+ * Una transazione controlla solo le regole collegate: il costo non dipende dal numero
+ * di transazioni ne' dalle altre regole. Gli avvisi partono solo quando lo stato di una
+ * regola in un mese cambia. Non e' thread-safe.
+ */
+public class BudgetMonitor {
+    
+    private static final Logger logger = Logger.getLogger(BudgetMonitor.class.getName());
+    
+    // Entrate e spese totali per mese, aggiornate da chi chiama
+    private final MonthlyTimeSeries ledger;
+    // Spese per mese di una categoria e delle sue sottocategorie, calcolate da zero
+    private final Function<Category, MonthlyTimeSeries> categorySpending;
+    // Solo per le categorie con almeno una regola
+    private final Map<Category, MonthlyTimeSeries> spending = new HashMap<>();
+    
+    private final Map<Category, List<RuleState>> categoryRules = new HashMap<>();
+    private final List<RuleState> ledgerRules = new ArrayList<>();
+    private final List<BudgetListener> listeners = new CopyOnWriteArrayList<>();
+    
+    public BudgetMonitor(MonthlyTimeSeries ledger, Function<Category, MonthlyTimeSeries> categorySpending) {
+        this.ledger = ledger;
+        this.categorySpending = categorySpending;
+    }
+    
+    public void addListener(BudgetListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeListener(BudgetListener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * Aggiunge una regola. I mesi gia' oltre il limite vengono segnati senza avvisi:
+     * gli avvisi riguardano solo i cambiamenti successivi.
+     */
+    public void addRule(BudgetRule rule) {
+        RuleState state = new RuleState(rule);
+        if (rule.getCategory() != null) {
+            categoryRules.computeIfAbsent(rule.getCategory(), c -> new ArrayList<>()).add(state);
+            spending.computeIfAbsent(rule.getCategory(), categorySpending);
+        } else {
+            ledgerRules.add(state);
+        }
+        markExceeded(state);
+    }
+    
+    // Segna senza avvisi i mesi in cui la regola e' gia' oltre il limite
+    private void markExceeded(RuleState state) {
+        BudgetRule rule = state.rule;
+        MonthlyTimeSeries series = rule.getCategory() != null ? spending.get(rule.getCategory()) : ledger;
+        if (series.getFirstMonth() != null) {
+            for (YearMonth month = series.getFirstMonth(); !month.isAfter(series.getLastMonth()); month = month.plusMonths(1)) {
+                if (rule.isExceeded(series.getExpenseCents(month), ledger.getIncomeCents(month))) {
+                    state.exceeded.add(month);
+                }
+            }
+        }
+    }
+    
+    public List<BudgetRule> getRules() {
+        List<BudgetRule> rules = new ArrayList<>();
+        for (List<RuleState> states : categoryRules.values()) {
+            for (RuleState state : states) {
+                rules.add(state.rule);
+            }
+        }
+        for (RuleState state : ledgerRules) {
+            rules.add(state.rule);
+        }
+        return rules;
+    }
+    
+    // Vero se la regola (gia' aggiunta) e' oltre il limite nel mese
+    public boolean isExceeded(BudgetRule rule, YearMonth month) {
+        return getSpentCents(rule, month) > rule.getLimitCents(ledger.getIncomeCents(month));
+    }
+    
+    // La transazione e' gia' nella serie mensile del chiamante
+    public void add(Transaction transaction) {
+        checkRules(transaction, count(transaction, 1));
+    }
+    
+    // La transazione e' gia' stata tolta dalla serie mensile del chiamante
+    public void remove(Transaction transaction) {
+        checkRules(transaction, count(transaction, -1));
+    }
+    
+    // Prima aggiorna tutti i contatori: una modifica che resta oltre il limite non manda avvisi
+    public void update(Transaction previous, Transaction updated) {
+        YearMonth previousMonth = count(previous, -1);
+        YearMonth updatedMonth = count(updated, 1);
+        checkRules(previous, previousMonth);
+        checkRules(updated, updatedMonth);
+    }
+    
+    // Ricalcola i contatori delle categorie con regole (es. se cambia l'albero delle categorie), senza avvisi
+    public void rebuild() {
+        if (categoryRules.isEmpty()) {
+            return;
+        }
+        spending.clear();
+        for (Map.Entry<Category, List<RuleState>> entry : categoryRules.entrySet()) {
+            spending.put(entry.getKey(), categorySpending.apply(entry.getKey()));
+            for (RuleState state : entry.getValue()) {
+                state.exceeded.clear();
+                markExceeded(state);
+            }
+        }
+    }
+    
+    // Solo le regole della categoria della transazione, dei suoi gruppi e quelle generali
+    private void checkRules(Transaction transaction, YearMonth month) {
+        if (transaction.getType() == TransactionType.EXPENSE) {
+            for (Category category = transaction.getCategory(); category != null; category = category.getParent()) {
+                List<RuleState> rules = categoryRules.get(category);
+                if (rules != null) {
+                    check(rules, month);
+                }
+            }
+        }
+        check(ledgerRules, month);
+    }
+    
+    // Aggiorna i contatori delle categorie con regole e restituisce il mese della transazione
+    private YearMonth count(Transaction transaction, int sign) {
+        YearMonth month = YearMonth.from(transaction.getDate());
+        if (transaction.getType() == TransactionType.EXPENSE && !spending.isEmpty()) {
+            long cents = sign * transaction.getAmountCents();
+            for (Category category = transaction.getCategory(); category != null; category = category.getParent()) {
+                MonthlyTimeSeries series = spending.get(category);
+                if (series != null) {
+                    series.add(month, false, cents);
+                }
+            }
+        }
+        return month;
+    }
+    
+    private void check(List<RuleState> rules, YearMonth month) {
+        long incomeCents = ledger.getIncomeCents(month);
+        for (RuleState state : rules) {
+            long spentCents = getSpentCents(state.rule, month);
+            boolean exceeded = state.rule.isExceeded(spentCents, incomeCents);
+            boolean changed = exceeded ? state.exceeded.add(month) : state.exceeded.remove(month);
+            if (changed) {
+                fire(new BudgetAlert(state.rule, month, spentCents, state.rule.getLimitCents(incomeCents), exceeded));
+            }
+        }
+    }
+    
+    private long getSpentCents(BudgetRule rule, YearMonth month) {
+        if (rule.getCategory() == null) {
+            return ledger.getExpenseCents(month);
+        }
+        MonthlyTimeSeries series = spending.get(rule.getCategory());
+        return series != null ? series.getExpenseCents(month) : 0;
+    }
+    
+    // Un listener che fallisce non deve bloccare la registrazione della transazione
+    private void fire(BudgetAlert alert) {
+        logger.info(alert.toString());
+        for (BudgetListener listener : listeners) {
+            try {
+                listener.onBudgetAlert(alert);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Errore nel listener di budget", e);
+            }
+        }
+    }
+    
+    // Regola e mesi in cui e' oltre il limite
+    private static final class RuleState {
+        private final BudgetRule rule;
+        private final Set<YearMonth> exceeded = new HashSet<>();
+        
+        RuleState(BudgetRule rule) {
+            this.rule = rule;
+        }
+    }
+}
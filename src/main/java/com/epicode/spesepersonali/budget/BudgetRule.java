@@ -0,0 +1,71 @@
+package com.epicode.spesepersonali.budget;
+
+import com.epicode.spesepersonali.model.Amounts;
+import com.epicode.spesepersonali.model.Category;
+
+/**
+ * Regola di budget mensile, es. "Cibo > 400€" o "spese > entrate".
+ * Il confronto usa solo i contatori del mese, senza rileggere le transazioni.
+ */
+public final class BudgetRule {
+    
+    private final String name;
+    private final Category category;
+    private final long limitCents;
+    private final boolean againstIncome;
+    
+    private BudgetRule(String name, Category category, long limitCents, boolean againstIncome) {
+        this.name = name;
+        this.category = category;
+        this.limitCents = limitCents;
+        this.againstIncome = againstIncome;
+    }
+    
+    // Spese del mese nella categoria (comprese le sottocategorie) oltre il limite
+    public static BudgetRule categoryLimit(Category category, double monthlyLimit) {
+        long limitCents = checkLimit(monthlyLimit);
+        return new BudgetRule(category.getName() + " > " + Amounts.format(limitCents) + "€/mese", category, limitCents, false);
+    }
+    
+    // Spese totali del mese oltre il limite
+    public static BudgetRule monthlyLimit(double monthlyLimit) {
+        long limitCents = checkLimit(monthlyLimit);
+        return new BudgetRule("Spese > " + Amounts.format(limitCents) + "€/mese", null, limitCents, false);
+    }
+    
+    // Spese totali del mese oltre le entrate dello stesso mese
+    public static BudgetRule expensesOverIncome() {
+        return new BudgetRule("Spese > entrate del mese", null, 0, true);
+    }
+    
+    // Il limite in centesimi, se positivo
+    private static long checkLimit(double monthlyLimit) {
+        if (!(monthlyLimit > 0)) {
+            throw new IllegalArgumentException("Il limite deve essere positivo: " + monthlyLimit);
+        }
+        return Amounts.toCents(monthlyLimit);
+    }
+    
+    // spentCents: spese del mese nella categoria (tutte se la regola non ha categoria)
+    boolean isExceeded(long spentCents, long incomeCents) {
+        return spentCents > getLimitCents(incomeCents);
+    }
+    
+    long getLimitCents(long incomeCents) {
+        return againstIncome ? incomeCents : limitCents;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    // Categoria controllata, null se la regola riguarda tutte le spese
+    public Category getCategory() {
+        return category;
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -1,5 +1,6 @@
 package com.epicode.spesepersonali.factory;
 
+import com.epicode.spesepersonali.model.Amounts;
 import com.epicode.spesepersonali.model.Category;
 import com.epicode.spesepersonali.model.Transaction;
 import com.epicode.spesepersonali.model.TransactionType;
@@ -42,12 +43,24 @@ public class TransactionFactory {
         return new Transaction(TransactionType.INCOME, amount, description, category, date);
     }
     
+    // Modifica una transazione esistente mantenendo ID e tipo
+    public static Transaction update(Transaction original, double amount, String description, Category category, LocalDate date) throws ValidationException {
+        validateTransactionData(amount, description, category);
+        
+        return original.withDetails(amount, description, category, date);
+    }
+    
     // Controlla che i dati siano ok
     private static void validateTransactionData(double amount, String description, Category category) throws ValidationException {
         if (amount <= 0) {
             throw new ValidationException("L'importo deve essere positivo");
         }
         
+        // Gli importi vengono salvati in centesimi
+        if (Amounts.toCents(amount) <= 0) {
+            throw new ValidationException("L'importo deve essere di almeno un centesimo");
+        }
+        
         if (description == null || description.trim().isEmpty()) {
             throw new ValidationException("La descrizione non può essere vuota");
         }
@@ -0,0 +1,67 @@
+package com.epicode.spesepersonali.iterator;
+
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.store.TransactionColumns;
+
+import java.util.Arrays;
+
+/**
+ * Vede le transazioni per data (piu' recenti prima) leggendo da un archivio a colonne.
+ *
+ * Ordina solo un array di chiavi primitive (giorno e riga) e crea la Transaction
+ * di una riga soltanto quando viene restituita da next().
+ */
+public class ColumnsByDateIterator implements TransactionIterator {
+    
+    private final TransactionColumns columns;
+    private final int[] rows;
+    private int position;
+    
+    public ColumnsByDateIterator(TransactionColumns columns) {
+        this.columns = columns;
+        
+        // Chiave: giorno cambiato di segno nei 32 bit alti, riga nei bassi.
+        // In ordine crescente vengono prima le date recenti, a parita' di data l'ordine originale.
+        int size = columns.size();
+        long[] keys = new long[size];
+        for (int row = 0; row < size; row++) {
+            keys[row] = ((long) -columns.getEpochDay(row) << 32) | row;
+        }
+        Arrays.sort(keys);
+        
+        this.rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = (int) keys[i];
+        }
+        this.position = 0;
+    }
+    
+    @Override
+    public boolean hasNext() {
+        return position < rows.length;
+    }
+    
+    @Override
+    public Transaction next() {
+        if (!hasNext()) {
+            return null;
+        }
+        
+        return columns.getTransaction(rows[position++]);
+    }
+    
+    @Override
+    public void reset() {
+        position = 0;
+    }
+    
+    @Override
+    public int getCurrentPosition() {
+        return position;
+    }
+    
+    @Override
+    public int getTotalCount() {
+        return rows.length;
+    }
+}
@@ -0,0 +1,143 @@
+package com.epicode.spesepersonali.iterator;
+
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.store.TransactionColumns;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * Indice per data: giorni (epoch day) e ID in due array ordinati per giorno,
+ * a parita' di giorno nell'ordine di inserimento.
+ *
+ * Gli estremi di un intervallo si trovano con una ricerca binaria, quindi leggere
+ * k transazioni tra due date costa O(log n + k). Aggiungere una transazione con la
+ * data piu' recente (il caso normale) non sposta niente; le altre modifiche spostano
+ * la coda degli array con una copia di memoria.
+ */
+public class DateIndex {
+    
+    private int[] epochDays = new int[16];
+    private long[] ids = new long[16];
+    private int size;
+    
+    // Ricostruisce l'indice da una lista, senza inserimenti uno alla volta
+    public void rebuild(List<Transaction> transactions) {
+        int count = transactions.size();
+        long[] keys = new long[count];
+        if (transactions instanceof TransactionColumns) {
+            TransactionColumns columns = (TransactionColumns) transactions;
+            for (int row = 0; row < count; row++) {
+                keys[row] = key(columns.getEpochDay(row), row);
+            }
+        } else {
+            for (int row = 0; row < count; row++) {
+                keys[row] = key((int) transactions.get(row).getDate().toEpochDay(), row);
+            }
+        }
+        Arrays.sort(keys);
+        
+        epochDays = new int[Math.max(16, count)];
+        ids = new long[epochDays.length];
+        for (int i = 0; i < count; i++) {
+            int row = (int) keys[i];
+            epochDays[i] = (int) (keys[i] >> 32);
+            ids[i] = transactions instanceof TransactionColumns
+                    ? ((TransactionColumns) transactions).getId(row)
+                    : transactions.get(row).getIdValue();
+        }
+        size = count;
+    }
+    
+    public void add(LocalDate date, long id) {
+        int epochDay = (int) date.toEpochDay();
+        int position = upperBound(epochDay);
+        if (size == epochDays.length) {
+            epochDays = Arrays.copyOf(epochDays, size * 2);
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        if (position < size) {
+            System.arraycopy(epochDays, position, epochDays, position + 1, size - position);
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+        }
+        epochDays[position] = epochDay;
+        ids[position] = id;
+        size++;
+    }
+    
+    // Cerca l'ID solo tra le righe dello stesso giorno
+    public boolean remove(LocalDate date, long id) {
+        int epochDay = (int) date.toEpochDay();
+        for (int i = lowerBound(epochDay); i < size && epochDays[i] == epochDay; i++) {
+            if (ids[i] == id) {
+                System.arraycopy(epochDays, i + 1, epochDays, i, size - i - 1);
+                System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    // Prima posizione con data >= from (0 se from e' null)
+    public int startOf(LocalDate from) {
+        return from == null ? 0 : lowerBound((int) from.toEpochDay());
+    }
+    
+    // Prima posizione con data > to (size se to e' null)
+    public int endOf(LocalDate to) {
+        return to == null ? size : upperBound((int) to.toEpochDay());
+    }
+    
+    public long getId(int position) {
+        return ids[position];
+    }
+    
+    public LocalDate getDate(int position) {
+        return LocalDate.ofEpochDay(epochDays[position]);
+    }
+    
+    // Transazioni tra from e to compresi, dalla piu' recente; lookup trova la transazione dall'ID
+    public DateRangeIterator iterator(LocalDate from, LocalDate to, LongFunction<Transaction> lookup) {
+        return new DateRangeIterator(this, startOf(from), endOf(to), lookup);
+    }
+    
+    private int lowerBound(int epochDay) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (epochDays[middle] < epochDay) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    private int upperBound(int epochDay) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (epochDays[middle] <= epochDay) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    // Giorno nei 32 bit alti, riga nei bassi: in ordine crescente a parita' di giorno resta l'ordine della lista
+    private static long key(int epochDay, int row) {
+        return ((long) epochDay << 32) | row;
+    }
+}
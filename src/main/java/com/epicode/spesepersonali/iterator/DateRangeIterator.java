@@ -0,0 +1,58 @@
+package com.epicode.spesepersonali.iterator;
+
+import com.epicode.spesepersonali.model.Transaction;
+
+import java.util.function.LongFunction;
+
+/**
+ * Vede le transazioni di un intervallo di date (piu' recenti prima) scorrendo una
+ * parte del DateIndex: niente copie ne' ordinamenti, la transazione viene cercata
+ * per ID solo quando viene restituita da next().
+ *
+ * L'indice non deve cambiare mentre l'iteratore e' in uso.
+ */
+public class DateRangeIterator implements TransactionIterator {
+    
+    private final DateIndex index;
+    private final int start;
+    private final int end;
+    private final LongFunction<Transaction> lookup;
+    private int position;
+    
+    DateRangeIterator(DateIndex index, int start, int end, LongFunction<Transaction> lookup) {
+        this.index = index;
+        this.start = start;
+        this.end = Math.max(start, end);
+        this.lookup = lookup;
+        this.position = 0;
+    }
+    
+    @Override
+    public boolean hasNext() {
+        return position < end - start;
+    }
+    
+    @Override
+    public Transaction next() {
+        if (!hasNext()) {
+            return null;
+        }
+        
+        return lookup.apply(index.getId(end - 1 - position++));
+    }
+    
+    @Override
+    public void reset() {
+        position = 0;
+    }
+    
+    @Override
+    public int getCurrentPosition() {
+        return position;
+    }
+    
+    @Override
+    public int getTotalCount() {
+        return end - start;
+    }
+}
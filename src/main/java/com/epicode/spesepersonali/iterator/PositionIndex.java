@@ -0,0 +1,126 @@
+package com.epicode.spesepersonali.iterator;
+
+import java.util.Arrays;
+
+/**
+ * Indice ID -> posizione nella lista, senza oggetti per elemento: hash aperto con
+ * scansione lineare su due array (chiavi long e posizioni int).
+ *
+ * Le cancellazioni spostano indietro le chiavi successive della stessa sequenza,
+ * quindi non restano segnaposto e le ricerche non rallentano col tempo.
+ */
+public class PositionIndex {
+
+    public static final int NOT_FOUND = -1;
+
+    // Posizione + 1 nella tabella, 0 = libero
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    public PositionIndex() {
+        this(16);
+    }
+
+    public PositionIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+    }
+
+    // Posizione dell'ID o NOT_FOUND
+    public int get(long id) {
+        int mask = keys.length - 1;
+        for (int slot = slot(id, mask); values[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == id) {
+                return values[slot] - 1;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    public void put(long id, int position) {
+        if (position < 0) {
+            throw new IllegalArgumentException("Posizione non valida: " + position);
+        }
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int slot = slot(id, mask);
+        while (values[slot] != 0) {
+            if (keys[slot] == id) {
+                values[slot] = position + 1;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = id;
+        values[slot] = position + 1;
+        size++;
+    }
+
+    // Toglie l'ID e restituisce la sua posizione, NOT_FOUND se mancava
+    public int remove(long id) {
+        int mask = keys.length - 1;
+        int slot = slot(id, mask);
+        while (values[slot] != 0 && keys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        if (values[slot] == 0) {
+            return NOT_FOUND;
+        }
+        int position = values[slot] - 1;
+
+        // Riporta indietro le chiavi che non sarebbero piu' raggiungibili dal loro slot
+        int hole = slot;
+        for (int next = (hole + 1) & mask; values[next] != 0; next = (next + 1) & mask) {
+            int home = slot(keys[next], mask);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        values[hole] = 0;
+        size--;
+        return position;
+    }
+
+    public boolean containsKey(long id) {
+        return get(id) != NOT_FOUND;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != 0) {
+                int slot = slot(oldKeys[i], mask);
+                while (values[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // Rimescola i bit: gli ID generati in sequenza differiscono solo nei bit bassi
+    private static int slot(long id, int mask) {
+        long hash = id * 0x9e3779b97f4a7c15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,49 @@
+package com.epicode.spesepersonali.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversioni degli importi in centesimi (long), la rappresentazione usata ovunque
+ * per sommare senza gli errori di arrotondamento dei double
+ */
+public final class Amounts {
+
+    private static final int CENTS_PER_UNIT = 100;
+
+    private Amounts() {
+    }
+
+    // Arrotonda al centesimo piu' vicino
+    public static long toCents(double amount) {
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    public static double toDouble(long cents) {
+        return cents / (double) CENTS_PER_UNIT;
+    }
+
+    // Sempre con due decimali (es. 1250 -> "12.50"), senza passare da double
+    public static String format(long cents) {
+        StringBuilder text = new StringBuilder(24);
+        long units = cents / CENTS_PER_UNIT;
+        int fraction = (int) Math.abs(cents % CENTS_PER_UNIT);
+        if (cents < 0 && units == 0) {
+            text.append('-');
+        }
+        text.append(units).append('.');
+        if (fraction < 10) {
+            text.append('0');
+        }
+        return text.append(fraction).toString();
+    }
+
+    // Testo decimale qualsiasi (anche con esponente), arrotondato al centesimo
+    public static long parse(String text) {
+        try {
+            return new BigDecimal(text.trim()).movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Importo fuori intervallo: " + text);
+        }
+    }
+}
@@ -1,18 +1,43 @@
 package com.epicode.spesepersonali.model;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
- * Una categoria per le spese
+ * Una categoria per le spese, anche con sottocategorie (Composite): es. Casa
+ * raggruppa Mutuo/Affitto e Utenze.
+ *
+ * Le istanze sono condivise dal CategoryRegistry anche tra piu' servizi, quindi
+ * non tengono i totali di un registro: li calcola ExpenseService per id.
  */
 public class Category {
     
+    // Id denso assegnato dal CategoryRegistry, -1 se la categoria non e' registrata
+    public static final int UNREGISTERED = -1;
+    
+    private final int id;
     private final String name;
-    private final String description;
+    private volatile String description;
+    
+    // Padre e figli vengono cambiati solo dal CategoryRegistry
+    private volatile Category parent;
+    private final List<Category> children = new CopyOnWriteArrayList<>();
+    
     private double totalAmount;
     
     public Category(String name, String description) {
+        this(UNREGISTERED, name, description);
+    }
+    
+    Category(int id, String name, String description) {
+        this.id = id;
         this.name = name;
         this.description = description;
-        this.totalAmount = 0.0;
+    }
+    
+    public int getId() {
+        return id;
     }
     
     public String getName() {
@@ -23,6 +48,50 @@ public class Category {
         return description;
     }
     
+    void setDescription(String description) {
+        this.description = description;
+    }
+    
+    public Category getParent() {
+        return parent;
+    }
+    
+    public List<Category> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+    
+    public boolean isLeaf() {
+        return children.isEmpty();
+    }
+    
+    // 0 per le categorie senza padre
+    public int getDepth() {
+        int depth = 0;
+        for (Category current = parent; current != null; current = current.parent) {
+            depth++;
+        }
+        return depth;
+    }
+    
+    // L'antenato alla profondita' indicata (la categoria stessa se e' gia' piu' in alto)
+    public Category getAncestorAt(int depth) {
+        Category current = this;
+        for (int steps = getDepth() - depth; steps > 0; steps--) {
+            current = current.parent;
+        }
+        return current;
+    }
+    
+    // Vero se la categoria e' questa o sta sotto di lei
+    public boolean contains(Category category) {
+        for (Category current = category; current != null; current = current.parent) {
+            if (current == this) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     public double getTotalAmount() {
         return totalAmount;
     }
@@ -31,6 +100,17 @@ public class Category {
         this.totalAmount = totalAmount;
     }
     
+    // Sposta la categoria sotto un altro padre, null = nessun padre
+    void setParent(Category newParent) {
+        if (parent != null) {
+            parent.children.remove(this);
+        }
+        parent = newParent;
+        if (newParent != null) {
+            newParent.children.add(this);
+        }
+    }
+    
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
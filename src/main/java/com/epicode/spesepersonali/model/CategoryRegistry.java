@@ -0,0 +1,132 @@
+package com.epicode.spesepersonali.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro delle categorie (flyweight): ogni nome corrisponde a una sola istanza
+ * con un id denso (0, 1, 2...) usabile come indice di array.
+ *
+ * Le letture non prendono lock, cosi' il caricamento parallelo non si blocca qui.
+ */
+public class CategoryRegistry {
+    
+    public static final String DEFAULT_DESCRIPTION = "Categoria dal CSV";
+    
+    private final Map<String, Category> byName = new ConcurrentHashMap<>();
+    private volatile Category[] byId = new Category[16];
+    private volatile int size;
+    // Cambia a ogni spostamento nell'albero
+    private volatile long treeVersion;
+    
+    // Crea la categoria o ne aggiorna la descrizione
+    public synchronized Category register(String name, String description) {
+        Category existing = byName.get(name);
+        if (existing != null) {
+            existing.setDescription(description);
+            return existing;
+        }
+        return create(name, description);
+    }
+    
+    /*
+     * Crea o aggiorna la categoria mettendola sotto parentName (null = nessun padre).
+     * Il padre viene creato se manca; non puo' essere la categoria stessa o una sua discendente.
+     */
+    public synchronized Category register(String name, String description, String parentName) {
+        Category category = register(name, description);
+        Category parent = parentName != null ? resolve(parentName) : null;
+        if (parent != null && category.contains(parent)) {
+            throw new IllegalArgumentException("La categoria " + name + " non puo' stare sotto " + parentName);
+        }
+        if (category.getParent() != parent) {
+            category.setParent(parent);
+            treeVersion++;
+        }
+        return category;
+    }
+    
+    // Categorie senza padre, in ordine di id
+    public List<Category> getRoots() {
+        List<Category> roots = new ArrayList<>();
+        for (Category category : getAll()) {
+            if (category.getParent() == null) {
+                roots.add(category);
+            }
+        }
+        return roots;
+    }
+    
+    // Istanza canonica per il nome, creata con la descrizione di default se manca
+    public Category resolve(String name) {
+        Category category = byName.get(name);
+        if (category != null) {
+            return category;
+        }
+        
+        synchronized (this) {
+            category = byName.get(name);
+            return category != null ? category : create(name, DEFAULT_DESCRIPTION);
+        }
+    }
+    
+    // Sostituisce una categoria creata fuori dal registro con quella canonica
+    public Category canonical(Category category) {
+        int id = category.getId();
+        if (id >= 0 && id < size && byId[id] == category) {
+            return category;
+        }
+        
+        Category existing = byName.get(category.getName());
+        if (existing != null) {
+            return existing;
+        }
+        
+        synchronized (this) {
+            existing = byName.get(category.getName());
+            return existing != null ? existing : create(category.getName(), category.getDescription());
+        }
+    }
+    
+    public Category get(String name) {
+        return byName.get(name);
+    }
+    
+    public Category get(int id) {
+        return id >= 0 && id < size ? byId[id] : null;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    // Chi tiene totali per sottoalbero li ricalcola quando cambia (il registro puo' essere condiviso)
+    public long getTreeVersion() {
+        return treeVersion;
+    }
+    
+    // Tutte le categorie in ordine di id
+    public List<Category> getAll() {
+        int count = size;
+        return new ArrayList<>(Arrays.asList(byId).subList(0, count));
+    }
+    
+    private Category create(String name, String description) {
+        int id = size;
+        Category category = new Category(id, name, description);
+        
+        Category[] array = byId;
+        if (id == array.length) {
+            array = Arrays.copyOf(array, id * 2);
+        }
+        array[id] = category;
+        byId = array;
+        size = id + 1;
+        
+        byName.put(name, category);
+        return category;
+    }
+}
@@ -0,0 +1,162 @@
+package com.epicode.spesepersonali.model;
+
+import java.util.Arrays;
+
+/**
+ * Dizionario delle descrizioni: ogni testo diverso ha un codice int (0, 1, 2...) e una
+ * sola istanza String condivisa da tutte le transazioni che lo usano.
+ *
+ * La ricerca funziona anche su un pezzo di char[] (es. il buffer del tokenizer), cosi'
+ * per le descrizioni gia' viste non si crea nessuna stringa. Le letture non prendono
+ * lock; se vedono uno stato a meta' di un inserimento riprovano sotto lock.
+ */
+public class DescriptionDictionary {
+
+    public static final int NOT_FOUND = -1;
+
+    // Hash aperto: codice + 1, 0 = libero
+    private volatile int[] table = new int[64];
+    private volatile String[] byCode = new String[32];
+    private volatile int size;
+
+    // Codice del testo, aggiunto se manca
+    public int encode(String value) {
+        int code = find(value);
+        return code != NOT_FOUND ? code : encodeLocked(value.toCharArray(), 0, value.length());
+    }
+
+    // Come encode(String) ma su chars[offset, offset + length)
+    public int encode(char[] chars, int offset, int length) {
+        int code = lookup(chars, offset, length, null);
+        return code != NOT_FOUND ? code : encodeLocked(chars, offset, length);
+    }
+
+    // Codice del testo o NOT_FOUND, senza aggiungerlo
+    public int find(String value) {
+        int code = lookup(null, 0, value.length(), value);
+        if (code == NOT_FOUND) {
+            synchronized (this) {
+                code = lookup(null, 0, value.length(), value);
+            }
+        }
+        return code;
+    }
+
+    public String decode(int code) {
+        String[] strings = byCode;
+        String value = code >= 0 && code < strings.length ? strings[code] : null;
+        if (value == null) {
+            synchronized (this) {
+                if (code < 0 || code >= size) {
+                    throw new IllegalArgumentException("Codice descrizione non valido: " + code);
+                }
+                value = byCode[code];
+            }
+        }
+        return value;
+    }
+
+    // L'istanza condivisa con lo stesso testo
+    public String intern(String value) {
+        return value != null ? decode(encode(value)) : null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private synchronized int encodeLocked(char[] chars, int offset, int length) {
+        int code = lookup(chars, offset, length, null);
+        if (code != NOT_FOUND) {
+            return code;
+        }
+
+        code = size;
+        String value = new String(chars, offset, length);
+        String[] strings = byCode;
+        if (code == strings.length) {
+            strings = Arrays.copyOf(strings, code * 2);
+        }
+        strings[code] = value;
+        byCode = strings;
+
+        int[] slots = table;
+        if ((code + 1) * 2 > slots.length) {
+            slots = rehash(slots.length * 2, strings, code);
+        }
+        insert(slots, hash(value), code);
+        table = slots;
+        size = code + 1;
+        return code;
+    }
+
+    /*
+     * Cerca o i caratteri in chars o la stringa value (se non null).
+     * Un codice senza stringa o fuori dall'array vuol dire inserimento in corso:
+     * si restituisce NOT_FOUND e il chiamante riprova sotto lock.
+     */
+    private int lookup(char[] chars, int offset, int length, String value) {
+        int hash = value != null ? hash(value) : hash(chars, offset, length);
+        int[] slots = table;
+        String[] strings = byCode;
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                return NOT_FOUND;
+            }
+            int code = entry - 1;
+            String candidate = code < strings.length ? strings[code] : null;
+            if (candidate == null) {
+                return NOT_FOUND;
+            }
+            if (value != null ? candidate.equals(value) : matches(candidate, chars, offset, length)) {
+                return code;
+            }
+        }
+    }
+
+    private static int[] rehash(int capacity, String[] strings, int count) {
+        int[] slots = new int[capacity];
+        for (int code = 0; code < count; code++) {
+            insert(slots, hash(strings[code]), code);
+        }
+        return slots;
+    }
+
+    private static void insert(int[] slots, int hash, int code) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = code + 1;
+    }
+
+    private static boolean matches(String candidate, char[] chars, int offset, int length) {
+        if (candidate.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (candidate.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Stesso valore di String.hashCode(), con i bit alti mescolati nei bassi
+    private static int hash(char[] chars, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int hash(String value) {
+        int hash = value.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -1,34 +1,81 @@
 package com.epicode.spesepersonali.model;
 
 import java.time.LocalDate;
-import java.util.Objects;
-import java.util.UUID;
 
 /**
  * Una transazione (spesa o entrata)
  */
 public class Transaction {
-    private final String id;
+    private final long id;
+    // Testo dell'ID: calcolato quando serve, oppure quello originale per gli ID dei vecchi file
+    private String idText;
     private final TransactionType type;
-    private final double amount;
+    // Importo in centesimi
+    private final long amountCents;
     private final String description;
     private final Category category;
     private final LocalDate date;
 
+    // Gli importi double vengono arrotondati al centesimo
     public Transaction(TransactionType type, double amount, String description, 
                       Category category, LocalDate date) {
-        this.id = UUID.randomUUID().toString();
+        this(TransactionId.next(), type, amount, description, category, date);
+    }
+    
+    // Transazione con un ID gia' esistente (es. letta da file)
+    public Transaction(long id, TransactionType type, double amount, String description, 
+                      Category category, LocalDate date) {
+        this(id, null, type, Amounts.toCents(amount), description, category, date);
+    }
+    
+    // Transazione con un ID testuale qualsiasi, che viene conservato cosi' com'e'
+    public Transaction(String id, TransactionType type, double amount, String description, 
+                      Category category, LocalDate date) {
+        this(TransactionId.parse(id), legacyText(id), type, Amounts.toCents(amount), description, category, date);
+    }
+    
+    private Transaction(long id, String idText, TransactionType type, long amountCents, String description,
+                        Category category, LocalDate date) {
+        this.id = id;
+        this.idText = idText;
         this.type = type;
-        this.amount = amount;
+        this.amountCents = amountCents;
         this.description = description;
         this.category = category;
         this.date = date;
     }
+    
+    // Come i costruttori, ma con l'importo gia' in centesimi
+    public static Transaction ofCents(long id, TransactionType type, long amountCents, String description,
+                                      Category category, LocalDate date) {
+        return new Transaction(id, null, type, amountCents, description, category, date);
+    }
+    
+    public static Transaction ofCents(String id, TransactionType type, long amountCents, String description,
+                                      Category category, LocalDate date) {
+        return new Transaction(TransactionId.parse(id), legacyText(id), type, amountCents, description, category, date);
+    }
+    
+    // Stessa transazione (stesso ID e tipo) con dati nuovi
+    public Transaction withDetails(double amount, String description, Category category, LocalDate date) {
+        return new Transaction(id, idText, type, Amounts.toCents(amount), description, category, date);
+    }
+    
+    private static String legacyText(String id) {
+        return TransactionId.isCanonical(id) ? null : id;
+    }
 
     // I getter
-    public String getId() { return id; }
+    public String getId() {
+        if (idText == null) {
+            idText = TransactionId.toString(id);
+        }
+        return idText;
+    }
+    public long getIdValue() { return id; }
     public TransactionType getType() { return type; }
-    public double getAmount() { return amount; }
+    public double getAmount() { return Amounts.toDouble(amountCents); }
+    public long getAmountCents() { return amountCents; }
     public String getDescription() { return description; }
     public Category getCategory() { return category; }
     public LocalDate getDate() { return date; }
@@ -38,17 +85,17 @@ public class Transaction {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Transaction that = (Transaction) o;
-        return Objects.equals(id, that.id);
+        return id == that.id;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        return Long.hashCode(id);
     }
 
     @Override
     public String toString() {
         return String.format("Transaction{id='%s', type=%s, amount=%.2f, description='%s', category='%s', date=%s}", 
-                           id, type, amount, description, category.getName(), date);
+                           getId(), type, getAmount(), description, category.getName(), date);
     }
 } 
\ No newline at end of file
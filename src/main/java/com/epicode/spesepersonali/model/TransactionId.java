@@ -0,0 +1,80 @@
+package com.epicode.spesepersonali.model;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ID delle transazioni: 64 bit ordinati nel tempo, in forma testuale 16 cifre esadecimali.
+ *
+ * I 44 bit alti sono i millisecondi, i 20 bassi un contatore: gli ID generati
+ * dallo stesso processo sono sempre crescenti e non serve SecureRandom.
+ */
+public final class TransactionId {
+    
+    private static final int SEQUENCE_BITS = 20;
+    private static final int TEXT_LENGTH = 16;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    
+    private static final AtomicLong last = new AtomicLong();
+    
+    private TransactionId() {
+    }
+    
+    // Nuovo ID, sempre maggiore del precedente
+    public static long next() {
+        long timestamp = System.currentTimeMillis() << SEQUENCE_BITS;
+        while (true) {
+            long previous = last.get();
+            long candidate = Math.max(previous + 1, timestamp);
+            if (last.compareAndSet(previous, candidate)) {
+                return candidate;
+            }
+        }
+    }
+    
+    public static String toString(long id) {
+        char[] text = new char[TEXT_LENGTH];
+        for (int i = TEXT_LENGTH - 1; i >= 0; i--) {
+            text[i] = HEX_DIGITS[(int) (id & 0xF)];
+            id >>>= 4;
+        }
+        return new String(text);
+    }
+    
+    // Vero per gli ID generati da next() (16 cifre esadecimali minuscole)
+    public static boolean isCanonical(String text) {
+        if (text.length() != TEXT_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < TEXT_LENGTH; i++) {
+            char c = text.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Valore numerico di un ID testuale. Gli ID dei vecchi file (UUID o altro testo)
+     * vengono ridotti a 64 bit in modo stabile, cosi' restano ricercabili.
+     */
+    public static long parse(String text) {
+        if (isCanonical(text)) {
+            return Long.parseUnsignedLong(text, 16);
+        }
+        
+        try {
+            UUID uuid = UUID.fromString(text);
+            return uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
+        } catch (IllegalArgumentException e) {
+            // FNV-1a a 64 bit
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < text.length(); i++) {
+                hash ^= text.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.epicode.spesepersonali.repository;
+
+import com.epicode.spesepersonali.model.DescriptionDictionary;
+import com.epicode.spesepersonali.model.Transaction;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * File base del repository: contiene tutto tranne le modifiche ancora nel log
+ */
+interface BaseStore {
+
+    // Prefisso dei file del log (.wal, .wal.compacting)
+    File getLogFile();
+
+    boolean exists();
+
+    // Aggiunge a transactions (vuota) tutte le transazioni del base, nell'ordine dei file,
+    // con le descrizioni del dizionario
+    void load(List<Transaction> transactions, DescriptionDictionary descriptions) throws IOException;
+
+    // File da leggere per le date in [from, to] (null = nessun limite), in ordine
+    List<File> files(LocalDate from, LocalDate to);
+
+    // Vero se le due date finiscono nello stesso file
+    boolean samePartition(LocalDate first, LocalDate second);
+
+    // Sostituisce tutto il contenuto
+    void rewrite(List<Transaction> transactions) throws IOException;
+
+    // Unisce le modifiche del log per ID; la mappa viene consumata
+    void applyChanges(Map<Long, WriteAheadLog.Change> changes) throws IOException;
+
+    // Riepiloghi delle partizioni (vuoto se il base e' un solo file)
+    List<PartitionManifest> manifests();
+}
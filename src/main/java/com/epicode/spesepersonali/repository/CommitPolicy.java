@@ -0,0 +1,65 @@
+package com.epicode.spesepersonali.repository;
+
+/**
+ * Quando le righe aggiunte vengono scritte e forzate su disco (fsync)
+ */
+public class CommitPolicy {
+    
+    public enum Durability {
+        // Ogni riga viene scritta e forzata su disco prima di tornare
+        PER_WRITE,
+        // Le righe di piu' thread vengono forzate insieme; ognuno aspetta che il suo gruppo sia su disco
+        PER_BATCH,
+        // Scrittura in differita: il disco viene forzato solo ogni intervallo e
+        // un crash puo' perdere le ultime righe. Da scegliere esplicitamente.
+        PER_INTERVAL
+    }
+    
+    private final Durability durability;
+    private final int maxBatchSize;
+    private final long windowMillis;
+    
+    private CommitPolicy(Durability durability, int maxBatchSize, long windowMillis) {
+        if (maxBatchSize < 1 || windowMillis < 0) {
+            throw new IllegalArgumentException("Parametri di commit non validi");
+        }
+        this.durability = durability;
+        this.maxBatchSize = maxBatchSize;
+        this.windowMillis = windowMillis;
+    }
+    
+    public static CommitPolicy perWrite() {
+        return new CommitPolicy(Durability.PER_WRITE, 1, 0);
+    }
+    
+    // windowMillis: attesa massima per far crescere il gruppo prima dell'fsync (0 = nessuna)
+    public static CommitPolicy perBatch(int maxBatchSize, long windowMillis) {
+        return new CommitPolicy(Durability.PER_BATCH, maxBatchSize, windowMillis);
+    }
+    
+    public static CommitPolicy perInterval(int maxBatchSize, long intervalMillis) {
+        return new CommitPolicy(Durability.PER_INTERVAL, maxBatchSize, intervalMillis);
+    }
+    
+    // Default: gruppi fino a 512 righe, senza attese in piu'
+    public static CommitPolicy defaultPolicy() {
+        return perBatch(512, 0);
+    }
+    
+    public Durability getDurability() {
+        return durability;
+    }
+    
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+    
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+    
+    @Override
+    public String toString() {
+        return durability + "(batch=" + maxBatchSize + ", finestra=" + windowMillis + "ms)";
+    }
+}
@@ -0,0 +1,161 @@
+package com.epicode.spesepersonali.repository;
+
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.model.TransactionId;
+import com.epicode.spesepersonali.model.TransactionType;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Scrittura dei file CSV base, comune al file unico e alle partizioni.
+ * Si scrive sempre su un file temporaneo che poi sostituisce l'originale con un rename atomico.
+ */
+final class CsvFiles {
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final TransactionType[] TRANSACTION_TYPES = TransactionType.values();
+
+    private CsvFiles() {
+    }
+
+    // Scrive le transazioni in target e restituisce il riepilogo del file scritto
+    static PartitionManifest write(TransactionRepository repository, File target, YearMonth month,
+                                   Collection<Transaction> transactions) throws IOException {
+        PartitionManifest manifest = new PartitionManifest(month);
+        File tempFile = new File(target.getPath() + ".tmp");
+
+        try (FileOutputStream output = new FileOutputStream(tempFile);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+            writer.write(TransactionRepository.CSV_HEADER);
+            writer.write(LINE_SEPARATOR);
+
+            for (Transaction transaction : transactions) {
+                writeRow(repository, writer, transaction, manifest);
+            }
+
+            writer.flush();
+            output.getFD().sync();
+        }
+
+        Files.move(tempFile.toPath(), target.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        manifest.setFileLength(target.length());
+        return manifest;
+    }
+
+    /*
+     * Riscrive target unendo le modifiche: le righe sostituite o cancellate cambiano al
+     * loro posto, le nuove vanno in fondo. Le righe non toccate vengono riscritte con lo
+     * stesso formato. Le modifiche usate vengono tolte dalla mappa.
+     */
+    static PartitionManifest fold(TransactionRepository repository, File target, YearMonth month,
+                                  Map<Long, WriteAheadLog.Change> changes) throws IOException {
+        PartitionManifest manifest = new PartitionManifest(month);
+        File tempFile = new File(target.getPath() + ".compact.tmp");
+
+        try (FileOutputStream output = new FileOutputStream(tempFile);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+            writer.write(TransactionRepository.CSV_HEADER);
+            writer.write(LINE_SEPARATOR);
+
+            if (target.exists()) {
+                try (Reader reader = new InputStreamReader(new FileInputStream(target), StandardCharsets.UTF_8)) {
+                    CsvTokenizer tokenizer = new CsvTokenizer(reader);
+                    tokenizer.nextRecord();
+                    while (tokenizer.nextRecord()) {
+                        if (tokenizer.isBlankRecord()) {
+                            continue;
+                        }
+                        long id = TransactionId.parse(tokenizer.getString(0));
+                        if (changes.containsKey(id)) {
+                            WriteAheadLog.Change change = changes.remove(id);
+                            if (change.transaction != null) {
+                                writeRow(repository, writer, change.transaction, manifest);
+                            }
+                        } else {
+                            writeRaw(writer, tokenizer, manifest);
+                        }
+                    }
+                }
+            }
+
+            for (WriteAheadLog.Change change : changes.values()) {
+                if (change.transaction != null) {
+                    writeRow(repository, writer, change.transaction, manifest);
+                }
+            }
+            changes.clear();
+
+            writer.flush();
+            output.getFD().sync();
+        }
+
+        Files.move(tempFile.toPath(), target.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        manifest.setFileLength(target.length());
+        return manifest;
+    }
+
+    // Legge un file solo per ricostruirne il riepilogo
+    static PartitionManifest scan(File file, YearMonth month) throws IOException {
+        PartitionManifest manifest = new PartitionManifest(month);
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            CsvTokenizer tokenizer = new CsvTokenizer(reader);
+            tokenizer.nextRecord();
+            while (tokenizer.nextRecord()) {
+                count(tokenizer, manifest);
+            }
+        }
+        manifest.setFileLength(file.length());
+        return manifest;
+    }
+
+    private static void writeRow(TransactionRepository repository, Writer writer, Transaction transaction,
+                                 PartitionManifest manifest) throws IOException {
+        writer.write(repository.formatTransactionToCSV(transaction));
+        writer.write(LINE_SEPARATOR);
+        manifest.add(transaction.getType(), transaction.getAmountCents(), transaction.getDate());
+    }
+
+    private static void writeRaw(Writer writer, CsvTokenizer tokenizer, PartitionManifest manifest) throws IOException {
+        for (int i = 0; i < tokenizer.getFieldCount(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(TransactionRepository.escapeCSV(tokenizer.getString(i)));
+        }
+        writer.write(LINE_SEPARATOR);
+        count(tokenizer, manifest);
+    }
+
+    // Le righe non valide vengono copiate ma non contate
+    private static void count(CsvTokenizer tokenizer, PartitionManifest manifest) {
+        if (tokenizer.getFieldCount() != 6) {
+            return;
+        }
+        try {
+            for (TransactionType type : TRANSACTION_TYPES) {
+                if (tokenizer.fieldEquals(1, type.name())) {
+                    manifest.add(type, tokenizer.getCents(2), tokenizer.getDate(5));
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            // Riga non valida
+        }
+    }
+}
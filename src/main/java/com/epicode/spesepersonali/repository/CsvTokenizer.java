@@ -0,0 +1,291 @@
+package com.epicode.spesepersonali.repository;
+
+import com.epicode.spesepersonali.model.Amounts;
+import com.epicode.spesepersonali.model.DescriptionDictionary;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Legge un CSV carattere per carattere (virgolette RFC 4180) riusando sempre gli stessi buffer
+ */
+public class CsvTokenizer {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private final char[] input = new char[READ_BUFFER_SIZE];
+    private int inputPos;
+    private int inputLen;
+
+    // Il record corrente, gia' senza virgolette di escape
+    private char[] record = new char[256];
+    private int recordLen;
+    private int[] fieldStart = new int[8];
+    private int[] fieldEnd = new int[8];
+    private int fieldCount;
+
+    public CsvTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    // Passa al record successivo, false a fine file
+    public boolean nextRecord() throws IOException {
+        recordLen = 0;
+        fieldCount = 0;
+
+        int c = read();
+        if (c == -1) {
+            return false;
+        }
+
+        int currentStart = 0;
+        boolean inQuotes = false;
+
+        while (true) {
+            if (inQuotes) {
+                if (c == -1) {
+                    endField(currentStart);
+                    return true;
+                }
+                if (c == '"') {
+                    if (peek() == '"') {
+                        read();
+                        append('"');
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    append((char) c);
+                }
+            } else if (c == -1 || c == '\n') {
+                endField(currentStart);
+                return true;
+            } else if (c == '\r') {
+                if (peek() == '\n') {
+                    read();
+                }
+                endField(currentStart);
+                return true;
+            } else if (c == ',') {
+                endField(currentStart);
+                currentStart = recordLen;
+            } else if (c == '"' && recordLen == currentStart) {
+                inQuotes = true;
+            } else {
+                append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    // Riga vuota o di soli spazi
+    public boolean isBlankRecord() {
+        if (fieldCount != 1) {
+            return false;
+        }
+        for (int i = fieldStart[0]; i < fieldEnd[0]; i++) {
+            if (!Character.isWhitespace(record[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getString(int field) {
+        return new String(record, fieldStart[field], fieldEnd[field] - fieldStart[field]);
+    }
+
+    // Codice del campo nel dizionario: crea una stringa solo se il testo e' nuovo
+    public int getCode(int field, DescriptionDictionary dictionary) {
+        return dictionary.encode(record, fieldStart[field], fieldEnd[field] - fieldStart[field]);
+    }
+
+    // Confronta il campo con un testo senza creare stringhe
+    public boolean fieldEquals(int field, String value) {
+        int start = fieldStart[field];
+        int length = fieldEnd[field] - start;
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (record[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getFieldLength(int field) {
+        return fieldEnd[field] - fieldStart[field];
+    }
+
+    // Numero esadecimale (solo cifre minuscole) letto direttamente dal buffer
+    public long getHexLong(int field) {
+        int start = fieldStart[field];
+        int end = fieldEnd[field];
+        if (end == start || end - start > 16) {
+            throw new NumberFormatException("Valore esadecimale non valido: " + getString(field));
+        }
+
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = record[i];
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else {
+                throw new NumberFormatException("Valore esadecimale non valido: " + getString(field));
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Legge un importo in centesimi direttamente dal buffer, senza passare da double.
+     * Gestisce i formati semplici con al massimo due decimali (12, 12.5, 12.50);
+     * per gli altri (esponenti, piu' decimali) si arrotonda con Amounts.parse.
+     */
+    public long getCents(int field) {
+        int p = fieldStart[field];
+        int end = fieldEnd[field];
+
+        boolean negative = false;
+        if (p < end && (record[p] == '-' || record[p] == '+')) {
+            negative = record[p] == '-';
+            p++;
+        }
+
+        long units = 0;
+        int integerDigits = 0;
+        for (; p < end && record[p] >= '0' && record[p] <= '9'; p++) {
+            if (++integerDigits > 16) {
+                return Amounts.parse(getString(field));
+            }
+            units = units * 10 + (record[p] - '0');
+        }
+
+        long cents = 0;
+        int decimals = 0;
+        if (p < end && record[p] == '.') {
+            for (p++; p < end && record[p] >= '0' && record[p] <= '9'; p++) {
+                if (++decimals > 2) {
+                    return Amounts.parse(getString(field));
+                }
+                cents = cents * 10 + (record[p] - '0');
+            }
+        }
+
+        if (p < end) {
+            return Amounts.parse(getString(field));
+        }
+        if (integerDigits == 0 && decimals == 0) {
+            throw new NumberFormatException("Importo non valido: " + getString(field));
+        }
+        if (decimals == 1) {
+            cents *= 10;
+        }
+
+        long value = units * 100 + cents;
+        return negative ? -value : value;
+    }
+
+    // Data ISO (yyyy-MM-dd) letta direttamente dal buffer
+    public LocalDate getDate(int field) {
+        int p = fieldStart[field];
+        if (fieldEnd[field] - p != 10 || record[p + 4] != '-' || record[p + 7] != '-') {
+            return LocalDate.parse(getString(field), DateTimeFormatter.ISO_LOCAL_DATE);
+        }
+
+        int year = digits(field, p, 4);
+        int month = digits(field, p + 5, 2);
+        int day = digits(field, p + 8, 2);
+        return LocalDate.of(year, month, day);
+    }
+
+    // Testo del record corrente, usato solo per i messaggi di log
+    public String getRecordText() {
+        StringBuilder builder = new StringBuilder(recordLen + fieldCount);
+        for (int i = 0; i < fieldCount; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(record, fieldStart[i], fieldEnd[i] - fieldStart[i]);
+        }
+        return builder.toString();
+    }
+
+    private int digits(int field, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = record[i];
+            if (c < '0' || c > '9') {
+                String text = getString(field);
+                throw new DateTimeParseException("Data non valida: " + text, text, i - fieldStart[field]);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private void append(char c) {
+        if (recordLen == record.length) {
+            char[] bigger = new char[record.length * 2];
+            System.arraycopy(record, 0, bigger, 0, recordLen);
+            record = bigger;
+        }
+        record[recordLen++] = c;
+    }
+
+    private void endField(int start) {
+        if (fieldCount == fieldStart.length) {
+            int[] biggerStart = new int[fieldCount * 2];
+            int[] biggerEnd = new int[fieldCount * 2];
+            System.arraycopy(fieldStart, 0, biggerStart, 0, fieldCount);
+            System.arraycopy(fieldEnd, 0, biggerEnd, 0, fieldCount);
+            fieldStart = biggerStart;
+            fieldEnd = biggerEnd;
+        }
+        fieldStart[fieldCount] = start;
+        fieldEnd[fieldCount] = recordLen;
+        fieldCount++;
+    }
+
+    private int read() throws IOException {
+        if (inputPos == inputLen && !fill()) {
+            return -1;
+        }
+        return input[inputPos++];
+    }
+
+    private int peek() throws IOException {
+        if (inputPos == inputLen && !fill()) {
+            return -1;
+        }
+        return input[inputPos];
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = reader.read(input, 0, input.length);
+        } while (n == 0);
+
+        if (n < 0) {
+            return false;
+        }
+        inputPos = 0;
+        inputLen = n;
+        return true;
+    }
+}
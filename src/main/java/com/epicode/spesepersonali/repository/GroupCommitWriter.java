@@ -0,0 +1,307 @@
+package com.epicode.spesepersonali.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Canale di append sempre aperto che scrive le righe a gruppi (group commit).
+ *
+ * Con PER_WRITE e PER_BATCH append torna solo quando la riga e' su disco. Con PER_BATCH
+ * il primo thread che trova il canale libero scrive e forza tutte le righe in attesa;
+ * quelle che arrivano durante il suo fsync formano il gruppo successivo, quindi piu'
+ * thread si dividono il costo di un fsync. Solo PER_INTERVAL scrive in differita: le
+ * righe appartengono al writer appena aggiunte, quindi se un gruppo fallisce restano in
+ * attesa e vengono riprovate al commit successivo (l'errore arriva a flush, sync e close).
+ */
+class GroupCommitWriter implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(GroupCommitWriter.class.getName());
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    // Un solo thread di servizio per tutti i writer (solo PER_INTERVAL)
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "group-commit-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path path;
+    private final String header;
+    private final CommitPolicy policy;
+
+    private FileChannel channel;
+    private final StringBuilder pending = new StringBuilder();
+    private int pendingRows;
+    // Gruppo a cui si aggiungono le righe nuove
+    private Batch current = new Batch();
+    // Vero mentre un thread scrive un gruppo fuori dal lock
+    private boolean committing;
+    private volatile boolean unsynced;
+    private ScheduledFuture<?> scheduledCommit;
+
+    GroupCommitWriter(Path path, String header, CommitPolicy policy) {
+        this.path = path;
+        this.header = header;
+        this.policy = policy;
+    }
+
+    void append(String line) throws IOException {
+        Batch batch;
+        synchronized (this) {
+            ensureOpen();
+
+            pending.append(line).append(LINE_SEPARATOR);
+            pendingRows++;
+            batch = current;
+
+            switch (policy.getDurability()) {
+                case PER_WRITE:
+                    awaitIdle();
+                    commit(true);
+                    return;
+                case PER_INTERVAL:
+                    if (pendingRows >= policy.getMaxBatchSize()) {
+                        awaitIdle();
+                        try {
+                            commit(false);
+                        } catch (IOException e) {
+                            // La riga resta in attesa: la riprova il prossimo commit
+                            logger.severe("Errore nel commit di gruppo: " + e.getMessage());
+                        }
+                    }
+                    return;
+                default:
+                    if (pendingRows >= policy.getMaxBatchSize()) {
+                        notifyAll();
+                    }
+            }
+        }
+        awaitCommit(batch);
+    }
+
+    // Scrive le righe in attesa (per chi deve rileggere il file). Il disco viene forzato
+    // comunque se non si e' in PER_INTERVAL: chi ha aggiunto le righe aspetta l'fsync.
+    synchronized void flush() throws IOException {
+        if (channel != null) {
+            awaitIdle();
+            commit(policy.getDurability() != CommitPolicy.Durability.PER_INTERVAL);
+        }
+    }
+
+    // Scrive e forza su disco tutto quello che e' in attesa
+    synchronized void sync() throws IOException {
+        if (channel != null) {
+            awaitIdle();
+            commit(true);
+        }
+    }
+
+    synchronized boolean hasPendingWrites() {
+        return pendingRows > 0 || unsynced;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            awaitIdle();
+            commit(true);
+        } finally {
+            if (scheduledCommit != null) {
+                scheduledCommit.cancel(false);
+                scheduledCommit = null;
+            }
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /*
+     * Aspetta che il gruppo della riga sia su disco. Se nessuno sta scrivendo, questo
+     * thread prende il gruppo corrente (con l'eventuale finestra per farlo crescere),
+     * lo scrive fuori dal lock e sveglia gli altri.
+     */
+    private void awaitCommit(Batch batch) throws IOException {
+        String rows = null;
+        int count = 0;
+        synchronized (this) {
+            boolean interrupted = false;
+            while (!batch.done && committing) {
+                interrupted |= waitUninterruptibly(0);
+            }
+            if (batch.done) {
+                restoreInterrupt(interrupted);
+                batch.rethrow();
+                return;
+            }
+
+            committing = true;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.getWindowMillis());
+            long remaining;
+            while (pendingRows < policy.getMaxBatchSize() && (remaining = deadline - System.nanoTime()) > 0) {
+                interrupted |= waitUninterruptibly(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+            }
+            restoreInterrupt(interrupted);
+
+            rows = pending.toString();
+            count = pendingRows;
+            pending.setLength(0);
+            pendingRows = 0;
+            current = new Batch();
+        }
+
+        IOException failure = null;
+        try {
+            write(rows, true);
+            logger.fine("Scritte " + count + " righe in un unico gruppo");
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        synchronized (this) {
+            committing = false;
+            batch.complete(failure);
+            notifyAll();
+        }
+        batch.rethrow();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (channel != null) {
+            return;
+        }
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (policy.getDurability() == CommitPolicy.Durability.PER_INTERVAL) {
+            scheduledCommit = FLUSHER.scheduleWithFixedDelay(this::backgroundCommit,
+                    policy.getWindowMillis(), policy.getWindowMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Scrive tutto il gruppo corrente sotto lock; chi aspettava il gruppo viene svegliato
+    private void commit(boolean force) throws IOException {
+        Batch batch = current;
+        String rows = pending.toString();
+        int count = pendingRows;
+        pending.setLength(0);
+        pendingRows = 0;
+        current = new Batch();
+
+        IOException failure = null;
+        try {
+            write(rows, force);
+        } catch (IOException e) {
+            failure = e;
+            if (policy.getDurability() == CommitPolicy.Durability.PER_INTERVAL) {
+                // Nessuno aspetta queste righe: tornano davanti a quelle arrivate dopo
+                pending.insert(0, rows);
+                pendingRows += count;
+            }
+        }
+        batch.complete(failure);
+        notifyAll();
+        batch.rethrow();
+    }
+
+    /*
+     * Scrive le righe e forza il disco se richiesto; l'header va in testa ogni volta che il
+     * file e' vuoto. Se qualcosa fallisce il file torna alla lunghezza di prima, quindi le
+     * righe del gruppo non restano a meta': con PER_WRITE e PER_BATCH l'errore arriva a chi
+     * le ha aggiunte (es. saveAll le ripropone senza duplicarle), con PER_INTERVAL le
+     * riprende commit.
+     */
+    private void write(String rows, boolean force) throws IOException {
+        long size = channel.size();
+        try {
+            if (!rows.isEmpty()) {
+                String text = size == 0 ? header + LINE_SEPARATOR + rows : rows;
+                ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(text));
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                unsynced = true;
+                if (size == 0) {
+                    logger.info("Creato nuovo file CSV con header");
+                }
+            }
+            if (force && unsynced) {
+                channel.force(false);
+                unsynced = false;
+            }
+        } catch (IOException e) {
+            try {
+                channel.truncate(size);
+            } catch (IOException truncateFailure) {
+                logger.severe("Impossibile annullare il gruppo non riuscito: " + truncateFailure.getMessage());
+            }
+            throw e;
+        }
+    }
+    
+    private void awaitIdle() {
+        boolean interrupted = false;
+        while (committing) {
+            interrupted |= waitUninterruptibly(0);
+        }
+        restoreInterrupt(interrupted);
+    }
+
+    // Vero se il thread e' stato interrotto: il flag va rimesso solo alla fine dell'attesa,
+    // altrimenti la wait successiva esce subito e il ciclo gira a vuoto
+    private boolean waitUninterruptibly(long millis) {
+        try {
+            wait(millis);
+            return false;
+        } catch (InterruptedException e) {
+            return true;
+        }
+    }
+
+    private static void restoreInterrupt(boolean interrupted) {
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Solo PER_INTERVAL: le righe di un gruppo fallito restano in attesa per il prossimo giro
+    private synchronized void backgroundCommit() {
+        if (channel == null || committing) {
+            return;
+        }
+        try {
+            commit(true);
+        } catch (IOException e) {
+            logger.severe("Errore nel commit di gruppo: " + e.getMessage());
+        }
+    }
+
+    // Righe scritte insieme; chi le ha aggiunte aspetta done
+    private static final class Batch {
+        private boolean done;
+        private IOException failure;
+
+        void complete(IOException failure) {
+            this.done = true;
+            this.failure = failure;
+        }
+
+        void rethrow() throws IOException {
+            if (failure != null) {
+                throw new IOException("Commit del gruppo fallito: " + failure.getMessage(), failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.epicode.spesepersonali.repository;
+
+/**
+ * Modalita' di lettura del file CSV
+ */
+public enum LoadMode {
+    // Un solo thread con lettura bufferizzata
+    SEQUENTIAL,
+    // File mappato in memoria e letto a blocchi su tutti i core
+    PARALLEL
+}
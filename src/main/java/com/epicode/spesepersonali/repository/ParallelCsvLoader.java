@@ -0,0 +1,220 @@
+package com.epicode.spesepersonali.repository;
+
+import com.epicode.spesepersonali.model.DescriptionDictionary;
+import com.epicode.spesepersonali.model.Transaction;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Carica il CSV mappandolo in memoria e leggendo in parallelo blocchi allineati alle righe
+ */
+class ParallelCsvLoader {
+
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final long MAX_CHUNK_SIZE = 256L * 1024 * 1024;
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private final TransactionRepository repository;
+    private final DescriptionDictionary descriptions;
+    private final ForkJoinPool pool;
+
+    ParallelCsvLoader(TransactionRepository repository, DescriptionDictionary descriptions, ForkJoinPool pool) {
+        this.repository = repository;
+        this.descriptions = descriptions;
+        this.pool = pool;
+    }
+
+    // Restituisce le transazioni nello stesso ordine del file
+    List<Transaction> load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = splitAtRowBoundaries(channel, size);
+
+            List<ChunkTask> tasks = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                if (bounds[i + 1] > bounds[i]) {
+                    tasks.add(new ChunkTask(channel, bounds[i], bounds[i + 1], i == 0));
+                }
+            }
+
+            List<Transaction> transactions = new ArrayList<>();
+            try {
+                for (ChunkTask task : pool.invoke(new InvokeAll<>(tasks))) {
+                    transactions.addAll(task.join());
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return transactions;
+        }
+    }
+
+    /*
+     * Divide il file in blocchi di uguale dimensione e sposta ogni confine subito dopo
+     * il primo "a capo" che non sta dentro un campo tra virgolette. Lo stato delle
+     * virgolette all'inizio di ogni blocco si ricava dalla parita' delle virgolette
+     * contate (in parallelo) nei blocchi precedenti.
+     */
+    private long[] splitAtRowBoundaries(FileChannel channel, long size) throws IOException {
+        int chunks = (int) Math.max(pool.getParallelism() * CHUNKS_PER_THREAD,
+                (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+        chunks = (int) Math.max(1, Math.min(chunks, size));
+
+        long[] rawStarts = new long[chunks + 1];
+        for (int i = 0; i <= chunks; i++) {
+            rawStarts[i] = size * i / chunks;
+        }
+
+        List<QuoteCountTask> counts = new ArrayList<>();
+        for (int i = 0; i < chunks; i++) {
+            counts.add(new QuoteCountTask(channel, rawStarts[i], rawStarts[i + 1]));
+        }
+        pool.invoke(new InvokeAll<>(counts));
+
+        long[] bounds = new long[chunks + 1];
+        bounds[chunks] = size;
+        long quotesBefore = 0;
+        for (int i = 1; i < chunks; i++) {
+            quotesBefore += counts.get(i - 1).join();
+            long boundary = nextRowStart(channel, rawStarts[i], size, (quotesBefore & 1) == 1);
+            bounds[i] = Math.max(boundary, bounds[i - 1]);
+        }
+        return bounds;
+    }
+
+    private long nextRowStart(FileChannel channel, long from, long size, boolean inQuotes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = from;
+
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                } else if (b == '\n' && !inQuotes) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    // Esegue tutti i sotto-task dentro il pool e li restituisce
+    private static class InvokeAll<T extends ForkJoinTask<?>> extends RecursiveTask<List<T>> {
+        private final List<T> tasks;
+
+        InvokeAll(List<T> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected List<T> compute() {
+            invokeAll(tasks);
+            return tasks;
+        }
+    }
+
+    private static class QuoteCountTask extends RecursiveTask<Long> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+
+        QuoteCountTask(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Long compute() {
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                long quotes = 0;
+                int limit = buffer.limit();
+                for (int i = 0; i < limit; i++) {
+                    if (buffer.get(i) == '"') {
+                        quotes++;
+                    }
+                }
+                return quotes;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private class ChunkTask extends RecursiveTask<List<Transaction>> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final boolean hasHeader;
+
+        ChunkTask(FileChannel channel, long start, long end, boolean hasHeader) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.hasHeader = hasHeader;
+        }
+
+        @Override
+        protected List<Transaction> compute() {
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                List<Transaction> transactions = new ArrayList<>();
+                try (Reader reader = new InputStreamReader(new ByteBufferInputStream(buffer), StandardCharsets.UTF_8)) {
+                    repository.readRows(new CsvTokenizer(reader), hasHeader, transactions, descriptions);
+                }
+                return transactions;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.epicode.spesepersonali.repository;
+
+import com.epicode.spesepersonali.model.Amounts;
+import com.epicode.spesepersonali.model.TransactionType;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Properties;
+
+/**
+ * Riepilogo di una partizione mensile: righe, date minima e massima e totali.
+ * Permette di scartare le partizioni fuori da un intervallo senza aprirle.
+ */
+public class PartitionManifest {
+
+    private final YearMonth month;
+    private long fileLength;
+    private int rows;
+    private LocalDate minDate;
+    private LocalDate maxDate;
+    private long incomeCents;
+    private long expenseCents;
+
+    PartitionManifest(YearMonth month) {
+        this.month = month;
+    }
+
+    // Conta una riga della partizione
+    void add(TransactionType type, long amountCents, LocalDate date) {
+        rows++;
+        if (minDate == null || date.isBefore(minDate)) {
+            minDate = date;
+        }
+        if (maxDate == null || date.isAfter(maxDate)) {
+            maxDate = date;
+        }
+        if (type == TransactionType.INCOME) {
+            incomeCents += amountCents;
+        } else {
+            expenseCents += amountCents;
+        }
+    }
+
+    // Vero se la partizione puo' contenere date in [from, to] (null = nessun limite)
+    boolean overlaps(LocalDate from, LocalDate to) {
+        if (rows == 0) {
+            return false;
+        }
+        return (from == null || !maxDate.isBefore(from)) && (to == null || !minDate.isAfter(to));
+    }
+
+    public YearMonth getMonth() { return month; }
+    public int getRows() { return rows; }
+    public LocalDate getMinDate() { return minDate; }
+    public LocalDate getMaxDate() { return maxDate; }
+    public double getTotalIncome() { return Amounts.toDouble(incomeCents); }
+    public double getTotalExpense() { return Amounts.toDouble(expenseCents); }
+    public long getIncomeCents() { return incomeCents; }
+    public long getExpenseCents() { return expenseCents; }
+
+    long getFileLength() { return fileLength; }
+
+    void setFileLength(long fileLength) {
+        this.fileLength = fileLength;
+    }
+
+    // Scrive su file temporaneo e poi lo sostituisce con un rename atomico
+    void store(File file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("mese", month.toString());
+        properties.setProperty("byte", String.valueOf(fileLength));
+        properties.setProperty("righe", String.valueOf(rows));
+        if (rows > 0) {
+            properties.setProperty("dataMinima", minDate.toString());
+            properties.setProperty("dataMassima", maxDate.toString());
+        }
+        properties.setProperty("centesimiEntrate", String.valueOf(incomeCents));
+        properties.setProperty("centesimiSpese", String.valueOf(expenseCents));
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+            properties.store(writer, "Partizione " + month);
+        }
+        Files.move(tempFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Restituisce null se il manifest manca o non e' leggibile
+    static PartitionManifest load(File file, YearMonth month) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+
+            PartitionManifest manifest = new PartitionManifest(month);
+            manifest.fileLength = Long.parseLong(properties.getProperty("byte"));
+            manifest.rows = Integer.parseInt(properties.getProperty("righe"));
+            if (manifest.rows > 0) {
+                manifest.minDate = LocalDate.parse(properties.getProperty("dataMinima"));
+                manifest.maxDate = LocalDate.parse(properties.getProperty("dataMassima"));
+            }
+            manifest.incomeCents = Long.parseLong(properties.getProperty("centesimiEntrate"));
+            manifest.expenseCents = Long.parseLong(properties.getProperty("centesimiSpese"));
+            return manifest;
+
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Partizione %s: %d righe, %s - %s, entrate %.2f, spese %.2f",
+                month, rows, minDate, maxDate, getTotalIncome(), getTotalExpense());
+    }
+}
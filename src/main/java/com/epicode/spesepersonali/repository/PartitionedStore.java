@@ -0,0 +1,231 @@
+package com.epicode.spesepersonali.repository;
+
+import com.epicode.spesepersonali.model.DescriptionDictionary;
+import com.epicode.spesepersonali.model.Transaction;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Base diviso in un CSV per mese (yyyy-MM.csv) con accanto il suo manifest.
+ *
+ * Le letture per intervallo di date aprono solo le partizioni che lo toccano; la
+ * compattazione del log riscrive solo le partizioni dei mesi modificati, quindi i
+ * mesi vecchi restano fermi.
+ */
+class PartitionedStore implements BaseStore {
+
+    private static final Logger logger = Logger.getLogger(PartitionedStore.class.getName());
+    private static final String CSV_EXTENSION = ".csv";
+    private static final String MANIFEST_EXTENSION = ".manifest";
+
+    private final TransactionRepository repository;
+    private final File directory;
+    private final LoadMode loadMode;
+    // Aggiornata anche dal compattatore in background
+    private final NavigableMap<YearMonth, PartitionManifest> partitions = new ConcurrentSkipListMap<>();
+
+    // data/transactions.csv -> cartella data/transactions
+    PartitionedStore(TransactionRepository repository, File file, LoadMode loadMode) {
+        this.repository = repository;
+        this.loadMode = loadMode;
+
+        String name = file.getName();
+        if (name.endsWith(CSV_EXTENSION)) {
+            name = name.substring(0, name.length() - CSV_EXTENSION.length());
+        }
+        this.directory = new File(file.getAbsoluteFile().getParentFile(), name);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.warning("Impossibile creare la cartella delle partizioni: " + directory);
+        }
+        readManifests();
+    }
+
+    @Override
+    public File getLogFile() {
+        return new File(directory, "transactions");
+    }
+
+    @Override
+    public boolean exists() {
+        return !partitions.isEmpty();
+    }
+
+    @Override
+    public void load(List<Transaction> transactions, DescriptionDictionary descriptions) throws IOException {
+        List<File> files = files(null, null);
+        try {
+            if (loadMode == LoadMode.PARALLEL) {
+                // Le partizioni sono indipendenti: in parallelo si leggono su piu' core
+                List<List<Transaction>> parts = files.parallelStream()
+                        .map(file -> readPartition(file, new ArrayList<>(), descriptions))
+                        .collect(Collectors.toList());
+                for (int i = 0; i < parts.size(); i++) {
+                    transactions.addAll(parts.get(i));
+                    parts.set(i, null);
+                }
+            } else {
+                // In sequenza le righe vanno direttamente nella lista di destinazione
+                for (File file : files) {
+                    readPartition(file, transactions, descriptions);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        logger.info("Lette " + files.size() + " partizioni mensili");
+    }
+
+    @Override
+    public List<File> files(LocalDate from, LocalDate to) {
+        List<File> files = new ArrayList<>();
+        for (PartitionManifest manifest : partitions.values()) {
+            if (manifest.overlaps(from, to)) {
+                files.add(csvFile(manifest.getMonth()));
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public boolean samePartition(LocalDate first, LocalDate second) {
+        return YearMonth.from(first).equals(YearMonth.from(second));
+    }
+
+    @Override
+    public synchronized void rewrite(List<Transaction> transactions) throws IOException {
+        Map<YearMonth, List<Transaction>> byMonth = new TreeMap<>();
+        for (Transaction transaction : transactions) {
+            byMonth.computeIfAbsent(YearMonth.from(transaction.getDate()), month -> new ArrayList<>()).add(transaction);
+        }
+
+        for (Map.Entry<YearMonth, List<Transaction>> entry : byMonth.entrySet()) {
+            YearMonth month = entry.getKey();
+            store(CsvFiles.write(repository, csvFile(month), month, entry.getValue()));
+        }
+        for (YearMonth month : new ArrayList<>(partitions.keySet())) {
+            if (!byMonth.containsKey(month)) {
+                remove(month);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void applyChanges(Map<Long, WriteAheadLog.Change> changes) throws IOException {
+        Map<YearMonth, Map<Long, WriteAheadLog.Change>> byMonth = new TreeMap<>();
+        for (WriteAheadLog.Change change : changes.values()) {
+            YearMonth month = YearMonth.from(change.date);
+            changesFor(byMonth, month).put(change.id, change);
+            // Le versioni precedenti di un'altra partizione vanno tolte da li'
+            for (LocalDate earlier : change.earlierDates) {
+                YearMonth earlierMonth = YearMonth.from(earlier);
+                if (!earlierMonth.equals(month)) {
+                    changesFor(byMonth, earlierMonth).putIfAbsent(change.id,
+                            new WriteAheadLog.Change(change.id, null, earlier, Collections.<LocalDate>emptyList()));
+                }
+            }
+        }
+
+        for (Map.Entry<YearMonth, Map<Long, WriteAheadLog.Change>> entry : byMonth.entrySet()) {
+            YearMonth month = entry.getKey();
+            PartitionManifest manifest = CsvFiles.fold(repository, csvFile(month), month, entry.getValue());
+            if (manifest.getRows() == 0) {
+                remove(month);
+            } else {
+                store(manifest);
+            }
+        }
+        changes.clear();
+        logger.info("Aggiornate " + byMonth.size() + " partizioni su " + partitions.size());
+    }
+
+    @Override
+    public List<PartitionManifest> manifests() {
+        return new ArrayList<>(partitions.values());
+    }
+
+    private static Map<Long, WriteAheadLog.Change> changesFor(Map<YearMonth, Map<Long, WriteAheadLog.Change>> byMonth,
+                                                             YearMonth month) {
+        return byMonth.computeIfAbsent(month, m -> new LinkedHashMap<>());
+    }
+
+    private List<Transaction> readPartition(File file, List<Transaction> transactions, DescriptionDictionary descriptions) {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            repository.readRows(new CsvTokenizer(reader), true, transactions, descriptions);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return transactions;
+    }
+
+    // Legge i manifest delle partizioni esistenti; quelli mancanti o vecchi vengono ricostruiti
+    private void readManifests() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(CSV_EXTENSION));
+        if (files == null) {
+            return;
+        }
+
+        Map<YearMonth, PartitionManifest> found = new HashMap<>();
+        for (File file : files) {
+            YearMonth month;
+            try {
+                month = YearMonth.parse(file.getName().substring(0, file.getName().length() - CSV_EXTENSION.length()));
+            } catch (DateTimeParseException e) {
+                continue;
+            }
+
+            PartitionManifest manifest = PartitionManifest.load(manifestFile(month), month);
+            if (manifest == null || manifest.getFileLength() != file.length()) {
+                try {
+                    manifest = CsvFiles.scan(file, month);
+                    manifest.store(manifestFile(month));
+                    logger.info("Manifest ricostruito per la partizione " + month);
+                } catch (IOException e) {
+                    logger.warning("Partizione non leggibile " + file.getName() + ": " + e.getMessage());
+                    continue;
+                }
+            }
+            found.put(month, manifest);
+        }
+        partitions.putAll(found);
+    }
+
+    private void store(PartitionManifest manifest) throws IOException {
+        manifest.store(manifestFile(manifest.getMonth()));
+        partitions.put(manifest.getMonth(), manifest);
+    }
+
+    private void remove(YearMonth month) throws IOException {
+        partitions.remove(month);
+        Files.deleteIfExists(csvFile(month).toPath());
+        Files.deleteIfExists(manifestFile(month).toPath());
+    }
+
+    private File csvFile(YearMonth month) {
+        return new File(directory, month + CSV_EXTENSION);
+    }
+
+    private File manifestFile(YearMonth month) {
+        return new File(directory, month + MANIFEST_EXTENSION);
+    }
+}
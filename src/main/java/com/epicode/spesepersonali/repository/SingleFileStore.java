@@ -0,0 +1,139 @@
+package com.epicode.spesepersonali.repository;
+
+import com.epicode.spesepersonali.model.CategoryRegistry;
+import com.epicode.spesepersonali.model.DescriptionDictionary;
+import com.epicode.spesepersonali.model.Transaction;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
+
+/**
+ * Base in un unico CSV, con lo snapshot binario per avviare piu' in fretta
+ */
+class SingleFileStore implements BaseStore {
+
+    private static final Logger logger = Logger.getLogger(SingleFileStore.class.getName());
+
+    // Sotto questa dimensione il caricamento parallelo non conviene
+    private static final long PARALLEL_LOAD_THRESHOLD = 1024 * 1024;
+
+    private final TransactionRepository repository;
+    private final File file;
+    private final LoadMode loadMode;
+    private final TransactionSnapshot snapshot;
+
+    SingleFileStore(TransactionRepository repository, File file, LoadMode loadMode, CategoryRegistry categories) {
+        this.repository = repository;
+        this.file = file;
+        this.loadMode = loadMode;
+        this.snapshot = new TransactionSnapshot(file.getPath(), categories);
+    }
+
+    @Override
+    public File getLogFile() {
+        return file;
+    }
+
+    @Override
+    public boolean exists() {
+        return file.exists();
+    }
+
+    @Override
+    public void load(List<Transaction> transactions, DescriptionDictionary descriptions) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+
+        long csvLength = file.length();
+        long coveredLength = readSnapshot(transactions, descriptions);
+
+        if (coveredLength != TransactionSnapshot.NOT_AVAILABLE) {
+            // Parte dallo snapshot e rilegge solo le righe aggiunte dopo
+            int fromSnapshot = transactions.size();
+            readCsvFrom(coveredLength, transactions, descriptions);
+            logger.info("Snapshot binario: " + fromSnapshot + " transazioni, "
+                    + (transactions.size() - fromSnapshot) + " righe CSV successive");
+
+            if (coveredLength < csvLength) {
+                writeSnapshot(transactions, csvLength);
+            }
+        } else {
+            if (loadMode == LoadMode.PARALLEL && csvLength >= PARALLEL_LOAD_THRESHOLD) {
+                transactions.addAll(new ParallelCsvLoader(repository, descriptions, ForkJoinPool.commonPool()).load(file.toPath()));
+            } else {
+                try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                    repository.readRows(new CsvTokenizer(reader), true, transactions, descriptions);
+                }
+            }
+            writeSnapshot(transactions, csvLength);
+        }
+    }
+
+    // Un solo file: niente da scartare, il filtro sulle date lo fa chi legge
+    @Override
+    public List<File> files(LocalDate from, LocalDate to) {
+        return file.exists() ? Collections.singletonList(file) : Collections.<File>emptyList();
+    }
+
+    @Override
+    public boolean samePartition(LocalDate first, LocalDate second) {
+        return true;
+    }
+
+    @Override
+    public void rewrite(List<Transaction> transactions) throws IOException {
+        CsvFiles.write(repository, file, null, transactions);
+        writeSnapshot(transactions, file.length());
+    }
+
+    // Le righe modificate cambiano al loro posto: lo snapshot va tolto prima, verra' riscritto al prossimo caricamento
+    @Override
+    public void applyChanges(Map<Long, WriteAheadLog.Change> changes) throws IOException {
+        snapshot.delete();
+        CsvFiles.fold(repository, file, null, changes);
+    }
+
+    @Override
+    public List<PartitionManifest> manifests() {
+        return Collections.emptyList();
+    }
+
+    // Legge le righe del CSV a partire da un certo byte (senza header)
+    private void readCsvFrom(long offset, List<Transaction> transactions, DescriptionDictionary descriptions)
+            throws IOException {
+        try (FileInputStream input = new FileInputStream(file)) {
+            input.getChannel().position(offset);
+            Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8);
+            repository.readRows(new CsvTokenizer(reader), offset == 0, transactions, descriptions);
+        }
+    }
+
+    private long readSnapshot(List<Transaction> transactions, DescriptionDictionary descriptions) {
+        try {
+            return snapshot.read(file, descriptions, transactions);
+        } catch (IOException e) {
+            logger.warning("Snapshot binario non leggibile, uso il CSV: " + e.getMessage());
+            return TransactionSnapshot.NOT_AVAILABLE;
+        }
+    }
+
+    // Lo snapshot e' solo un'ottimizzazione: se non si riesce a scrivere si continua col CSV
+    private void writeSnapshot(List<Transaction> transactions, long csvLength) {
+        try {
+            snapshot.write(transactions, file, csvLength);
+        } catch (IOException e) {
+            logger.warning("Impossibile scrivere lo snapshot binario: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.epicode.spesepersonali.repository;
+
+/**
+ * Organizzazione dei file su disco
+ */
+public enum StorageLayout {
+    // Tutto in un unico CSV (es. data/transactions.csv)
+    SINGLE_FILE,
+    // Un CSV per mese con il suo manifest (es. data/transactions/2024-03.csv)
+    MONTHLY_PARTITIONS
+}
@@ -1,53 +1,83 @@
 package com.epicode.spesepersonali.repository;
 
 import com.epicode.spesepersonali.exception.DataAccessException;
+import com.epicode.spesepersonali.model.Amounts;
 import com.epicode.spesepersonali.model.Category;
+import com.epicode.spesepersonali.model.CategoryRegistry;
+import com.epicode.spesepersonali.model.DescriptionDictionary;
 import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.model.TransactionId;
 import com.epicode.spesepersonali.model.TransactionType;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
+import java.time.DateTimeException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * Gestisce i file CSV
+ * Gestisce i file CSV: un file unico oppure una partizione per mese (vedi StorageLayout)
  */
 public class TransactionRepository {
     
     private static final Logger logger = Logger.getLogger(TransactionRepository.class.getName());
-    private static final String CSV_HEADER = "ID,Tipo,Importo,Descrizione,Categoria,Data";
+    static final String CSV_HEADER = "ID,Tipo,Importo,Descrizione,Categoria,Data";
     private static final String CSV_SEPARATOR = ",";
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+    private static final TransactionType[] TRANSACTION_TYPES = TransactionType.values();
     
-    private final String filePath;
+    private final CategoryRegistry categories;
+    private final BaseStore store;
+    private final WriteAheadLog wal;
     
     public TransactionRepository(String filePath) {
-        this.filePath = filePath;
-        logger.info("Repository inizializzato per file: " + filePath);
+        this(filePath, LoadMode.SEQUENTIAL);
     }
     
-    // Salva tutto
+    public TransactionRepository(String filePath, LoadMode loadMode) {
+        this(filePath, loadMode, CommitPolicy.defaultPolicy());
+    }
+    
+    public TransactionRepository(String filePath, LoadMode loadMode, CommitPolicy commitPolicy) {
+        this(filePath, loadMode, commitPolicy, new CategoryRegistry());
+    }
+    
+    // Le categorie lette dal file vengono risolte nel registro, un'istanza per nome
+    public TransactionRepository(String filePath, LoadMode loadMode, CommitPolicy commitPolicy,
+                                 CategoryRegistry categories) {
+        this(filePath, StorageLayout.SINGLE_FILE, loadMode, commitPolicy, categories);
+    }
+    
+    // Con MONTHLY_PARTITIONS i file vanno nella cartella con il nome del CSV senza estensione
+    public TransactionRepository(String filePath, StorageLayout layout, LoadMode loadMode,
+                                 CommitPolicy commitPolicy, CategoryRegistry categories) {
+        this.categories = categories;
+        this.store = layout == StorageLayout.MONTHLY_PARTITIONS
+                ? new PartitionedStore(this, new File(filePath), loadMode)
+                : new SingleFileStore(this, new File(filePath), loadMode, categories);
+        this.wal = new WriteAheadLog(this, store, commitPolicy);
+        logger.info("Repository inizializzato per file: " + filePath + " (" + layout
+                + ", caricamento " + loadMode + ", commit " + commitPolicy + ")");
+    }
+    
+    public CategoryRegistry getCategoryRegistry() {
+        return categories;
+    }
+    
+    // Riscrive tutto il file base: prima su un file temporaneo, poi con un rename atomico
     public void saveTransactions(List<Transaction> transactions) throws DataAccessException {
-        try (PrintWriter writer = new PrintWriter(
-                new OutputStreamWriter(new FileOutputStream(filePath), StandardCharsets.UTF_8))) {
-            
-            writer.println(CSV_HEADER);
-            
-            for (Transaction transaction : transactions) {
-                writer.println(formatTransactionToCSV(transaction));
-            }
+        try {
+            wal.flush();
+            store.rewrite(transactions);
+            wal.discard();
             
             logger.info("Salvate " + transactions.size() + " transazioni nel file CSV");
             
@@ -57,63 +87,118 @@ public class TransactionRepository {
         }
     }
     
-    // Carica tutto
+    // Carica tutto: file base (o il suo snapshot) piu' le modifiche nel log.
+    // Le descrizioni uguali condividono l'istanza solo all'interno di questo caricamento.
     public List<Transaction> loadTransactions() throws DataAccessException {
+        return loadTransactions(new DescriptionDictionary());
+    }
+    
+    /**
+     * Come loadTransactions(), ma le descrizioni lette diventano le istanze di descriptions:
+     * il dizionario di chi tiene le transazioni in memoria, che vive quanto loro.
+     */
+    public List<Transaction> loadTransactions(DescriptionDictionary descriptions) throws DataAccessException {
         List<Transaction> transactions = new ArrayList<>();
-        
-        File file = new File(filePath);
-        if (!file.exists()) {
+        loadTransactions(descriptions, transactions);
+        return transactions;
+    }
+    
+    /**
+     * Come loadTransactions(descriptions), ma riempie la lista data (vuota), ad esempio un
+     * archivio a colonne: snapshot, caricamento parallelo e log vengono applicati
+     * direttamente su di lei. descriptions puo' essere null se l'archivio codifica da se'
+     * le descrizioni.
+     */
+    public void loadTransactions(DescriptionDictionary descriptions, List<Transaction> transactions)
+            throws DataAccessException {
+        if (!transactions.isEmpty()) {
+            throw new IllegalArgumentException("La lista da riempire deve essere vuota");
+        }
+        if (!store.exists() && !wal.exists()) {
             logger.info("File CSV non trovato, verrà creato al primo salvataggio");
-            return transactions;
+            return;
         }
         
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
-            
-            String line = reader.readLine(); // Salta header
-            if (line == null) {
-                return transactions;
-            }
-            
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) {
-                    continue;
-                }
-                
-                try {
-                    Transaction transaction = parseTransactionFromCSV(line);
-                    transactions.add(transaction);
-                } catch (Exception e) {
-                    logger.warning("Riga CSV ignorata (formato non valido): " + line);
-                }
-            }
+        try {
+            store.load(transactions, descriptions);
+            wal.replay(transactions, descriptions);
             
             logger.info("Caricate " + transactions.size() + " transazioni dal file CSV");
             
-        } catch (IOException e) {
+        } catch (IOException | UncheckedIOException e) {
             logger.severe("Errore nel caricare le transazioni: " + e.getMessage());
             throw new DataAccessException("Errore nel caricare le transazioni");
         }
-        
-        return transactions;
     }
     
-    // Aggiunge una transazione al file CSV
-    public void appendTransaction(Transaction transaction) throws DataAccessException {
+    /**
+     * Stream delle transazioni letto dal file man mano che viene consumato, senza
+     * caricarle tutte in memoria. Va chiuso (try-with-resources) per rilasciare il file.
+     * Eventuali errori di lettura arrivano come UncheckedIOException. Le descrizioni
+     * sono stringhe semplici: leggere non fa crescere nessun dizionario.
+     */
+    public Stream<Transaction> streamTransactions() throws DataAccessException {
+        return streamTransactions(null, null);
+    }
+    
+    /**
+     * Come streamTransactions(), ma solo per le date in [from, to] (null = nessun limite).
+     * Con le partizioni mensili vengono aperti solo i file dei mesi che toccano l'intervallo.
+     */
+    public Stream<Transaction> streamTransactions(LocalDate from, LocalDate to) throws DataAccessException {
         try {
-            boolean fileExists = new File(filePath).exists();
+            Map<Long, Transaction> changes = wal.readChanges();
+            List<File> files = store.files(from, to);
             
-            try (PrintWriter writer = new PrintWriter(
-                    new OutputStreamWriter(new FileOutputStream(filePath, true), StandardCharsets.UTF_8))) {
-                
-                if (!fileExists) {
-                    writer.println(CSV_HEADER);
-                    logger.info("Creato nuovo file CSV con header");
-                }
-                
-                writer.println(formatTransactionToCSV(transaction));
-                logger.info("Transazione aggiunta al file CSV: " + transaction.getId());
+            TransactionSpliterator spliterator = new TransactionSpliterator(this, files, changes, from, to);
+            return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+            
+        } catch (IOException e) {
+            logger.severe("Errore nel leggere le transazioni: " + e.getMessage());
+            throw new DataAccessException("Errore nel leggere le transazioni");
+        }
+    }
+    
+    // Passa ogni transazione al consumer senza trattenerle
+    public void forEachTransaction(Consumer<Transaction> consumer) throws DataAccessException {
+        try (Stream<Transaction> stream = streamTransactions()) {
+            stream.forEach(consumer);
+        } catch (UncheckedIOException e) {
+            logger.severe("Errore nel leggere le transazioni: " + e.getMessage());
+            throw new DataAccessException("Errore nel leggere le transazioni");
+        }
+    }
+    
+    // Riepiloghi delle partizioni mensili (vuoto con il file unico)
+    public List<PartitionManifest> getPartitionManifests() {
+        return store.manifests();
+    }
+    
+    // Legge tutte le righe del tokenizer, scartando quelle non valide
+    void readRows(CsvTokenizer tokenizer, boolean skipHeader, List<Transaction> transactions,
+                  DescriptionDictionary descriptions) throws IOException {
+        if (skipHeader && !tokenizer.nextRecord()) {
+            return;
+        }
+        
+        while (tokenizer.nextRecord()) {
+            if (tokenizer.isBlankRecord()) {
+                continue;
+            }
+            
+            try {
+                transactions.add(parseTransaction(tokenizer, 0, descriptions));
+            } catch (Exception e) {
+                logger.warning("Riga CSV ignorata (formato non valido): " + tokenizer.getRecordText());
             }
+        }
+    }
+    
+    // Aggiunge una transazione al log delle modifiche
+    public void appendTransaction(Transaction transaction) throws DataAccessException {
+        try {
+            wal.append(WriteAheadLog.OP_ADD, formatTransactionToCSV(transaction));
+            logger.fine("Transazione aggiunta al log: " + transaction.getId());
             
         } catch (IOException e) {
             logger.severe("Errore nell'aggiungere la transazione: " + e.getMessage());
@@ -121,67 +206,170 @@ public class TransactionRepository {
         }
     }
     
-    private String formatTransactionToCSV(Transaction transaction) {
+    /**
+     * Registra la nuova versione di una transazione esistente. Serve anche la versione
+     * salvata: se la data cambia partizione si registra una cancellazione piu' un'aggiunta.
+     */
+    public void updateTransaction(Transaction previous, Transaction updated) throws DataAccessException {
+        try {
+            if (store.samePartition(previous.getDate(), updated.getDate())) {
+                wal.append(WriteAheadLog.OP_UPDATE, formatTransactionToCSV(updated));
+            } else {
+                wal.append(WriteAheadLog.OP_DELETE, formatDeletion(previous));
+                wal.append(WriteAheadLog.OP_ADD, formatTransactionToCSV(updated));
+            }
+            logger.fine("Transazione modificata nel log: " + updated.getId());
+            
+        } catch (IOException e) {
+            logger.severe("Errore nel modificare la transazione: " + e.getMessage());
+            throw new DataAccessException("Errore nel modificare la transazione");
+        }
+    }
+    
+    // Registra la cancellazione di una transazione (la data indica la partizione)
+    public void deleteTransaction(Transaction transaction) throws DataAccessException {
+        try {
+            wal.append(WriteAheadLog.OP_DELETE, formatDeletion(transaction));
+            logger.fine("Transazione cancellata nel log: " + transaction.getId());
+            
+        } catch (IOException e) {
+            logger.severe("Errore nel cancellare la transazione: " + e.getMessage());
+            throw new DataAccessException("Errore nel cancellare la transazione");
+        }
+    }
+    
+    // Aggiunge piu' transazioni e le rende persistenti con un solo commit
+    public void appendTransactions(List<Transaction> transactions) throws DataAccessException {
+        try {
+            for (Transaction transaction : transactions) {
+                wal.append(WriteAheadLog.OP_ADD, formatTransactionToCSV(transaction));
+            }
+            wal.sync();
+            logger.info("Aggiunte " + transactions.size() + " transazioni al log");
+            
+        } catch (IOException e) {
+            logger.severe("Errore nell'aggiungere le transazioni: " + e.getMessage());
+            throw new DataAccessException("Errore nell'aggiungere le transazioni");
+        }
+    }
+    
+    // Forza su disco le modifiche ancora in attesa del commit di gruppo
+    public void sync() throws DataAccessException {
+        try {
+            wal.sync();
+        } catch (IOException e) {
+            logger.severe("Errore nel sincronizzare il log: " + e.getMessage());
+            throw new DataAccessException("Errore nel sincronizzare il log");
+        }
+    }
+    
+    public boolean hasPendingWrites() {
+        return wal.hasPendingWrites();
+    }
+    
+    // Unisce subito il log nel file base (normalmente lo fa il compattatore in background)
+    public void compact() throws DataAccessException {
+        try {
+            wal.compact();
+        } catch (IOException e) {
+            logger.severe("Errore nella compattazione del log: " + e.getMessage());
+            throw new DataAccessException("Errore nella compattazione del log");
+        }
+    }
+    
+    // Chiude il log dopo aver scritto tutto
+    public void close() throws DataAccessException {
+        try {
+            wal.close();
+            logger.info("Repository chiuso");
+        } catch (IOException e) {
+            logger.severe("Errore nel chiudere il log: " + e.getMessage());
+            throw new DataAccessException("Errore nel chiudere il log");
+        }
+    }
+    
+    private String formatDeletion(Transaction transaction) {
+        return escapeCSV(transaction.getId()) + CSV_SEPARATOR + transaction.getDate().format(DATE_FORMATTER);
+    }
+    
+    String formatTransactionToCSV(Transaction transaction) {
         return String.join(CSV_SEPARATOR,
                 escapeCSV(transaction.getId()),
                 escapeCSV(transaction.getType().name()),
-                String.valueOf(transaction.getAmount()),
+                Amounts.format(transaction.getAmountCents()),
                 escapeCSV(transaction.getDescription()),
                 escapeCSV(transaction.getCategory().getName()),
                 transaction.getDate().format(DATE_FORMATTER)
         );
     }
     
-    private Transaction parseTransactionFromCSV(String csvLine) throws DataAccessException {
-        String[] fields = csvLine.split(CSV_SEPARATOR);
-        
-        if (fields.length != 6) {
+    // Legge i campi direttamente dal buffer del tokenizer, a partire dal campo first.
+    // Con un dizionario le descrizioni gia' viste non creano stringhe; null = stringhe semplici.
+    Transaction parseTransaction(CsvTokenizer tokenizer, int first, DescriptionDictionary descriptions)
+            throws DataAccessException {
+        if (tokenizer.getFieldCount() != first + 6) {
             throw new DataAccessException("Formato CSV non valido");
         }
         
         try {
-            TransactionType type = TransactionType.valueOf(unescapeCSV(fields[1]));
-            double amount = Double.parseDouble(fields[2]);
-            String description = unescapeCSV(fields[3]);
-            String categoryName = unescapeCSV(fields[4]);
-            LocalDate date = LocalDate.parse(fields[5], DATE_FORMATTER);
-            
-            Category category = new Category(categoryName, "Categoria dal CSV");
+            TransactionType type = parseType(tokenizer, first + 1);
+            long amountCents = tokenizer.getCents(first + 2);
+            String description = descriptions != null
+                    ? descriptions.decode(tokenizer.getCode(first + 3, descriptions))
+                    : tokenizer.getString(first + 3);
+            Category category = categories.resolve(tokenizer.getString(first + 4));
+            LocalDate date = tokenizer.getDate(first + 5);
             
-            return new Transaction(type, amount, description, category, date);
+            // ID salvato: numerico se generato da noi, testo originale per i file vecchi
+            int idLength = tokenizer.getFieldLength(first);
+            if (idLength == 0) {
+                // Senza ID: ricavato dal contenuto, cosi' resta lo stesso a ogni caricamento
+                return Transaction.ofCents(contentId(tokenizer, first), type, amountCents, description, category, date);
+            }
+            if (idLength == 16) {
+                try {
+                    return Transaction.ofCents(tokenizer.getHexLong(first), type, amountCents, description, category, date);
+                } catch (NumberFormatException e) {
+                    // Non e' un ID nostro: si conserva il testo
+                }
+            }
+            return Transaction.ofCents(tokenizer.getString(first), type, amountCents, description, category, date);
             
         } catch (NumberFormatException e) {
             throw new DataAccessException("Numero non valido nel CSV");
-        } catch (DateTimeParseException e) {
+        } catch (DateTimeException e) {
             throw new DataAccessException("Data non valida nel CSV");
-        } catch (IllegalArgumentException e) {
-            throw new DataAccessException("Tipo transazione non valido nel CSV");
         }
     }
     
-    private String escapeCSV(String value) {
-        if (value == null) {
-            return "";
+    // Righe identiche senza ID ricevono lo stesso ID: per distinguerle serve un ID nel file
+    private static long contentId(CsvTokenizer tokenizer, int first) {
+        StringBuilder text = new StringBuilder();
+        for (int field = first + 1; field < first + 6; field++) {
+            text.append(CSV_SEPARATOR).append(tokenizer.getString(field));
         }
-        
-        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
-            String escaped = value.replace("\"", "\"\"");
-            return "\"" + escaped + "\"";
+        return TransactionId.parse(text.toString());
+    }
+    
+    private TransactionType parseType(CsvTokenizer tokenizer, int field) throws DataAccessException {
+        for (TransactionType type : TRANSACTION_TYPES) {
+            if (tokenizer.fieldEquals(field, type.name())) {
+                return type;
+            }
         }
-        
-        return value;
+        throw new DataAccessException("Tipo transazione non valido nel CSV");
     }
     
-    private String unescapeCSV(String value) {
-        if (value == null || value.isEmpty()) {
+    static String escapeCSV(String value) {
+        if (value == null) {
             return "";
         }
         
-        if (value.startsWith("\"") && value.endsWith("\"")) {
-            String content = value.substring(1, value.length() - 1);
-            return content.replace("\"\"", "\"");
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            String escaped = value.replace("\"", "\"\"");
+            return "\"" + escaped + "\"";
         }
         
         return value;
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
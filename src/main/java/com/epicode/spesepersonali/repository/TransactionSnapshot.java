@@ -0,0 +1,230 @@
+package com.epicode.spesepersonali.repository;
+
+import com.epicode.spesepersonali.model.Category;
+import com.epicode.spesepersonali.model.CategoryRegistry;
+import com.epicode.spesepersonali.model.DescriptionDictionary;
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.model.TransactionId;
+import com.epicode.spesepersonali.model.TransactionType;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Copia binaria del CSV per avviare il servizio senza rileggere tutto il testo.
+ *
+ * Formato: magic, versione, byte del CSV coperti, data di modifica e CRC32 della parte
+ * di CSV coperta, tabella delle stringhe (descrizioni, categorie e ID dei vecchi file),
+ * record a larghezza fissa e CRC32 finale.
+ *
+ * Se il CSV ha ancora la data di modifica salvata lo snapshot vale senza rileggerlo;
+ * altrimenti (righe aggiunte o file toccato da fuori) si ricalcola il CRC della parte
+ * coperta, e una riga cambiata in mezzo, anche con la stessa lunghezza, lo scarta.
+ */
+class TransactionSnapshot {
+
+    static final long NOT_AVAILABLE = -1;
+
+    private static final int MAGIC = 0x5350534E; // "SPSN"
+    private static final int VERSION = 4;
+    private static final int NO_TEXT = -1;
+    private static final int CHECKSUM_BUFFER = 64 * 1024;
+    private static final TransactionType[] TRANSACTION_TYPES = TransactionType.values();
+
+    private final File snapshotFile;
+    private final CategoryRegistry categoryRegistry;
+
+    TransactionSnapshot(String csvFilePath, CategoryRegistry categoryRegistry) {
+        this.snapshotFile = new File(csvFilePath + ".snap");
+        this.categoryRegistry = categoryRegistry;
+    }
+
+    /*
+     * Aggiunge a transactions le righe dello snapshot e restituisce quanti byte del CSV
+     * rappresentano (le righe successive vanno rilette dal CSV). NOT_AVAILABLE se lo
+     * snapshot manca, e' corrotto o non corrisponde piu' al CSV: transactions non cambia.
+     * Senza dizionario le descrizioni restano le stringhe della tabella, una per testo.
+     */
+    long read(File csvFile, DescriptionDictionary descriptionDictionary, List<Transaction> transactions)
+            throws IOException {
+        if (!snapshotFile.exists()) {
+            return NOT_AVAILABLE;
+        }
+
+        byte[] bytes = Files.readAllBytes(snapshotFile.toPath());
+        if (bytes.length < 8) {
+            return NOT_AVAILABLE;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getLong(bytes.length - 8) != crc.getValue()) {
+            return NOT_AVAILABLE;
+        }
+
+        int start = transactions.size();
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return NOT_AVAILABLE;
+            }
+
+            long coveredLength = buffer.getLong();
+            long lastModified = buffer.getLong();
+            long checksum = buffer.getLong();
+            if (csvFile.length() < coveredLength) {
+                return NOT_AVAILABLE;
+            }
+            if (lastModified(csvFile) != lastModified && checksum(csvFile, coveredLength) != checksum) {
+                return NOT_AVAILABLE;
+            }
+
+            String[] strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                int length = buffer.getInt();
+                strings[i] = new String(bytes, buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            }
+
+            // Registro e dizionario vengono consultati una volta per testo, non per record
+            Category[] categories = new Category[strings.length];
+            String[] descriptions = new String[strings.length];
+
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                long id = buffer.getLong();
+                int idTextRef = buffer.getInt();
+                TransactionType type = TRANSACTION_TYPES[buffer.get()];
+                long amountCents = buffer.getLong();
+                int descriptionRef = buffer.getInt();
+                int categoryRef = buffer.getInt();
+                LocalDate date = LocalDate.ofEpochDay(buffer.getInt());
+
+                if (categories[categoryRef] == null) {
+                    categories[categoryRef] = categoryRegistry.resolve(strings[categoryRef]);
+                }
+                if (descriptions[descriptionRef] == null) {
+                    descriptions[descriptionRef] = descriptionDictionary != null
+                            ? descriptionDictionary.intern(strings[descriptionRef])
+                            : strings[descriptionRef];
+                }
+                String description = descriptions[descriptionRef];
+                if (idTextRef == NO_TEXT) {
+                    transactions.add(Transaction.ofCents(id, type, amountCents, description, categories[categoryRef], date));
+                } else {
+                    transactions.add(Transaction.ofCents(strings[idTextRef], type, amountCents, description, categories[categoryRef], date));
+                }
+            }
+
+            return coveredLength;
+
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            // Toglie le righe gia' aggiunte, dall'ultima (costo costante anche per le colonne)
+            for (int row = transactions.size() - 1; row >= start; row--) {
+                transactions.remove(row);
+            }
+            return NOT_AVAILABLE;
+        }
+    }
+
+    // Da chiamare prima di modificare righe gia' coperte, per non ricalcolare il CRC al prossimo avvio
+    void delete() throws IOException {
+        Files.deleteIfExists(snapshotFile.toPath());
+    }
+
+    // Scrive su file temporaneo e poi lo sostituisce con un rename atomico
+    void write(List<Transaction> transactions, File csvFile, long coveredLength) throws IOException {
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (Transaction transaction : transactions) {
+            if (hasLegacyId(transaction)) {
+                intern(transaction.getId(), stringIds, strings);
+            }
+            intern(transaction.getDescription(), stringIds, strings);
+            intern(transaction.getCategory().getName(), stringIds, strings);
+        }
+
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        try (BufferedOutputStream buffered = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+            CheckedOutputStream checked = new CheckedOutputStream(buffered, new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(coveredLength);
+            out.writeLong(lastModified(csvFile));
+            out.writeLong(checksum(csvFile, coveredLength));
+
+            out.writeInt(strings.size());
+            for (String value : strings) {
+                byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+
+            out.writeInt(transactions.size());
+            for (Transaction transaction : transactions) {
+                out.writeLong(transaction.getIdValue());
+                out.writeInt(hasLegacyId(transaction) ? stringIds.get(transaction.getId()) : NO_TEXT);
+                out.writeByte(transaction.getType().ordinal());
+                out.writeLong(transaction.getAmountCents());
+                out.writeInt(stringIds.get(transaction.getDescription()));
+                out.writeInt(stringIds.get(transaction.getCategory().getName()));
+                out.writeInt((int) transaction.getDate().toEpochDay());
+            }
+            out.flush();
+
+            new DataOutputStream(buffered).writeLong(checked.getChecksum().getValue());
+        }
+
+        Files.move(tempFile.toPath(), snapshotFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static boolean hasLegacyId(Transaction transaction) {
+        return !TransactionId.isCanonical(transaction.getId());
+    }
+
+    private static void intern(String value, Map<String, Integer> ids, List<String> strings) {
+        if (!ids.containsKey(value)) {
+            ids.put(value, strings.size());
+            strings.add(value);
+        }
+    }
+
+    private static long lastModified(File csvFile) throws IOException {
+        return Files.getLastModifiedTime(csvFile.toPath()).toMillis();
+    }
+
+    // CRC dei primi length byte del CSV: letti senza interpretarli, costa molto meno del parsing
+    private static long checksum(File csvFile, long length) throws IOException {
+        CRC32 crc = new CRC32();
+        try (RandomAccessFile file = new RandomAccessFile(csvFile, "r")) {
+            byte[] chunk = new byte[CHECKSUM_BUFFER];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = (int) Math.min(chunk.length, remaining);
+                file.readFully(chunk, 0, read);
+                crc.update(chunk, 0, read);
+                remaining -= read;
+            }
+        }
+        return crc.getValue();
+    }
+}
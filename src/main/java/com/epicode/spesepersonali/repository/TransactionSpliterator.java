@@ -0,0 +1,148 @@
+package com.epicode.spesepersonali.repository;
+
+import com.epicode.spesepersonali.model.Transaction;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Legge i file base una riga alla volta applicando le modifiche del log:
+ * nessuna transazione resta in memoria dopo essere stata consumata.
+ * Con un intervallo di date vengono restituite solo le transazioni al suo interno.
+ *
+ * Dopo una compattazione interrotta tra due partizioni una riga spostata compare in
+ * entrambi i file; la sua modifica e' nel log, quindi esce una volta sola.
+ */
+class TransactionSpliterator extends Spliterators.AbstractSpliterator<Transaction> {
+
+    private static final Logger logger = Logger.getLogger(TransactionSpliterator.class.getName());
+
+    private final TransactionRepository repository;
+    private final Iterator<File> files;
+    private final Map<Long, Transaction> changes;
+    private final LocalDate from;
+    private final LocalDate to;
+    // ID modificati nel log gia' incontrati nei file base: le altre copie si saltano
+    private final Set<Long> applied = new HashSet<>();
+    private Reader reader;
+    private CsvTokenizer tokenizer;
+    private Iterator<Transaction> remainingChanges;
+
+    // I file vengono aperti uno alla volta; from e to possono essere null
+    TransactionSpliterator(TransactionRepository repository, List<File> files, Map<Long, Transaction> changes,
+                           LocalDate from, LocalDate to) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.repository = repository;
+        this.files = files.iterator();
+        this.changes = changes;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Transaction> action) {
+        while (tokenizer != null || openNextFile()) {
+            if (!advanceRecord()) {
+                close();
+                continue;
+            }
+            if (tokenizer.isBlankRecord()) {
+                continue;
+            }
+
+            Transaction transaction;
+            try {
+                transaction = repository.parseTransaction(tokenizer, 0, null);
+            } catch (Exception e) {
+                logger.warning("Riga CSV ignorata (formato non valido): " + tokenizer.getRecordText());
+                continue;
+            }
+
+            long id = transaction.getIdValue();
+            if (changes.containsKey(id)) {
+                // Modificata o cancellata nel log
+                if (!applied.add(id)) {
+                    continue;
+                }
+                transaction = changes.get(id);
+                if (transaction == null) {
+                    continue;
+                }
+            }
+            if (inRange(transaction)) {
+                action.accept(transaction);
+                return true;
+            }
+        }
+
+        // Poi le transazioni aggiunte solo nel log
+        if (remainingChanges == null) {
+            changes.keySet().removeAll(applied);
+            remainingChanges = changes.values().iterator();
+        }
+        while (remainingChanges.hasNext()) {
+            Transaction transaction = remainingChanges.next();
+            if (transaction != null && inRange(transaction)) {
+                action.accept(transaction);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void close() {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            reader = null;
+            tokenizer = null;
+        }
+    }
+
+    private boolean openNextFile() {
+        if (!files.hasNext()) {
+            return false;
+        }
+        try {
+            reader = new InputStreamReader(new FileInputStream(files.next()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        tokenizer = new CsvTokenizer(reader);
+        advanceRecord(); // Salta header
+        return true;
+    }
+
+    private boolean inRange(Transaction transaction) {
+        LocalDate date = transaction.getDate();
+        return (from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to));
+    }
+
+    private boolean advanceRecord() {
+        try {
+            return tokenizer.nextRecord();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
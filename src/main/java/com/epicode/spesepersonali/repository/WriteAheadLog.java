@@ -0,0 +1,352 @@
+package com.epicode.spesepersonali.repository;
+
+import com.epicode.spesepersonali.iterator.PositionIndex;
+import com.epicode.spesepersonali.model.DescriptionDictionary;
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.model.TransactionId;
+import com.epicode.spesepersonali.store.TransactionColumns;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Log append-only delle modifiche al CSV, compattato periodicamente nel file base.
+ *
+ * Le modifiche vanno solo nel file .wal; il base cambia soltanto con una compattazione:
+ * il .wal viene rinominato in .wal.compacting e le sue righe vengono unite ai file base,
+ * ognuno riscritto in un file temporaneo che poi lo sostituisce con un rename atomico.
+ *
+ * Ogni operazione riguarda un solo ID (A/U inseriscono o sostituiscono, D cancella), quindi
+ * rileggere un log gia' unito al base non cambia il risultato: dopo un crash basta ripeterlo.
+ * Le D portano anche la data della riga cancellata, per trovare la sua partizione.
+ */
+class WriteAheadLog implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(WriteAheadLog.class.getName());
+    private static final String HEADER = "Op,ID,Tipo,Importo,Descrizione,Categoria,Data";
+
+    static final String OP_ADD = "A";
+    static final String OP_UPDATE = "U";
+    static final String OP_DELETE = "D";
+
+    // Sopra questa dimensione il log viene unito al file base
+    private static final long COMPACTION_THRESHOLD = 4L * 1024 * 1024;
+    private static final long COMPACTION_CHECK_SECONDS = 30;
+
+    private static final ScheduledExecutorService COMPACTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "wal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final TransactionRepository repository;
+    private final BaseStore store;
+    private final File walFile;
+    private final File compactingFile;
+    private final GroupCommitWriter writer;
+    private final Object compactionLock = new Object();
+    private ScheduledFuture<?> compactionTask;
+
+    WriteAheadLog(TransactionRepository repository, BaseStore store, CommitPolicy commitPolicy) {
+        this.repository = repository;
+        this.store = store;
+        File logFile = store.getLogFile();
+        this.walFile = new File(logFile.getPath() + ".wal");
+        this.compactingFile = new File(logFile.getPath() + ".wal.compacting");
+        this.writer = new GroupCommitWriter(walFile.toPath(), HEADER, commitPolicy);
+    }
+
+    synchronized void append(String op, String csvRow) throws IOException {
+        writer.append(op + "," + csvRow);
+        scheduleCompaction();
+    }
+
+    void flush() throws IOException {
+        writer.flush();
+    }
+
+    void sync() throws IOException {
+        writer.sync();
+    }
+
+    boolean hasPendingWrites() {
+        return writer.hasPendingWrites();
+    }
+
+    // Riapplica le modifiche non ancora compattate, nell'ordine in cui sono state scritte
+    void replay(List<Transaction> transactions, DescriptionDictionary descriptions) throws IOException {
+        writer.flush();
+        Replay replay = new Replay(transactions);
+        synchronized (compactionLock) {
+            // Compattazione interrotta: ripeterla e' sicuro, la finisce il compattatore
+            replayFile(compactingFile, replay, descriptions);
+        }
+        replayFile(walFile, replay, descriptions);
+        replay.finish();
+        
+        if (compactingFile.exists()) {
+            synchronized (this) {
+                scheduleCompaction();
+            }
+        }
+    }
+
+    // Modifiche non ancora compattate per ID, in ordine (valore null = cancellata)
+    Map<Long, Transaction> readChanges() throws IOException {
+        writer.flush();
+        Map<Long, Transaction> changes = new LinkedHashMap<>();
+        ChangeSink sink = new ChangeSink() {
+            @Override
+            public void upsert(Transaction transaction) {
+                changes.put(transaction.getIdValue(), transaction);
+            }
+
+            @Override
+            public void delete(long id, LocalDate date) {
+                changes.put(id, null);
+            }
+        };
+        synchronized (compactionLock) {
+            replayFile(compactingFile, sink, null);
+        }
+        replayFile(walFile, sink, null);
+        
+        if (compactingFile.exists()) {
+            synchronized (this) {
+                scheduleCompaction();
+            }
+        }
+        return changes;
+    }
+
+    boolean exists() {
+        return walFile.exists() || compactingFile.exists();
+    }
+
+    // Il base e' stato riscritto per intero: le modifiche nel log sono gia' incluse
+    void discard() throws IOException {
+        synchronized (compactionLock) {
+            synchronized (this) {
+                writer.close();
+                Files.deleteIfExists(walFile.toPath());
+            }
+            Files.deleteIfExists(compactingFile.toPath());
+        }
+    }
+
+    void compactIfNeeded() {
+        if (walFile.length() >= COMPACTION_THRESHOLD || compactingFile.exists()) {
+            try {
+                compact();
+            } catch (IOException e) {
+                logger.severe("Errore nella compattazione del log: " + e.getMessage());
+            }
+        }
+    }
+
+    void compact() throws IOException {
+        synchronized (compactionLock) {
+            if (!compactingFile.exists()) {
+                synchronized (this) {
+                    writer.close();
+                    if (!walFile.exists()) {
+                        return;
+                    }
+                    // Le nuove modifiche finiscono in un .wal nuovo mentre questo viene unito
+                    Files.move(walFile.toPath(), compactingFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+
+            ChangeCollector changes = new ChangeCollector();
+            replayFile(compactingFile, changes, null);
+            int changeCount = changes.changes.size();
+            store.applyChanges(changes.changes);
+
+            Files.delete(compactingFile.toPath());
+            logger.info("Log compattato nel file base (" + changeCount + " modifiche)");
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (compactionTask != null) {
+            compactionTask.cancel(false);
+            compactionTask = null;
+        }
+        writer.close();
+    }
+
+    private void scheduleCompaction() {
+        if (compactionTask == null) {
+            compactionTask = COMPACTOR.scheduleWithFixedDelay(this::compactIfNeeded,
+                    COMPACTION_CHECK_SECONDS, COMPACTION_CHECK_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    // Con descriptions null le descrizioni restano stringhe semplici (letture di passaggio)
+    private void replayFile(File file, ChangeSink replay, DescriptionDictionary descriptions) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+
+        int operations = 0;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            CsvTokenizer tokenizer = new CsvTokenizer(reader);
+            if (!tokenizer.nextRecord()) {
+                return;
+            }
+
+            while (tokenizer.nextRecord()) {
+                if (tokenizer.isBlankRecord()) {
+                    continue;
+                }
+                try {
+                    if (tokenizer.fieldEquals(0, OP_ADD) || tokenizer.fieldEquals(0, OP_UPDATE)) {
+                        replay.upsert(repository.parseTransaction(tokenizer, 1, descriptions));
+                    } else if (tokenizer.fieldEquals(0, OP_DELETE) && tokenizer.getFieldCount() == 3) {
+                        replay.delete(TransactionId.parse(tokenizer.getString(1)), tokenizer.getDate(2));
+                    } else {
+                        logger.warning("Operazione sconosciuta nel log: " + tokenizer.getRecordText());
+                        continue;
+                    }
+                    operations++;
+                } catch (Exception e) {
+                    logger.warning("Riga del log ignorata (formato non valido): " + tokenizer.getRecordText());
+                }
+            }
+        }
+        logger.fine("Rilette " + operations + " modifiche dal log " + file.getName());
+    }
+
+    /**
+     * Modifica di un ID da unire al base: ultima versione (null se cancellata), la sua data
+     * e le date delle versioni precedenti nel log, che possono stare in altre partizioni.
+     */
+    static class Change {
+        final long id;
+        final Transaction transaction;
+        final LocalDate date;
+        final List<LocalDate> earlierDates;
+
+        Change(long id, Transaction transaction, LocalDate date, List<LocalDate> earlierDates) {
+            this.id = id;
+            this.transaction = transaction;
+            this.date = date;
+            this.earlierDates = earlierDates;
+        }
+    }
+
+    // Riceve le operazioni lette dal log
+    private interface ChangeSink {
+        void upsert(Transaction transaction);
+
+        // date: la data della versione cancellata, per trovarne la partizione
+        void delete(long id, LocalDate date);
+    }
+
+    // Raccoglie l'ultima modifica di ogni ID per la compattazione
+    private static class ChangeCollector implements ChangeSink {
+        private final Map<Long, Change> changes = new LinkedHashMap<>();
+
+        @Override
+        public void upsert(Transaction transaction) {
+            long id = transaction.getIdValue();
+            changes.put(id, new Change(id, transaction, transaction.getDate(), earlierDates(id)));
+        }
+
+        @Override
+        public void delete(long id, LocalDate date) {
+            changes.put(id, new Change(id, null, date, earlierDates(id)));
+        }
+
+        private List<LocalDate> earlierDates(long id) {
+            Change previous = changes.get(id);
+            if (previous == null) {
+                return Collections.emptyList();
+            }
+            List<LocalDate> dates = new ArrayList<>(previous.earlierDates);
+            dates.add(previous.date);
+            return dates;
+        }
+    }
+
+    /*
+     * Applica le operazioni del log alla lista caricata dal base, che puo' essere anche un
+     * archivio a colonne: le cancellazioni segnano la posizione e finish toglie tutti i
+     * posti segnati in un solo passaggio, senza mettere null nella lista.
+     */
+    private static class Replay implements ChangeSink {
+        private final List<Transaction> transactions;
+        private PositionIndex positions;
+        private final BitSet deleted = new BitSet();
+
+        Replay(List<Transaction> transactions) {
+            this.transactions = transactions;
+        }
+
+        @Override
+        public void upsert(Transaction transaction) {
+            int position = positions().get(transaction.getIdValue());
+            if (position != PositionIndex.NOT_FOUND) {
+                transactions.set(position, transaction);
+            } else {
+                positions.put(transaction.getIdValue(), transactions.size());
+                transactions.add(transaction);
+            }
+        }
+
+        @Override
+        public void delete(long id, LocalDate date) {
+            int position = positions().remove(id);
+            if (position != PositionIndex.NOT_FOUND) {
+                deleted.set(position);
+            }
+        }
+
+        // Toglie le righe segnate in un solo passaggio (negli archivi a colonne senza creare oggetti)
+        void finish() {
+            if (!deleted.isEmpty()) {
+                TransactionColumns.removeRows(transactions, deleted);
+            }
+        }
+
+        // L'indice serve solo se il log contiene qualcosa
+        private PositionIndex positions() {
+            if (positions == null) {
+                positions = new PositionIndex(transactions.size());
+                TransactionColumns columns = transactions instanceof TransactionColumns
+                        ? (TransactionColumns) transactions : null;
+                for (int i = 0; i < transactions.size(); i++) {
+                    long id = columns != null ? columns.getId(i) : transactions.get(i).getIdValue();
+                    // Compattazione interrotta tra due partizioni: la stessa transazione
+                    // puo' comparire due volte, il log la riscrive comunque
+                    int duplicate = positions.get(id);
+                    if (duplicate != PositionIndex.NOT_FOUND) {
+                        deleted.set(duplicate);
+                    }
+                    positions.put(id, i);
+                }
+            }
+            return positions;
+        }
+    }
+}
@@ -1,20 +1,48 @@
 package com.epicode.spesepersonali.service;
 
+import com.epicode.spesepersonali.budget.BudgetListener;
+import com.epicode.spesepersonali.budget.BudgetMonitor;
+import com.epicode.spesepersonali.budget.BudgetRule;
 import com.epicode.spesepersonali.exception.DataAccessException;
 import com.epicode.spesepersonali.exception.ValidationException;
 import com.epicode.spesepersonali.factory.TransactionFactory;
+import com.epicode.spesepersonali.iterator.ColumnsByDateIterator;
+import com.epicode.spesepersonali.iterator.DateIndex;
+import com.epicode.spesepersonali.iterator.PositionIndex;
 import com.epicode.spesepersonali.iterator.TransactionByDateIterator;
 import com.epicode.spesepersonali.iterator.TransactionIterator;
+import com.epicode.spesepersonali.model.Amounts;
 import com.epicode.spesepersonali.model.Category;
+import com.epicode.spesepersonali.model.CategoryRegistry;
+import com.epicode.spesepersonali.model.DescriptionDictionary;
 import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.model.TransactionId;
+import com.epicode.spesepersonali.model.TransactionType;
 import com.epicode.spesepersonali.repository.TransactionRepository;
+import com.epicode.spesepersonali.sketch.MergeableSketch;
+import com.epicode.spesepersonali.sketch.MonthlySketches;
+import com.epicode.spesepersonali.store.ColumnarTransactionStore;
+import com.epicode.spesepersonali.store.OffHeapTransactionStore;
+import com.epicode.spesepersonali.store.StoreMode;
+import com.epicode.spesepersonali.store.TransactionColumns;
+import com.epicode.spesepersonali.strategy.AnalyticsEngine;
+import com.epicode.spesepersonali.strategy.AnalyticsReport;
 import com.epicode.spesepersonali.strategy.CalculationStrategy;
 import com.epicode.spesepersonali.strategy.CategorySummaryStrategy;
+import com.epicode.spesepersonali.strategy.IncrementalCalculationStrategy;
+import com.epicode.spesepersonali.strategy.MonthlySketchStrategy;
+import com.epicode.spesepersonali.strategy.MonthlyTimeSeries;
 import com.epicode.spesepersonali.strategy.MonthlyTotalStrategy;
+import com.epicode.spesepersonali.strategy.ParallelCalculationEngine;
+import com.epicode.spesepersonali.strategy.ParallelCalculationStrategy;
 
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -28,25 +56,96 @@ public class ExpenseService {
     
     private final TransactionRepository repository;
     private final List<Transaction> transactions;
-    private final Map<String, Category> categories;
+    private final CategoryRegistry categories;
+    // Solo con OBJECTS: le descrizioni in memoria sono le istanze di questo dizionario, che
+    // nasce col caricamento e vive quanto le transazioni. Gli archivi a colonne le tengono
+    // nel proprio dizionario (o fuori dall'heap), quindi qui resta null.
+    private final DescriptionDictionary descriptions;
+    
+    // Versione corrente e versione dell'ultimo salvataggio: uguali se non c'e' niente da salvare
+    private long version;
+    private long savedVersion;
+    // Modifiche non arrivate nel log, per ID: solo quelle per cui l'append ha dato errore,
+    // che il writer ha gia' tolto dal file e dall'attesa, quindi saveAll puo' riproporle
+    // senza duplicarle. Con PER_INTERVAL l'append non fallisce per il disco: le righe
+    // restano nel writer finche' un commit (al piu' tardi il sync di saveAll) riesce.
+    private final Map<Long, PendingChange> unsaved = new LinkedHashMap<>();
+    
+    // Indice ID -> posizione nella lista, senza boxing
+    private final PositionIndex positions = new PositionIndex();
+    // Righe cancellate ma ancora nella lista: cancellare costa O(1), e le righe segnate escono
+    // tutte insieme alla prossima lettura completa o quando sono meta' della lista
+    private final BitSet deleted = new BitSet();
+    private int deletedCount;
+    // Indice per data, per leggere un intervallo senza scorrere tutto
+    private final DateIndex dateIndex = new DateIndex();
+    
+    // Spese per id di categoria, della sola categoria e di tutto il sottoalbero: stanno qui e
+    // non sulle Category, che il registro condivide con gli altri servizi. I sottoalberi si
+    // risommano dalle sole categorie quando l'albero del registro cambia.
+    private long[] ownCents = new long[16];
+    private long[] subtreeCents = new long[16];
+    private long treeVersion;
+    
+    private final ParallelCalculationEngine parallelEngine = new ParallelCalculationEngine();
+    
+    // Risultati tenuti aggiornati a ogni modifica, per strategia
+    private final Map<IncrementalCalculationStrategy<?>, MaterializedStrategy<?>> materialized = new LinkedHashMap<>();
+    private final MonthlyTotalStrategy totalsStrategy = new MonthlyTotalStrategy();
+    private final CategorySummaryStrategy categoryStrategy = new CategorySummaryStrategy();
+    private final MaterializedStrategy<MonthlyTotalStrategy.Totals> totals;
+    private final MaterializedStrategy<CategorySummaryStrategy.Totals> categorySummary;
+    // Riassunti approssimati per mese tenuti aggiornati, per strategia
+    private final Map<MonthlySketchStrategy<?>, MaterializedSketches<?>> sketches = new LinkedHashMap<>();
+    // Risultati gia' pronti finche' i mesi che coprono non cambiano
+    private final StrategyResultCache resultCache = new StrategyResultCache();
+    // Regole di budget controllate a ogni modifica, sulle entrate e spese mensili dei totali
+    private final BudgetMonitor budgets;
     
     public ExpenseService(String dataFilePath) throws DataAccessException {
-        this.repository = new TransactionRepository(dataFilePath);
-        this.transactions = new ArrayList<>();
-        this.categories = new HashMap<>();
+        this(new TransactionRepository(dataFilePath));
+    }
+    
+    // Permette di scegliere un repository gia' configurato (es. caricamento parallelo)
+    public ExpenseService(TransactionRepository repository) throws DataAccessException {
+        this(repository, StoreMode.OBJECTS);
+    }
+    
+    // Con COLUMNAR e OFF_HEAP le transazioni occupano molto meno heap e i calcoli non creano oggetti
+    public ExpenseService(TransactionRepository repository, StoreMode storeMode) throws DataAccessException {
+        this.repository = repository;
+        this.categories = repository.getCategoryRegistry();
+        this.descriptions = storeMode == StoreMode.OBJECTS ? new DescriptionDictionary() : null;
+        this.transactions = createStore(storeMode);
         
         // Crea categorie base
         initializeDefaultCategories();
+        treeVersion = categories.getTreeVersion();
         loadExistingTransactions();
+        totals = registerIncremental(totalsStrategy);
+        categorySummary = registerIncremental(categoryStrategy);
+        budgets = new BudgetMonitor(totals.accumulator.getMonthlySeries(), this::spendingOf);
         
         logger.info("ExpenseService inizializzato con " + transactions.size() + " transazioni");
     }
     
+    private List<Transaction> createStore(StoreMode storeMode) {
+        switch (storeMode) {
+            case COLUMNAR:
+                return new ColumnarTransactionStore(categories);
+            case OFF_HEAP:
+                return new OffHeapTransactionStore(categories);
+            default:
+                return new ArrayList<>();
+        }
+    }
+    
     // Categorie di base
     private void initializeDefaultCategories() {
         addCategory("Lavoro", "Entrate da lavoro e freelance");
-        addCategory("Mutuo/Affitto", "Spese per casa");
-        addCategory("Utenze", "Bollette varie");
+        addCategory("Casa", "Tutte le spese per la casa");
+        categories.register("Mutuo/Affitto", "Spese per casa", "Casa");
+        categories.register("Utenze", "Bollette varie", "Casa");
         addCategory("Cibo", "Spese per mangiare");
         addCategory("Intrattenimento", "Divertimento e hobby");
         addCategory("Stipendio", "Stipendio mensile");
@@ -60,9 +159,8 @@ public class ExpenseService {
     public void addExpense(double amount, String description, Category category, LocalDate date) 
             throws ValidationException, DataAccessException {
         
-        Transaction expense = TransactionFactory.createExpense(amount, description, category, date);
-        transactions.add(expense);
-        repository.appendTransaction(expense);
+        Transaction expense = TransactionFactory.createExpense(amount, intern(description), canonical(category), date);
+        record(expense);
         
         logger.info("Spesa registrata: " + amount + "€ in categoria " + category.getName());
     }
@@ -71,44 +169,386 @@ public class ExpenseService {
     public void addIncome(double amount, String description, Category category, LocalDate date) 
             throws ValidationException, DataAccessException {
         
-        Transaction income = TransactionFactory.createIncome(amount, description, category, date);
-        transactions.add(income);
-        repository.appendTransaction(income);
+        Transaction income = TransactionFactory.createIncome(amount, intern(description), canonical(category), date);
+        record(income);
         
         logger.info("Entrata registrata: " + amount + "€ in categoria " + category.getName());
     }
     
+    // Registra in memoria e nel log; se il log fallisce la transazione resta da salvare
+    private void record(Transaction transaction) throws DataAccessException {
+        positions.put(transaction.getIdValue(), transactions.size());
+        transactions.add(transaction);
+        dateIndex.add(transaction.getDate(), transaction.getIdValue());
+        addToCategoryTree(transaction.getCategory(), transaction.getType(), transaction.getAmountCents());
+        version++;
+        resultCache.invalidate(transaction.getDate());
+        for (MaterializedStrategy<?> view : materialized.values()) {
+            view.add(transaction);
+        }
+        for (MaterializedSketches<?> view : sketches.values()) {
+            view.add(transaction);
+        }
+        budgets.add(transaction);
+        
+        markUnsaved(null, transaction);
+        repository.appendTransaction(transaction);
+        unsaved.remove(transaction.getIdValue());
+    }
+    
+    // Cerca per ID in tempo costante
+    public Transaction findTransaction(String id) {
+        int position = positions.get(TransactionId.parse(id));
+        return position != PositionIndex.NOT_FOUND ? transactions.get(position) : null;
+    }
+    
+    // Modifica importo, descrizione, categoria e data di una transazione esistente; null se l'ID non esiste
+    public Transaction updateTransaction(String id, double amount, String description, Category category, LocalDate date) 
+            throws ValidationException, DataAccessException {
+        
+        int position = positions.get(TransactionId.parse(id));
+        if (position == PositionIndex.NOT_FOUND) {
+            return null;
+        }
+        
+        Transaction previous = transactions.get(position);
+        Transaction updated = TransactionFactory.update(previous, amount, intern(description), canonical(category), date);
+        transactions.set(position, updated);
+        if (!previous.getDate().equals(updated.getDate())) {
+            dateIndex.remove(previous.getDate(), previous.getIdValue());
+            dateIndex.add(updated.getDate(), updated.getIdValue());
+        }
+        addToCategoryTree(previous.getCategory(), previous.getType(), -previous.getAmountCents());
+        addToCategoryTree(updated.getCategory(), updated.getType(), updated.getAmountCents());
+        version++;
+        resultCache.invalidate(previous.getDate());
+        resultCache.invalidate(updated.getDate());
+        for (MaterializedStrategy<?> view : materialized.values()) {
+            view.remove(previous);
+            view.add(updated);
+        }
+        YearMonth previousMonth = YearMonth.from(previous.getDate());
+        rebuildSketches(previousMonth);
+        if (!previousMonth.equals(YearMonth.from(updated.getDate()))) {
+            for (MaterializedSketches<?> view : sketches.values()) {
+                view.add(updated);
+            }
+        }
+        budgets.update(previous, updated);
+        
+        markUnsaved(previous, updated);
+        repository.updateTransaction(previous, updated);
+        unsaved.remove(updated.getIdValue());
+        
+        logger.info("Transazione modificata: " + id);
+        return updated;
+    }
+    
+    // Cancella mantenendo l'ordine di inserimento: la riga viene solo segnata, senza spostare le altre
+    public boolean deleteTransaction(String id) throws DataAccessException {
+        long key = TransactionId.parse(id);
+        int position = positions.remove(key);
+        if (position == PositionIndex.NOT_FOUND) {
+            return false;
+        }
+        
+        Transaction removed = transactions.get(position);
+        deleted.set(position);
+        deletedCount++;
+        if (deletedCount * 2 > transactions.size()) {
+            purgeDeleted();
+        }
+        dateIndex.remove(removed.getDate(), key);
+        addToCategoryTree(removed.getCategory(), removed.getType(), -removed.getAmountCents());
+        version++;
+        resultCache.invalidate(removed.getDate());
+        for (MaterializedStrategy<?> view : materialized.values()) {
+            view.remove(removed);
+        }
+        rebuildSketches(YearMonth.from(removed.getDate()));
+        budgets.remove(removed);
+        
+        markUnsaved(removed, null);
+        repository.deleteTransaction(removed);
+        unsaved.remove(key);
+        
+        logger.info("Transazione cancellata: " + id);
+        return true;
+    }
+    
     // Lista transazioni
     public List<Transaction> getAllTransactions() {
+        purgeDeleted();
         return new ArrayList<>(transactions);
     }
     
     // Ottieni iteratore
     public TransactionIterator getTransactionsByDate() {
+        purgeDeleted();
+        if (transactions instanceof TransactionColumns) {
+            return new ColumnsByDateIterator((TransactionColumns) transactions);
+        }
         return new TransactionByDateIterator(transactions);
     }
     
-    // Statistiche semplici
+    /*
+     * Transazioni con esattamente questa descrizione. Si confrontano i codici del
+     * dizionario (o le istanze condivise), mai il testo riga per riga.
+     */
+    public List<Transaction> getTransactionsByDescription(String description) {
+        purgeDeleted();
+        List<Transaction> matches = new ArrayList<>();
+        if (transactions instanceof TransactionColumns) {
+            TransactionColumns columns = (TransactionColumns) transactions;
+            int ref = columns.findDescriptionRef(description);
+            if (ref < 0) {
+                return matches;
+            }
+            int[] refs = columns.descriptionRefArray();
+            for (int row = 0; row < columns.size(); row++) {
+                if ((refs != null ? refs[row] : columns.getDescriptionRef(row)) == ref) {
+                    matches.add(columns.getTransaction(row));
+                }
+            }
+            return matches;
+        }
+        
+        int code = descriptions.find(description);
+        if (code == DescriptionDictionary.NOT_FOUND) {
+            return matches;
+        }
+        String shared = descriptions.decode(code);
+        for (Transaction transaction : transactions) {
+            if (transaction.getDescription() == shared) {
+                matches.add(transaction);
+            }
+        }
+        return matches;
+    }
+    
+    // Transazioni tra from e to compresi (null = nessun limite), in ordine di data
+    public List<Transaction> getTransactions(LocalDate from, LocalDate to) {
+        int start = dateIndex.startOf(from);
+        int end = dateIndex.endOf(to);
+        List<Transaction> range = new ArrayList<>(Math.max(0, end - start));
+        for (int i = start; i < end; i++) {
+            range.add(transactions.get(positions.get(dateIndex.getId(i))));
+        }
+        return range;
+    }
+    
+    // Iteratore sulle transazioni tra from e to compresi, dalla piu' recente
+    public TransactionIterator getTransactionsByDate(LocalDate from, LocalDate to) {
+        return dateIndex.iterator(from, to, id -> transactions.get(positions.get(id)));
+    }
+    
+    // Statistiche semplici, dai totali gia' aggiornati
     public Map<String, Object> getTotals() {
-        CalculationStrategy strategy = new MonthlyTotalStrategy();
-        Map<String, Object> results = strategy.calculate(transactions);
+        Map<String, Object> results = resultCache.get(totalsStrategy, totals::results);
         
         logger.info("Calcolo totali completato");
         return results;
     }
     
+    // Totali di un solo mese, con le stesse chiavi di getTotals
+    public Map<String, Object> getMonthTotals(YearMonth month) {
+        return getTotals(month, month);
+    }
+    
+    // Totali dei mesi da from a to compresi, in tempo costante (null = nessun limite).
+    // In cache a parte rispetto a getTotals(), che contiene anche la serie mensile.
+    public Map<String, Object> getTotals(YearMonth from, YearMonth to) {
+        return resultCache.get(totalsStrategy, from, to, () -> totalsStrategy.finishRange(totals.accumulator, from, to), "intervallo");
+    }
+    
+    // Copia della serie mensile, aggiornata a ogni modifica
+    public MonthlyTimeSeries getMonthlySeries() {
+        return (MonthlyTimeSeries) totals.results().get("serieMensile");
+    }
+    
     // Spese per categoria
     public Map<String, Object> getCategorySummary() {
-        CalculationStrategy strategy = new CategorySummaryStrategy();
-        Map<String, Object> results = strategy.calculate(transactions);
+        Map<String, Object> results = resultCache.get(categoryStrategy, categorySummary::results);
         
         logger.info("Calcolo riepilogo categorie completato");
         return results;
     }
     
+    // Esegue una strategia qualsiasi; quelle parallele vengono divise tra i core
+    public Map<String, Object> calculate(CalculationStrategy strategy) {
+        MaterializedSketches<?> sketchView = sketches.get(strategy);
+        if (sketchView != null) {
+            return resultCache.get(strategy, sketchView::results);
+        }
+        purgeDeleted();
+        return resultCache.get(strategy, () -> strategy instanceof ParallelCalculationStrategy
+                ? parallelEngine.calculate((ParallelCalculationStrategy<?>) strategy, transactions)
+                : strategy.calculate(transactions));
+    }
+    
+    /**
+     * Esegue piu' strategie insieme. Quelle con un risultato ancora valido in cache o
+     * registrate con registerIncremental o registerSketches usano i risultati gia' pronti; tutte le altre
+     * vengono calcolate con un solo passaggio sulle transazioni. Il report contiene
+     * anche il tempo di ogni strategia.
+     */
+    public AnalyticsReport runAnalytics(CalculationStrategy... strategies) {
+        List<CalculationStrategy> toScan = new ArrayList<>();
+        AnalyticsReport ready = new AnalyticsReport();
+        for (CalculationStrategy strategy : strategies) {
+            long start = System.nanoTime();
+            Map<String, Object> results = resultCache.find(strategy);
+            MaterializedStrategy<?> view = materialized.get(strategy);
+            MaterializedSketches<?> sketchView = sketches.get(strategy);
+            if (results == null && (view != null || sketchView != null)) {
+                results = resultCache.put(strategy, view != null ? view.results() : sketchView.results());
+            }
+            if (results != null) {
+                ready.add(strategy, results, System.nanoTime() - start);
+            } else {
+                toScan.add(strategy);
+            }
+        }
+        if (toScan.isEmpty()) {
+            return ready;
+        }
+        
+        purgeDeleted();
+        AnalyticsReport report = new AnalyticsEngine(toScan).run(transactions);
+        for (CalculationStrategy strategy : toScan) {
+            report.add(strategy, resultCache.put(strategy, report.getResults(strategy)), report.getNanos(strategy));
+        }
+        for (CalculationStrategy strategy : ready.getStrategies()) {
+            report.add(strategy, ready.getResults(strategy), ready.getNanos(strategy));
+        }
+        logger.info(report.toString());
+        return report;
+    }
+    
+    // Totali e categorie per le statistiche, con una sola chiamata
+    public AnalyticsReport getStatistics() {
+        return runAnalytics(totalsStrategy, categoryStrategy);
+    }
+    
+    // Strategia dei totali di getStatistics, per leggerne i risultati dal report
+    public MonthlyTotalStrategy getTotalsStrategy() {
+        return totalsStrategy;
+    }
+    
+    // Strategia del riepilogo per categoria di getStatistics
+    public CategorySummaryStrategy getCategoryStrategy() {
+        return categoryStrategy;
+    }
+    
+    /**
+     * Calcola la strategia una volta sulle transazioni attuali e poi la tiene aggiornata
+     * a ogni aggiunta, modifica e cancellazione. Registrarla di nuovo non ricalcola.
+     */
+    public <A> MaterializedStrategy<A> registerIncremental(IncrementalCalculationStrategy<A> strategy) {
+        @SuppressWarnings("unchecked")
+        MaterializedStrategy<A> view = (MaterializedStrategy<A>) materialized.get(strategy);
+        if (view == null) {
+            purgeDeleted();
+            A accumulator;
+            if (strategy instanceof ParallelCalculationStrategy) {
+                @SuppressWarnings("unchecked")
+                ParallelCalculationStrategy<A> parallel = (ParallelCalculationStrategy<A>) strategy;
+                accumulator = parallelEngine.accumulate(parallel, transactions);
+            } else {
+                accumulator = strategy.createAccumulator();
+                if (transactions instanceof TransactionColumns) {
+                    strategy.accumulateColumns(accumulator, (TransactionColumns) transactions);
+                } else {
+                    for (Transaction transaction : transactions) {
+                        strategy.accumulate(accumulator, transaction);
+                    }
+                }
+            }
+            view = new MaterializedStrategy<>(strategy, accumulator);
+            materialized.put(strategy, view);
+        }
+        return view;
+    }
+    
+    // Risultati di una strategia registrata con registerIncremental, null se non registrata
+    public Map<String, Object> getIncrementalResults(IncrementalCalculationStrategy<?> strategy) {
+        MaterializedStrategy<?> view = materialized.get(strategy);
+        return view != null ? view.results() : null;
+    }
+    
+    /**
+     * Calcola i riassunti mensili della strategia una volta e poi li tiene aggiornati:
+     * un'aggiunta entra nel riassunto del suo mese, una modifica o cancellazione
+     * ricostruisce solo il mese toccato, rileggendo le sue righe dall'indice per data.
+     * Registrarla di nuovo non ricalcola.
+     */
+    public <S extends MergeableSketch<S>> MaterializedSketches<S> registerSketches(MonthlySketchStrategy<S> strategy) {
+        @SuppressWarnings("unchecked")
+        MaterializedSketches<S> view = (MaterializedSketches<S>) sketches.get(strategy);
+        if (view == null) {
+            purgeDeleted();
+            view = new MaterializedSketches<>(strategy, parallelEngine.accumulate(strategy, transactions));
+            sketches.put(strategy, view);
+        }
+        return view;
+    }
+    
+    // Risultati dei mesi da from a to compresi (null = nessun limite) di una strategia
+    // registrata con registerSketches, senza rileggere le transazioni; null se non registrata
+    public Map<String, Object> getSketchResults(MonthlySketchStrategy<?> strategy, YearMonth from, YearMonth to) {
+        MaterializedSketches<?> view = sketches.get(strategy);
+        return view != null ? resultCache.get(strategy, from, to, () -> view.results(from, to)) : null;
+    }
+    
+    // I riassunti non sanno togliere una riga: il mese si ricostruisce dalle righe rimaste
+    private void rebuildSketches(YearMonth month) {
+        if (sketches.isEmpty()) {
+            return;
+        }
+        List<Transaction> rows = getTransactions(month.atDay(1), month.atEndOfMonth());
+        for (MaterializedSketches<?> view : sketches.values()) {
+            view.rebuild(month, rows);
+        }
+    }
+    
+    // Spese per categoria sommate al livello indicato dell'albero (0 = categorie radice)
+    public Map<String, Object> getCategorySummary(int depth) {
+        return resultCache.get(categoryStrategy, () -> categoryStrategy.finishAtDepth(categorySummary.accumulator, depth), depth);
+    }
+    
     // Gestione categorie
     public void addCategory(String name, String description) {
-        categories.put(name, new Category(name, description));
+        categories.register(name, description);
+    }
+    
+    // Crea la categoria come sottocategoria di parentName (creata se manca)
+    public Category addCategory(String name, String description, String parentName) throws ValidationException {
+        try {
+            Category category = categories.register(name, description, parentName);
+            // Puo' spostare una categoria esistente: i riepiloghi per livello e i budget dei gruppi cambiano
+            resultCache.invalidateAll();
+            budgets.rebuild();
+            return category;
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(e.getMessage());
+        }
+    }
+    
+    // Totale spese della categoria e delle sue sottocategorie, senza ricalcoli
+    public double getCategoryTotal(String name) {
+        Category category = categories.get(name);
+        if (category == null) {
+            return 0.0;
+        }
+        if (treeVersion != categories.getTreeVersion()) {
+            rebuildCategoryTree();
+        }
+        int id = category.getId();
+        return id < subtreeCents.length ? Amounts.toDouble(subtreeCents[id]) : 0.0;
+    }
+    
+    public List<Category> getRootCategories() {
+        return categories.getRoots();
     }
     
     public Category getCategory(String name) {
@@ -116,27 +556,298 @@ public class ExpenseService {
     }
     
     public List<Category> getAllCategories() {
-        return new ArrayList<>(categories.values());
+        return categories.getAll();
+    }
+    
+    public CategoryRegistry getCategoryRegistry() {
+        return categories;
+    }
+    
+    public StrategyResultCache getResultCache() {
+        return resultCache;
+    }
+    
+    // Budget mensile per una categoria (comprese le sottocategorie)
+    public BudgetRule addBudget(String categoryName, double monthlyLimit) throws ValidationException {
+        Category category = categories.get(categoryName);
+        if (category == null) {
+            throw new ValidationException("Categoria non trovata: " + categoryName);
+        }
+        try {
+            BudgetRule rule = BudgetRule.categoryLimit(category, monthlyLimit);
+            budgets.addRule(rule);
+            return rule;
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(e.getMessage());
+        }
+    }
+    
+    // Regola qualsiasi, es. BudgetRule.expensesOverIncome()
+    public void addBudget(BudgetRule rule) {
+        budgets.addRule(rule);
+    }
+    
+    // Riceve un avviso quando un budget viene superato o rientra in un mese
+    public void addBudgetListener(BudgetListener listener) {
+        budgets.addListener(listener);
+    }
+    
+    public BudgetMonitor getBudgetMonitor() {
+        return budgets;
+    }
+    
+    // Spese per mese della categoria e delle sue sottocategorie (per i budget), dalle colonne senza creare oggetti
+    private MonthlyTimeSeries spendingOf(Category category) {
+        purgeDeleted();
+        MonthlyTimeSeries series = new MonthlyTimeSeries();
+        if (transactions instanceof TransactionColumns) {
+            TransactionColumns columns = (TransactionColumns) transactions;
+            for (int row = 0; row < columns.size(); row++) {
+                if (columns.getType(row) == TransactionType.EXPENSE
+                        && isWithin(categories.get(columns.getCategoryId(row)), category)) {
+                    series.addEpochDay(columns.getEpochDay(row), false, columns.getAmountCents(row));
+                }
+            }
+        } else {
+            for (Transaction transaction : transactions) {
+                if (transaction.getType() == TransactionType.EXPENSE && isWithin(transaction.getCategory(), category)) {
+                    series.addEpochDay((int) transaction.getDate().toEpochDay(), false, transaction.getAmountCents());
+                }
+            }
+        }
+        return series;
+    }
+    
+    private static boolean isWithin(Category category, Category ancestor) {
+        for (Category current = category; current != null; current = current.getParent()) {
+            if (current.equals(ancestor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // I totali dell'albero contano solo le spese, come il riepilogo per categoria: O(profondita')
+    private void addToCategoryTree(Category category, TransactionType type, long amountCents) {
+        if (type != TransactionType.EXPENSE) {
+            return;
+        }
+        ensureCategoryCapacity();
+        ownCents[category.getId()] += amountCents;
+        for (Category current = category; current != null; current = current.getParent()) {
+            subtreeCents[current.getId()] += amountCents;
+        }
+    }
+    
+    // Dopo uno spostamento nell'albero (anche fatto da un altro servizio sullo stesso registro)
+    private void rebuildCategoryTree() {
+        treeVersion = categories.getTreeVersion();
+        ensureCategoryCapacity();
+        Arrays.fill(subtreeCents, 0L);
+        for (int id = 0; id < ownCents.length; id++) {
+            if (ownCents[id] != 0) {
+                for (Category current = categories.get(id); current != null; current = current.getParent()) {
+                    subtreeCents[current.getId()] += ownCents[id];
+                }
+            }
+        }
+    }
+    
+    // Un posto per ogni categoria del registro, anche per i padri creati dopo le figlie
+    private void ensureCategoryCapacity() {
+        if (categories.size() > ownCents.length) {
+            int capacity = Math.max(ownCents.length * 2, categories.size());
+            ownCents = Arrays.copyOf(ownCents, capacity);
+            subtreeCents = Arrays.copyOf(subtreeCents, capacity);
+        }
+    }
+    
+    // Toglie le righe cancellate in un solo passaggio e aggiorna le posizioni di quelle spostate
+    private void purgeDeleted() {
+        if (deletedCount == 0) {
+            return;
+        }
+        int first = deleted.nextSetBit(0);
+        TransactionColumns.removeRows(transactions, deleted);
+        deleted.clear();
+        deletedCount = 0;
+        for (int row = first; row < transactions.size(); row++) {
+            positions.put(idAt(row), row);
+        }
+    }
+    
+    // ID della riga, senza creare la Transaction negli archivi a colonne
+    private long idAt(int row) {
+        return transactions instanceof TransactionColumns
+                ? ((TransactionColumns) transactions).getId(row)
+                : transactions.get(row).getIdValue();
     }
     
-    // Salva tutto
+    // Negli archivi a colonne la descrizione viene codificata dall'archivio stesso
+    private String intern(String description) {
+        return descriptions != null ? descriptions.intern(description) : description;
+    }
+    
+    // Le transazioni usano sempre l'istanza del registro
+    private Category canonical(Category category) {
+        return category != null ? categories.canonical(category) : null;
+    }
+    
+    // Salva solo quello che e' cambiato dall'ultimo salvataggio
     public void saveAll() throws DataAccessException {
-        repository.saveTransactions(transactions);
+        if (!hasUnsavedChanges()) {
+            logger.info("Nessuna modifica da salvare");
+            return;
+        }
+        
+        if (!unsaved.isEmpty()) {
+            // Modifiche che non erano arrivate nel log
+            for (Iterator<PendingChange> it = unsaved.values().iterator(); it.hasNext(); ) {
+                PendingChange change = it.next();
+                if (change.previous == null) {
+                    repository.appendTransaction(change.current);
+                } else if (change.current == null) {
+                    repository.deleteTransaction(change.previous);
+                } else {
+                    repository.updateTransaction(change.previous, change.current);
+                }
+                it.remove();
+            }
+            logger.info("Recuperate le modifiche non ancora salvate");
+        }
+        repository.sync();
+        
+        savedVersion = version;
         logger.info("Tutte le transazioni salvate su file CSV");
     }
     
+    /*
+     * Se l'ID aveva gia' una modifica in sospeso resta valida la versione salvata di allora.
+     * Un'aggiunta mai salvata e poi cancellata si registra comunque come cancellazione,
+     * nel caso la riga fosse arrivata nel log prima dell'errore.
+     */
+    private void markUnsaved(Transaction previous, Transaction current) {
+        long key = (current != null ? current : previous).getIdValue();
+        PendingChange pending = unsaved.get(key);
+        Transaction saved = pending != null && (pending.previous != null || current != null)
+                ? pending.previous
+                : previous;
+        unsaved.put(key, new PendingChange(saved, current));
+    }
+    
+    public boolean hasUnsavedChanges() {
+        return version != savedVersion || !unsaved.isEmpty() || repository.hasPendingWrites();
+    }
+    
+    // Chiude il repository scrivendo le righe ancora in attesa
+    public void close() throws DataAccessException {
+        repository.close();
+    }
+    
     // Carica dal file
     private void loadExistingTransactions() throws DataAccessException {
         try {
-            List<Transaction> loaded = repository.loadTransactions();
-            transactions.addAll(loaded);
+            // Snapshot, caricamento parallelo e log scrivono direttamente nell'archivio
+            repository.loadTransactions(descriptions, transactions);
+            for (int row = 0; row < transactions.size(); row++) {
+                positions.put(idAt(row), row);
+            }
+            dateIndex.rebuild(transactions);
+            if (transactions instanceof TransactionColumns) {
+                TransactionColumns columns = (TransactionColumns) transactions;
+                for (int row = 0; row < columns.size(); row++) {
+                    addToCategoryTree(categories.get(columns.getCategoryId(row)), columns.getType(row), columns.getAmountCents(row));
+                }
+            } else {
+                for (Transaction transaction : transactions) {
+                    addToCategoryTree(transaction.getCategory(), transaction.getType(), transaction.getAmountCents());
+                }
+            }
             
-            if (!loaded.isEmpty()) {
-                logger.info("Caricate " + loaded.size() + " transazioni esistenti dal file");
+            if (!transactions.isEmpty()) {
+                logger.info("Caricate " + transactions.size() + " transazioni esistenti dal file");
             }
         } catch (DataAccessException e) {
             logger.warning("Impossibile caricare transazioni esistenti: " + e.getMessage());
-            // Se non riesce a caricare, parte vuoto
+            // Se non riesce a caricare, parte vuoto (lo stream puo' essersi fermato a meta')
+            transactions.clear();
+        }
+    }
+    
+    /**
+     * Accumulatore di una strategia incrementale, aggiornato dal servizio
+     */
+    public static class MaterializedStrategy<A> {
+        private final IncrementalCalculationStrategy<A> strategy;
+        private final A accumulator;
+        
+        MaterializedStrategy(IncrementalCalculationStrategy<A> strategy, A accumulator) {
+            this.strategy = strategy;
+            this.accumulator = accumulator;
+        }
+        
+        void add(Transaction transaction) {
+            strategy.accumulate(accumulator, transaction);
+        }
+        
+        void remove(Transaction transaction) {
+            strategy.retract(accumulator, transaction);
+        }
+        
+        public Map<String, Object> results() {
+            return strategy.finish(accumulator);
+        }
+        
+        public IncrementalCalculationStrategy<A> getStrategy() {
+            return strategy;
+        }
+    }
+    
+    /**
+     * Riassunti mensili di una strategia approssimata, aggiornati dal servizio
+     */
+    public static class MaterializedSketches<S extends MergeableSketch<S>> {
+        private final MonthlySketchStrategy<S> strategy;
+        private final MonthlySketches<S> sketches;
+        
+        MaterializedSketches(MonthlySketchStrategy<S> strategy, MonthlySketches<S> sketches) {
+            this.strategy = strategy;
+            this.sketches = sketches;
+        }
+        
+        void add(Transaction transaction) {
+            strategy.accumulate(sketches, transaction);
+        }
+        
+        // Sostituisce il riassunto del mese con uno nuovo fatto dalle sue righe
+        void rebuild(YearMonth month, List<Transaction> rows) {
+            sketches.clear(month);
+            for (Transaction transaction : rows) {
+                strategy.accumulate(sketches, transaction);
+            }
+        }
+        
+        public Map<String, Object> results() {
+            return strategy.finish(sketches);
+        }
+        
+        public Map<String, Object> results(YearMonth from, YearMonth to) {
+            return strategy.finishRange(sketches, from, to);
+        }
+        
+        public MonthlySketchStrategy<S> getStrategy() {
+            return strategy;
+        }
+    }
+    
+    // Versione salvata (null se mai salvata) e versione corrente (null se cancellata)
+    private static class PendingChange {
+        private final Transaction previous;
+        private final Transaction current;
+        
+        PendingChange(Transaction previous, Transaction current) {
+            this.previous = previous;
+            this.current = current;
         }
     }
-} 
\ No newline at end of file
+}
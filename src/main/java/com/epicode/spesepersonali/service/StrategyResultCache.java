@@ -0,0 +1,238 @@
+package com.epicode.spesepersonali.service;
+
+import com.epicode.spesepersonali.strategy.CalculationStrategy;
+import com.epicode.spesepersonali.strategy.MonthlyTimeSeries;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Risultati delle strategie gia' calcolati, per chiave della strategia (getCacheKey),
+ * parametri e intervallo di mesi. Quando si supera la capacita' esce il risultato usato
+ * meno di recente. La chiave di default e' l'istanza: chi crea una strategia nuova a
+ * ogni richiesta non trova mai la cache e la riempie, quindi va riusata l'istanza.
+ *
+ * I risultati vengono salvati in sola lettura (anche mappe, liste e serie annidate):
+ * la stessa mappa arriva a piu' chiamanti e nessuno puo' cambiarla agli altri.
+ *
+ * Ogni modifica al registro aumenta la versione e la segna sul mese toccato: un risultato
+ * resta valido finche' nessun mese del suo intervallo e' cambiato dopo il calcolo, quindi
+ * una spesa di oggi non invalida i totali dei mesi passati. Non e' thread-safe.
+ */
+public class StrategyResultCache {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final int capacity;
+    private final Map<Key, CachedResult> entries;
+
+    private long version;
+    // Versione dell'ultima modifica per mese; lastChange vale per i risultati senza limiti
+    private final TreeMap<YearMonth, Long> monthVersions = new TreeMap<>();
+    private long lastChange;
+
+    private long hits;
+    private long misses;
+
+    public StrategyResultCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public StrategyResultCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacita' non valida: " + capacity);
+        }
+        this.capacity = capacity;
+        // Ordine di accesso: il primo e' il meno usato
+        this.entries = new LinkedHashMap<Key, CachedResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+                return size() > StrategyResultCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Restituisce il risultato valido per la strategia sui mesi da from a to compresi
+     * (null = nessun limite) oppure lo calcola con compute e lo salva
+     */
+    public Map<String, Object> get(CalculationStrategy strategy, YearMonth from, YearMonth to,
+                                   Supplier<Map<String, Object>> compute, Object... parameters) {
+        Key key = new Key(strategy, from, to, parameters);
+        Map<String, Object> results = find(key);
+        if (results == null) {
+            results = readOnly(compute.get());
+            entries.put(key, new CachedResult(results, version));
+        }
+        return results;
+    }
+
+    // Come get, su tutte le transazioni
+    public Map<String, Object> get(CalculationStrategy strategy, Supplier<Map<String, Object>> compute,
+                                   Object... parameters) {
+        return get(strategy, null, null, compute, parameters);
+    }
+
+    // Il risultato valido su tutte le transazioni, null se manca o e' scaduto
+    public Map<String, Object> find(CalculationStrategy strategy, Object... parameters) {
+        return find(new Key(strategy, null, null, parameters));
+    }
+
+    // Salva un risultato calcolato fuori dalla cache (es. insieme ad altre strategie)
+    // e restituisce la versione in sola lettura da dare ai chiamanti
+    public Map<String, Object> put(CalculationStrategy strategy, Map<String, Object> results, Object... parameters) {
+        Map<String, Object> stored = readOnly(results);
+        entries.put(new Key(strategy, null, null, parameters), new CachedResult(stored, version));
+        return stored;
+    }
+
+    // Segna una modifica a una transazione con questa data
+    public void invalidate(LocalDate date) {
+        version++;
+        lastChange = version;
+        monthVersions.put(YearMonth.from(date), version);
+    }
+
+    // Scade tutto (es. cambia la struttura delle categorie)
+    public void invalidateAll() {
+        entries.clear();
+        version++;
+        lastChange = version;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private Map<String, Object> find(Key key) {
+        CachedResult entry = entries.get(key);
+        if (entry != null && isValid(key, entry)) {
+            hits++;
+            return entry.results;
+        }
+        if (entry != null) {
+            entries.remove(key);
+        }
+        misses++;
+        return null;
+    }
+
+    // Valido se nessun mese dell'intervallo e' cambiato dopo il calcolo
+    private boolean isValid(Key key, CachedResult entry) {
+        if (lastChange <= entry.version) {
+            return true;
+        }
+        if (key.from == null && key.to == null) {
+            return false;
+        }
+        if (key.from != null && key.to != null && key.from.isAfter(key.to)) {
+            return true;
+        }
+
+        Map<YearMonth, Long> changed = monthVersions;
+        if (key.from != null && key.to != null) {
+            changed = monthVersions.subMap(key.from, true, key.to, true);
+        } else if (key.from != null) {
+            changed = monthVersions.tailMap(key.from, true);
+        } else {
+            changed = monthVersions.headMap(key.to, true);
+        }
+        for (long monthVersion : changed.values()) {
+            if (monthVersion > entry.version) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        long requests = hits + misses;
+        return String.format("Cache risultati: %d elementi, %d trovati, %d calcolati (%.0f%%)",
+                entries.size(), hits, misses, requests == 0 ? 0.0 : 100.0 * hits / requests);
+    }
+
+    // Copia in sola lettura, scendendo in mappe e liste; gli altri valori sono immutabili
+    @SuppressWarnings("unchecked")
+    private static <T> T readOnly(T value) {
+        if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), readOnly(entry.getValue()));
+            }
+            return (T) Collections.unmodifiableMap(copy);
+        }
+        if (value instanceof List) {
+            List<Object> copy = new ArrayList<>(((List<?>) value).size());
+            for (Object element : (List<?>) value) {
+                copy.add(readOnly(element));
+            }
+            return (T) Collections.unmodifiableList(copy);
+        }
+        if (value instanceof MonthlyTimeSeries) {
+            return (T) MonthlyTimeSeries.unmodifiable((MonthlyTimeSeries) value);
+        }
+        return value;
+    }
+    
+    // La strategia conta con la sua chiave (di default l'istanza stessa)
+    private static final class Key {
+        private final Object strategy;
+        private final YearMonth from;
+        private final YearMonth to;
+        private final List<Object> parameters;
+
+        Key(CalculationStrategy strategy, YearMonth from, YearMonth to, Object[] parameters) {
+            this.strategy = strategy.getCacheKey();
+            this.from = from;
+            this.to = to;
+            this.parameters = Arrays.asList(parameters);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return strategy.equals(other.strategy) && Objects.equals(from, other.from)
+                    && Objects.equals(to, other.to) && parameters.equals(other.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(strategy, from, to, parameters);
+        }
+    }
+
+    private static final class CachedResult {
+        private final Map<String, Object> results;
+        private final long version;
+
+        CachedResult(Map<String, Object> results, long version) {
+            this.results = results;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.epicode.spesepersonali.sketch;
+
+/**
+ * Conteggi approssimati per chiave in una tabella fissa di depth righe per width
+ * colonne. La stima non e' mai inferiore al valore vero e lo supera al massimo di
+ * circa 2.7 * totale / width nella maggior parte dei casi.
+ */
+public class CountMinSketch implements MergeableSketch<CountMinSketch> {
+    
+    public static final int DEFAULT_DEPTH = 4;
+    public static final int DEFAULT_WIDTH = 2048;
+    
+    private final int depth;
+    private final int width;
+    private final long[] counts;
+    private long total;
+    
+    public CountMinSketch() {
+        this(DEFAULT_DEPTH, DEFAULT_WIDTH);
+    }
+    
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || width < 1) {
+            throw new IllegalArgumentException("Dimensioni non valide: " + depth + " x " + width);
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counts = new long[depth * width];
+    }
+    
+    public void add(String key, long count) {
+        long hash = Hashing.hash64(key);
+        for (int row = 0; row < depth; row++) {
+            counts[row * width + column(hash, row)] += count;
+        }
+        total += count;
+    }
+    
+    // Il minimo tra le righe: la cella meno disturbata dalle altre chiavi
+    public long estimate(String key) {
+        long hash = Hashing.hash64(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counts[row * width + column(hash, row)]);
+        }
+        return estimate;
+    }
+    
+    public long getTotal() {
+        return total;
+    }
+    
+    @Override
+    public void merge(CountMinSketch other) {
+        if (other.depth != depth || other.width != width) {
+            throw new IllegalArgumentException("Dimensioni diverse: " + depth + " x " + width
+                    + " e " + other.depth + " x " + other.width);
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+    }
+    
+    // Una colonna diversa per riga dalle due meta' dello stesso hash
+    private int column(long hash, int row) {
+        int combined = (int) hash + row * (int) (hash >>> 32);
+        return Math.floorMod(combined, width);
+    }
+}
@@ -0,0 +1,32 @@
+package com.epicode.spesepersonali.sketch;
+
+/**
+ * Hash a 64 bit per le stringhe: FNV-1a sui caratteri e poi il rimescolamento
+ * finale di MurmurHash3, cosi' tutti i bit dipendono da tutto il testo
+ */
+final class Hashing {
+    
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    
+    private Hashing() {
+    }
+    
+    static long hash64(String value) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return mix(hash);
+    }
+    
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
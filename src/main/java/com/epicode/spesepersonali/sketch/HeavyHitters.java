@@ -0,0 +1,107 @@
+package com.epicode.spesepersonali.sketch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Chiavi piu' frequenti: i conteggi stanno in un CountMinSketch e solo un numero
+ * fisso di chiavi candidate viene tenuto in memoria. Una chiave nuova entra tra le
+ * candidate se la sua stima supera quella della candidata piu' debole.
+ */
+public class HeavyHitters implements MergeableSketch<HeavyHitters> {
+    
+    public static final int DEFAULT_CAPACITY = 64;
+    
+    private final int capacity;
+    private final CountMinSketch counts = new CountMinSketch();
+    // Candidata -> stima all'ultimo aggiornamento (le stime possono solo crescere)
+    private final Map<String, Long> candidates = new HashMap<>();
+    private String weakestKey;
+    private long weakest;
+    
+    public HeavyHitters() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    public HeavyHitters(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacita' non valida: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+    
+    public void add(String key) {
+        counts.add(key, 1);
+        long estimate = counts.estimate(key);
+        if (candidates.containsKey(key) || candidates.size() < capacity) {
+            candidates.put(key, estimate);
+            if (key.equals(weakestKey) || candidates.size() == capacity && weakestKey == null) {
+                findWeakest();
+            }
+        } else if (estimate > weakest) {
+            // Il minimo si ricalcola solo quando una candidata viene sostituita
+            candidates.remove(weakestKey);
+            candidates.put(key, estimate);
+            findWeakest();
+        }
+    }
+    
+    public long estimate(String key) {
+        return counts.estimate(key);
+    }
+    
+    // Le k candidate con la stima piu' alta, dalla piu' frequente
+    public Map<String, Long> top(int k) {
+        return ranked(candidates.keySet(), k);
+    }
+    
+    // Unisce i conteggi e tiene le candidate migliori delle due parti
+    @Override
+    public void merge(HeavyHitters other) {
+        counts.merge(other.counts);
+        Set<String> union = new HashSet<>(candidates.keySet());
+        union.addAll(other.candidates.keySet());
+        
+        candidates.clear();
+        candidates.putAll(ranked(union, capacity));
+        weakestKey = null;
+        if (candidates.size() == capacity) {
+            findWeakest();
+        }
+    }
+    
+    private Map<String, Long> ranked(Collection<String> keys, int k) {
+        List<String> sorted = new ArrayList<>(keys);
+        Map<String, Long> estimates = new HashMap<>();
+        for (String key : sorted) {
+            estimates.put(key, counts.estimate(key));
+        }
+        sorted.sort((a, b) -> {
+            int byCount = Long.compare(estimates.get(b), estimates.get(a));
+            return byCount != 0 ? byCount : a.compareTo(b);
+        });
+        
+        Map<String, Long> top = new LinkedHashMap<>();
+        for (String key : sorted.subList(0, Math.min(k, sorted.size()))) {
+            top.put(key, estimates.get(key));
+        }
+        return top;
+    }
+    
+    private void findWeakest() {
+        weakestKey = null;
+        weakest = Long.MAX_VALUE;
+        for (Map.Entry<String, Long> entry : candidates.entrySet()) {
+            if (entry.getValue() < weakest) {
+                weakest = entry.getValue();
+                weakestKey = entry.getKey();
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.epicode.spesepersonali.sketch;
+
+/**
+ * Riassunto approssimato a memoria fissa che puo' essere unito a un altro dello
+ * stesso tipo: unire i riassunti di due insiemi equivale a riassumere l'unione
+ *
+ * @param <S> il tipo concreto del riassunto
+ */
+public interface MergeableSketch<S extends MergeableSketch<S>> {
+    
+    /**
+     * Aggiunge a questo riassunto i valori di other (che non cambia)
+     */
+    void merge(S other);
+}
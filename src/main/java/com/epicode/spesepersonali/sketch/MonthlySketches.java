@@ -0,0 +1,92 @@
+package com.epicode.spesepersonali.sketch;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Un riassunto per mese: la memoria dipende dai mesi, non dalle righe, e un intervallo
+ * qualsiasi si ottiene unendo i riassunti dei suoi mesi. Non e' thread-safe.
+ *
+ * @param <S> il tipo di riassunto
+ */
+public class MonthlySketches<S extends MergeableSketch<S>> {
+    
+    private final Supplier<S> factory;
+    private final TreeMap<YearMonth, S> months = new TreeMap<>();
+    
+    // Ultimo mese usato, per non convertire ogni giorno in mese
+    private int cachedFirstDay = 1;
+    private int cachedLastDay;
+    private S cached;
+    
+    public MonthlySketches(Supplier<S> factory) {
+        this.factory = factory;
+    }
+    
+    // Il riassunto del mese, creato vuoto se manca
+    public S get(YearMonth month) {
+        return months.computeIfAbsent(month, m -> factory.get());
+    }
+    
+    public S get(LocalDate date) {
+        return getEpochDay((int) date.toEpochDay());
+    }
+    
+    // Come get, con la data come epoch day (letta dalle colonne)
+    public S getEpochDay(int epochDay) {
+        if (epochDay < cachedFirstDay || epochDay > cachedLastDay) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            cachedFirstDay = (int) date.withDayOfMonth(1).toEpochDay();
+            cachedLastDay = cachedFirstDay + date.lengthOfMonth() - 1;
+            cached = get(YearMonth.from(date));
+        }
+        return cached;
+    }
+    
+    // Un nuovo riassunto con i mesi da from a to compresi (null = nessun limite)
+    public S merged(YearMonth from, YearMonth to) {
+        S result = factory.get();
+        for (S sketch : range(from, to).values()) {
+            result.merge(sketch);
+        }
+        return result;
+    }
+    
+    // Toglie il riassunto del mese (es. per ricostruirlo dalle sue righe)
+    public void clear(YearMonth month) {
+        months.remove(month);
+        cachedFirstDay = 1;
+        cachedLastDay = 0;
+        cached = null;
+    }
+    
+    // Unisce mese per mese i riassunti di other
+    public void mergeAll(MonthlySketches<S> other) {
+        for (Map.Entry<YearMonth, S> entry : other.months.entrySet()) {
+            get(entry.getKey()).merge(entry.getValue());
+        }
+    }
+    
+    public NavigableMap<YearMonth, S> getMonths() {
+        return Collections.unmodifiableNavigableMap(months);
+    }
+    
+    private NavigableMap<YearMonth, S> range(YearMonth from, YearMonth to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            return Collections.emptyNavigableMap();
+        }
+        NavigableMap<YearMonth, S> range = months;
+        if (from != null) {
+            range = range.tailMap(from, true);
+        }
+        if (to != null) {
+            range = range.headMap(to, true);
+        }
+        return range;
+    }
+}
@@ -0,0 +1,181 @@
+package com.epicode.spesepersonali.sketch;
+
+import java.util.Arrays;
+
+/**
+ * Quantili approssimati (t-digest) con un numero fisso di centroidi: pochi e piccoli
+ * vicino agli estremi, dove serve precisione, piu' grandi al centro.
+ *
+ * I valori nuovi vanno in un buffer che, quando e' pieno, viene ordinato e fuso con i
+ * centroidi esistenti. Con compressione 100 restano al massimo un centinaio di centroidi.
+ */
+public class TDigest implements MergeableSketch<TDigest> {
+    
+    public static final double DEFAULT_COMPRESSION = 100;
+    
+    private final double compression;
+    private double[] means;
+    private double[] weights;
+    private int centroids;
+    private final double[] buffer;
+    private int buffered;
+    private double totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+    
+    public TDigest(double compression) {
+        if (compression < 10) {
+            throw new IllegalArgumentException("Compressione non valida (minimo 10): " + compression);
+        }
+        this.compression = compression;
+        int capacity = (int) Math.ceil(compression) * 2;
+        this.means = new double[capacity];
+        this.weights = new double[capacity];
+        this.buffer = new double[capacity * 4];
+    }
+    
+    public void add(double value) {
+        if (buffered == buffer.length) {
+            flush();
+        }
+        buffer[buffered++] = value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+    
+    public long size() {
+        return Math.round(totalWeight + buffered);
+    }
+    
+    // Valore stimato al quantile q in [0, 1]; NaN se il riassunto e' vuoto
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile non valido: " + q);
+        }
+        flush();
+        if (centroids == 0) {
+            return Double.NaN;
+        }
+        if (centroids == 1) {
+            return means[0];
+        }
+        
+        // Ogni centroide sta al centro del suo peso; tra due centri si interpola
+        double target = q * totalWeight;
+        double firstCenter = weights[0] / 2;
+        if (target <= firstCenter) {
+            return interpolate(min, means[0], target / firstCenter);
+        }
+        double cumulative = 0;
+        for (int i = 0; i < centroids - 1; i++) {
+            double center = cumulative + weights[i] / 2;
+            double nextCenter = cumulative + weights[i] + weights[i + 1] / 2;
+            if (target <= nextCenter) {
+                return interpolate(means[i], means[i + 1], (target - center) / (nextCenter - center));
+            }
+            cumulative += weights[i];
+        }
+        double lastCenter = totalWeight - weights[centroids - 1] / 2;
+        return interpolate(means[centroids - 1], max, (target - lastCenter) / (totalWeight - lastCenter));
+    }
+    
+    @Override
+    public void merge(TDigest other) {
+        other.flush();
+        flush();
+        if (other.centroids == 0) {
+            return;
+        }
+        
+        // Due liste gia' ordinate: basta fonderle e ricomprimere
+        double[] mergedMeans = new double[centroids + other.centroids];
+        double[] mergedWeights = new double[mergedMeans.length];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < mergedMeans.length; k++) {
+            boolean takeOwn = j == other.centroids || i < centroids && means[i] <= other.means[j];
+            mergedMeans[k] = takeOwn ? means[i] : other.means[j];
+            mergedWeights[k] = takeOwn ? weights[i++] : other.weights[j++];
+        }
+        
+        totalWeight += other.totalWeight;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        compress(mergedMeans, mergedWeights, mergedMeans.length);
+    }
+    
+    // Fonde il buffer ordinato con i centroidi
+    private void flush() {
+        if (buffered == 0) {
+            return;
+        }
+        Arrays.sort(buffer, 0, buffered);
+        double[] mergedMeans = new double[centroids + buffered];
+        double[] mergedWeights = new double[mergedMeans.length];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < mergedMeans.length; k++) {
+            boolean takeCentroid = j == buffered || i < centroids && means[i] <= buffer[j];
+            mergedMeans[k] = takeCentroid ? means[i] : buffer[j++];
+            mergedWeights[k] = takeCentroid ? weights[i++] : 1;
+        }
+        
+        totalWeight += buffered;
+        buffered = 0;
+        compress(mergedMeans, mergedWeights, mergedMeans.length);
+    }
+    
+    /*
+     * Un passaggio da sinistra a destra: un elemento si unisce al centroide corrente
+     * finche' il centroide resta entro un'unita' della scala k, che concede piu' peso
+     * al centro della distribuzione che alle code.
+     */
+    private void compress(double[] sortedMeans, double[] sortedWeights, int count) {
+        double[] newMeans = new double[Math.max(means.length, 16)];
+        double[] newWeights = new double[newMeans.length];
+        int size = 0;
+        
+        double before = 0;
+        double currentMean = sortedMeans[0];
+        double currentWeight = sortedWeights[0];
+        for (int i = 1; i < count; i++) {
+            double proposed = currentWeight + sortedWeights[i];
+            if (scale((before + proposed) / totalWeight) - scale(before / totalWeight) <= 1) {
+                currentMean += (sortedMeans[i] - currentMean) * sortedWeights[i] / proposed;
+                currentWeight = proposed;
+            } else {
+                if (size == newMeans.length) {
+                    newMeans = Arrays.copyOf(newMeans, size * 2);
+                    newWeights = Arrays.copyOf(newWeights, size * 2);
+                }
+                newMeans[size] = currentMean;
+                newWeights[size++] = currentWeight;
+                before += currentWeight;
+                currentMean = sortedMeans[i];
+                currentWeight = sortedWeights[i];
+            }
+        }
+        if (size == newMeans.length) {
+            newMeans = Arrays.copyOf(newMeans, size + 1);
+            newWeights = Arrays.copyOf(newWeights, size + 1);
+        }
+        newMeans[size] = currentMean;
+        newWeights[size++] = currentWeight;
+        
+        means = newMeans;
+        weights = newWeights;
+        centroids = size;
+    }
+    
+    private double scale(double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * Math.min(1, q) - 1);
+    }
+    
+    private static double interpolate(double from, double to, double fraction) {
+        return from + (to - from) * Math.max(0, Math.min(1, fraction));
+    }
+}
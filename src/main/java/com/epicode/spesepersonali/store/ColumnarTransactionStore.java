@@ -0,0 +1,266 @@
+package com.epicode.spesepersonali.store;
+
+import com.epicode.spesepersonali.model.Category;
+import com.epicode.spesepersonali.model.CategoryRegistry;
+import com.epicode.spesepersonali.model.DescriptionDictionary;
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.model.TransactionId;
+import com.epicode.spesepersonali.model.TransactionType;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Lista di transazioni salvata per colonne (struct of arrays): circa 29 byte per riga
+ * invece di un oggetto Transaction con data, stringhe e riferimenti.
+ *
+ * get() crea ogni volta una Transaction nuova con gli stessi valori.
+ */
+public class ColumnarTransactionStore extends AbstractList<Transaction> implements TransactionColumns, RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final TransactionType[] TRANSACTION_TYPES = TransactionType.values();
+
+    private final CategoryRegistry categories;
+    // Descrizioni uguali sono salvate una volta sola; descriptionRefs contiene i codici
+    private final DescriptionDictionary descriptions;
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private int[] epochDays = new int[INITIAL_CAPACITY];
+    private long[] amountCents = new long[INITIAL_CAPACITY];
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private int[] categoryIds = new int[INITIAL_CAPACITY];
+    private int[] descriptionRefs = new int[INITIAL_CAPACITY];
+    private int size;
+
+    // Solo per le transazioni dei vecchi file, con ID testuali
+    private final Map<Long, String> legacyIds = new HashMap<>();
+
+    public ColumnarTransactionStore(CategoryRegistry categories) {
+        this(categories, new DescriptionDictionary());
+    }
+
+    // Con un dizionario gia' in uso altrove le descrizioni non vengono duplicate
+    public ColumnarTransactionStore(CategoryRegistry categories, DescriptionDictionary descriptions) {
+        this.categories = categories;
+        this.descriptions = descriptions;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Crea la transazione a partire dalle colonne
+    @Override
+    public Transaction get(int row) {
+        checkIndex(row, size);
+        TransactionType type = TRANSACTION_TYPES[types[row]];
+        String description = descriptions.decode(descriptionRefs[row]);
+        Category category = categories.get(categoryIds[row]);
+        LocalDate date = LocalDate.ofEpochDay(epochDays[row]);
+
+        String legacyId = legacyIds.isEmpty() ? null : legacyIds.get(ids[row]);
+        if (legacyId != null) {
+            return Transaction.ofCents(legacyId, type, amountCents[row], description, category, date);
+        }
+        return Transaction.ofCents(ids[row], type, amountCents[row], description, category, date);
+    }
+
+    @Override
+    public Transaction set(int row, Transaction transaction) {
+        Transaction previous = get(row);
+        if (previous.getIdValue() != transaction.getIdValue()) {
+            legacyIds.remove(previous.getIdValue());
+        }
+        write(row, transaction);
+        return previous;
+    }
+
+    @Override
+    public void add(int row, Transaction transaction) {
+        checkIndex(row, size + 1);
+        ensureCapacity(size + 1);
+        if (row < size) {
+            shift(row, row + 1, size - row);
+        }
+        size++;
+        write(row, transaction);
+        modCount++;
+    }
+
+    @Override
+    public Transaction remove(int row) {
+        Transaction removed = get(row);
+        if (row < size - 1) {
+            shift(row + 1, row, size - row - 1);
+        }
+        size--;
+        legacyIds.remove(removed.getIdValue());
+        modCount++;
+        return removed;
+    }
+
+    // Sposta indietro ogni tratto di righe rimaste con una copia per colonna
+    @Override
+    public void removeRows(BitSet rows) {
+        int kept = rows.nextSetBit(0);
+        if (kept < 0 || kept >= size) {
+            return;
+        }
+        int row = kept;
+        while (row < size) {
+            int start = rows.nextClearBit(row);
+            if (start >= size) {
+                break;
+            }
+            int end = rows.nextSetBit(start);
+            end = end < 0 || end > size ? size : end;
+            shift(start, kept, end - start);
+            kept += end - start;
+            row = end;
+        }
+        size = kept;
+        retainLegacyIds();
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        legacyIds.clear();
+        modCount++;
+    }
+
+    @Override
+    public long getId(int row) {
+        return ids[row];
+    }
+
+    @Override
+    public int getEpochDay(int row) {
+        return epochDays[row];
+    }
+
+    @Override
+    public long getAmountCents(int row) {
+        return amountCents[row];
+    }
+
+    @Override
+    public TransactionType getType(int row) {
+        return TRANSACTION_TYPES[types[row]];
+    }
+
+    @Override
+    public int getCategoryId(int row) {
+        return categoryIds[row];
+    }
+
+    @Override
+    public int getDescriptionRef(int row) {
+        return descriptionRefs[row];
+    }
+
+    @Override
+    public String getDescription(int descriptionRef) {
+        return descriptions.decode(descriptionRef);
+    }
+
+    @Override
+    public int findDescriptionRef(String description) {
+        return descriptions.find(description);
+    }
+
+    @Override
+    public Transaction getTransaction(int row) {
+        return get(row);
+    }
+
+    @Override
+    public CategoryRegistry getCategoryRegistry() {
+        return categories;
+    }
+
+    @Override
+    public long[] amountCentsArray() {
+        return amountCents;
+    }
+
+    @Override
+    public byte[] typeCodeArray() {
+        return types;
+    }
+
+    @Override
+    public int[] categoryIdArray() {
+        return categoryIds;
+    }
+
+    @Override
+    public int[] descriptionRefArray() {
+        return descriptionRefs;
+    }
+
+    private void write(int row, Transaction transaction) {
+        ids[row] = transaction.getIdValue();
+        epochDays[row] = (int) transaction.getDate().toEpochDay();
+        amountCents[row] = transaction.getAmountCents();
+        types[row] = (byte) transaction.getType().ordinal();
+        categoryIds[row] = categories.canonical(transaction.getCategory()).getId();
+        descriptionRefs[row] = descriptions.encode(transaction.getDescription());
+
+        if (!TransactionId.isCanonical(transaction.getId())) {
+            legacyIds.put(transaction.getIdValue(), transaction.getId());
+        }
+    }
+
+    // Restano solo gli ID testuali delle righe ancora presenti
+    private void retainLegacyIds() {
+        if (legacyIds.isEmpty()) {
+            return;
+        }
+        Map<Long, String> retained = new HashMap<>();
+        for (int row = 0; row < size; row++) {
+            String legacyId = legacyIds.get(ids[row]);
+            if (legacyId != null) {
+                retained.put(ids[row], legacyId);
+            }
+        }
+        legacyIds.clear();
+        legacyIds.putAll(retained);
+    }
+
+    private void shift(int from, int to, int count) {
+        System.arraycopy(ids, from, ids, to, count);
+        System.arraycopy(epochDays, from, epochDays, to, count);
+        System.arraycopy(amountCents, from, amountCents, to, count);
+        System.arraycopy(types, from, types, to, count);
+        System.arraycopy(categoryIds, from, categoryIds, to, count);
+        System.arraycopy(descriptionRefs, from, descriptionRefs, to, count);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        epochDays = Arrays.copyOf(epochDays, newCapacity);
+        amountCents = Arrays.copyOf(amountCents, newCapacity);
+        types = Arrays.copyOf(types, newCapacity);
+        categoryIds = Arrays.copyOf(categoryIds, newCapacity);
+        descriptionRefs = Arrays.copyOf(descriptionRefs, newCapacity);
+    }
+
+    private static void checkIndex(int index, int limit) {
+        if (index < 0 || index >= limit) {
+            throw new IndexOutOfBoundsException("Indice: " + index + ", righe: " + limit);
+        }
+    }
+}
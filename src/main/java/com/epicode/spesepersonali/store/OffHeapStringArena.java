@@ -0,0 +1,162 @@
+package com.epicode.spesepersonali.store;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stringhe salvate una volta sola in UTF-8 fuori dall'heap, ognuna con un riferimento int.
+ *
+ * Sull'heap restano solo la tabella hash (un int per stringa) e i buffer; le String
+ * vengono ricreate da get() quando servono.
+ */
+class OffHeapStringArena {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int LENGTH_BYTES = 4;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    // Posizione di ogni stringa: (indice del blocco << 32) | posizione nel blocco
+    private ByteBuffer positions = allocate(16 * 8);
+    private int size;
+
+    // Hash aperto: riferimento + 1, 0 = libero
+    private int[] table = new int[64];
+
+    // Riferimento della stringa, aggiunta se non c'e' ancora
+    int intern(String value) {
+        return lookup(value.getBytes(StandardCharsets.UTF_8), true);
+    }
+
+    // Riferimento della stringa o -1, senza aggiungerla
+    int find(String value) {
+        return lookup(value.getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    String get(int ref) {
+        long position = positions.getLong(ref * 8);
+        ByteBuffer chunk = chunks.get((int) (position >>> 32));
+        int offset = (int) position;
+        int length = chunk.getInt(offset);
+
+        // Copia per non spostare la posizione del blocco, usata per aggiungere
+        ByteBuffer view = chunk.duplicate();
+        view.position(offset + LENGTH_BYTES);
+        byte[] bytes = new byte[length];
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int lookup(byte[] bytes, boolean add) {
+        int hash = hash(bytes);
+        int mask = table.length - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) {
+                if (!add) {
+                    return -1;
+                }
+                int ref = append(bytes);
+                table[slot] = ref + 1;
+                if (size * 2 > table.length) {
+                    rehash();
+                }
+                return ref;
+            }
+            if (matches(entry - 1, bytes)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private int append(byte[] bytes) {
+        int needed = LENGTH_BYTES + bytes.length;
+        ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || chunk.remaining() < needed) {
+            // Le stringhe piu' lunghe di un blocco ne hanno uno tutto per loro
+            chunk = allocate(Math.max(CHUNK_SIZE, needed));
+            chunks.add(chunk);
+        }
+
+        int offset = chunk.position();
+        chunk.putInt(bytes.length);
+        chunk.put(bytes);
+
+        if ((size + 1) * 8 > positions.capacity()) {
+            ByteBuffer bigger = allocate(positions.capacity() * 2);
+            ByteBuffer old = positions.duplicate();
+            old.clear();
+            bigger.put(old);
+            bigger.clear();
+            positions = bigger;
+        }
+        positions.putLong(size * 8, ((long) (chunks.size() - 1) << 32) | offset);
+        return size++;
+    }
+
+    private boolean matches(int ref, byte[] bytes) {
+        long position = positions.getLong(ref * 8);
+        ByteBuffer chunk = chunks.get((int) (position >>> 32));
+        int offset = (int) position;
+        if (chunk.getInt(offset) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (chunk.get(offset + LENGTH_BYTES + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        int[] bigger = new int[table.length * 2];
+        int mask = bigger.length - 1;
+        for (int ref = 0; ref < size; ref++) {
+            int slot = hashAt(ref) & mask;
+            while (bigger[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            bigger[slot] = ref + 1;
+        }
+        table = bigger;
+    }
+
+    // Stesso hash di hash(byte[]) calcolato sui byte gia' nel blocco
+    private int hashAt(int ref) {
+        long position = positions.getLong(ref * 8);
+        ByteBuffer chunk = chunks.get((int) (position >>> 32));
+        int offset = (int) position;
+        int length = chunk.getInt(offset);
+
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chunk.get(offset + LENGTH_BYTES + i);
+        }
+        return mix(hash);
+    }
+
+    private static int hash(byte[] bytes) {
+        int hash = 0;
+        for (byte b : bytes) {
+            hash = 31 * hash + b;
+        }
+        return mix(hash);
+    }
+
+    // Distribuisce meglio i bit bassi, quelli usati come indice
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,243 @@
+package com.epicode.spesepersonali.store;
+
+import com.epicode.spesepersonali.model.CategoryRegistry;
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.model.TransactionId;
+import com.epicode.spesepersonali.model.TransactionType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Lista di transazioni salvata fuori dall'heap: record a larghezza fissa in ByteBuffer
+ * diretti e descrizioni in un'area di stringhe anch'essa fuori dall'heap.
+ *
+ * Il garbage collector vede solo pochi buffer grandi invece di milioni di oggetti, quindi
+ * lo storico puo' superare di molto la dimensione dell'heap. I calcoli leggono i campi con
+ * TransactionColumns senza creare oggetti; get() crea la Transaction al momento.
+ */
+public class OffHeapTransactionStore extends AbstractList<Transaction> implements TransactionColumns, RandomAccess {
+
+    // Record: id, centesimi, giorno, categoria, descrizione, tipo (+ 3 byte di allineamento)
+    private static final int RECORD_SIZE = 32;
+    private static final int ID = 0;
+    private static final int AMOUNT_CENTS = 8;
+    private static final int EPOCH_DAY = 16;
+    private static final int CATEGORY_ID = 20;
+    private static final int DESCRIPTION_REF = 24;
+    private static final int TYPE = 28;
+
+    // Blocchi da 64K record (2 MB)
+    private static final int SEGMENT_SHIFT = 16;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+    private static final TransactionType[] TRANSACTION_TYPES = TransactionType.values();
+
+    private final CategoryRegistry categories;
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private final OffHeapStringArena descriptions = new OffHeapStringArena();
+    // Solo per le transazioni dei vecchi file, con ID testuali
+    private final Map<Long, String> legacyIds = new HashMap<>();
+    private int size;
+
+    public OffHeapTransactionStore(CategoryRegistry categories) {
+        this.categories = categories;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Crea la transazione a partire dal record
+    @Override
+    public Transaction get(int row) {
+        checkIndex(row, size);
+        long id = getId(row);
+        TransactionType type = getType(row);
+        long amountCents = getAmountCents(row);
+        String description = descriptions.get(getDescriptionRef(row));
+        LocalDate date = LocalDate.ofEpochDay(getEpochDay(row));
+
+        String legacyId = legacyIds.isEmpty() ? null : legacyIds.get(id);
+        if (legacyId != null) {
+            return Transaction.ofCents(legacyId, type, amountCents, description, categories.get(getCategoryId(row)), date);
+        }
+        return Transaction.ofCents(id, type, amountCents, description, categories.get(getCategoryId(row)), date);
+    }
+
+    @Override
+    public Transaction set(int row, Transaction transaction) {
+        Transaction previous = get(row);
+        if (previous.getIdValue() != transaction.getIdValue()) {
+            legacyIds.remove(previous.getIdValue());
+        }
+        write(row, transaction);
+        return previous;
+    }
+
+    @Override
+    public void add(int row, Transaction transaction) {
+        checkIndex(row, size + 1);
+        if (size >>> SEGMENT_SHIFT == segments.size()) {
+            segments.add(ByteBuffer.allocateDirect(RECORD_SIZE << SEGMENT_SHIFT).order(ByteOrder.nativeOrder()));
+        }
+        for (int i = size; i > row; i--) {
+            copyRecord(i - 1, i);
+        }
+        size++;
+        write(row, transaction);
+        modCount++;
+    }
+
+    @Override
+    public Transaction remove(int row) {
+        Transaction removed = get(row);
+        for (int i = row; i < size - 1; i++) {
+            copyRecord(i + 1, i);
+        }
+        size--;
+        legacyIds.remove(removed.getIdValue());
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public void removeRows(BitSet rows) {
+        int kept = 0;
+        for (int row = 0; row < size; row++) {
+            if (!rows.get(row)) {
+                if (kept != row) {
+                    copyRecord(row, kept);
+                }
+                kept++;
+            }
+        }
+        if (kept == size) {
+            return;
+        }
+        size = kept;
+        retainLegacyIds();
+        modCount++;
+    }
+
+    // I blocchi gia' allocati restano per le prossime righe
+    @Override
+    public void clear() {
+        size = 0;
+        legacyIds.clear();
+        modCount++;
+    }
+
+    @Override
+    public long getId(int row) {
+        return segment(row).getLong(offset(row) + ID);
+    }
+
+    @Override
+    public int getEpochDay(int row) {
+        return segment(row).getInt(offset(row) + EPOCH_DAY);
+    }
+
+    @Override
+    public long getAmountCents(int row) {
+        return segment(row).getLong(offset(row) + AMOUNT_CENTS);
+    }
+
+    @Override
+    public TransactionType getType(int row) {
+        return TRANSACTION_TYPES[segment(row).get(offset(row) + TYPE)];
+    }
+
+    @Override
+    public int getCategoryId(int row) {
+        return segment(row).getInt(offset(row) + CATEGORY_ID);
+    }
+
+    @Override
+    public int getDescriptionRef(int row) {
+        return segment(row).getInt(offset(row) + DESCRIPTION_REF);
+    }
+
+    @Override
+    public String getDescription(int descriptionRef) {
+        return descriptions.get(descriptionRef);
+    }
+
+    @Override
+    public int findDescriptionRef(String description) {
+        return descriptions.find(description);
+    }
+
+    @Override
+    public Transaction getTransaction(int row) {
+        return get(row);
+    }
+
+    @Override
+    public CategoryRegistry getCategoryRegistry() {
+        return categories;
+    }
+
+    private void write(int row, Transaction transaction) {
+        ByteBuffer segment = segment(row);
+        int offset = offset(row);
+        segment.putLong(offset + ID, transaction.getIdValue());
+        segment.putLong(offset + AMOUNT_CENTS, transaction.getAmountCents());
+        segment.putInt(offset + EPOCH_DAY, (int) transaction.getDate().toEpochDay());
+        segment.putInt(offset + CATEGORY_ID, categories.canonical(transaction.getCategory()).getId());
+        segment.putInt(offset + DESCRIPTION_REF, descriptions.intern(transaction.getDescription()));
+        segment.put(offset + TYPE, (byte) transaction.getType().ordinal());
+
+        if (!TransactionId.isCanonical(transaction.getId())) {
+            legacyIds.put(transaction.getIdValue(), transaction.getId());
+        }
+    }
+
+    // Restano solo gli ID testuali delle righe ancora presenti
+    private void retainLegacyIds() {
+        if (legacyIds.isEmpty()) {
+            return;
+        }
+        Map<Long, String> retained = new HashMap<>();
+        for (int row = 0; row < size; row++) {
+            String legacyId = legacyIds.get(getId(row));
+            if (legacyId != null) {
+                retained.put(getId(row), legacyId);
+            }
+        }
+        legacyIds.clear();
+        legacyIds.putAll(retained);
+    }
+
+    private void copyRecord(int from, int to) {
+        ByteBuffer source = segment(from);
+        ByteBuffer target = segment(to);
+        int sourceOffset = offset(from);
+        int targetOffset = offset(to);
+        for (int i = 0; i < RECORD_SIZE; i += 8) {
+            target.putLong(targetOffset + i, source.getLong(sourceOffset + i));
+        }
+    }
+
+    private ByteBuffer segment(int row) {
+        return segments.get(row >>> SEGMENT_SHIFT);
+    }
+
+    private static int offset(int row) {
+        return (row & SEGMENT_MASK) * RECORD_SIZE;
+    }
+
+    private static void checkIndex(int index, int limit) {
+        if (index < 0 || index >= limit) {
+            throw new IndexOutOfBoundsException("Indice: " + index + ", righe: " + limit);
+        }
+    }
+}
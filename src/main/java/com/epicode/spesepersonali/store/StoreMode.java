@@ -0,0 +1,13 @@
+package com.epicode.spesepersonali.store;
+
+/**
+ * Come ExpenseService tiene in memoria le transazioni
+ */
+public enum StoreMode {
+    // Una lista di oggetti Transaction
+    OBJECTS,
+    // Colonne di array primitivi, le Transaction vengono create quando servono
+    COLUMNAR,
+    // Record a larghezza fissa fuori dall'heap, per storici piu' grandi dell'heap
+    OFF_HEAP
+}
@@ -0,0 +1,86 @@
+package com.epicode.spesepersonali.store;
+
+import com.epicode.spesepersonali.model.CategoryRegistry;
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.model.TransactionType;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Accesso per colonne alle transazioni: i calcoli possono scorrere i valori
+ * primitivi riga per riga senza creare oggetti Transaction
+ */
+public interface TransactionColumns {
+    
+    int size();
+    
+    long getId(int row);
+    
+    int getEpochDay(int row);
+    
+    // Importo in centesimi
+    long getAmountCents(int row);
+    
+    TransactionType getType(int row);
+    
+    // Indice della categoria nel registro
+    int getCategoryId(int row);
+    
+    // Riferimento alla tabella delle descrizioni
+    int getDescriptionRef(int row);
+    
+    String getDescription(int descriptionRef);
+    
+    // Riferimento della descrizione, -1 se nessuna riga la usa: i filtri confrontano i riferimenti
+    int findDescriptionRef(String description);
+    
+    // La riga intera come oggetto, creato al momento
+    Transaction getTransaction(int row);
+    
+    CategoryRegistry getCategoryRegistry();
+    
+    // Toglie le righe segnate in un solo passaggio, le altre restano nel loro ordine
+    void removeRows(BitSet rows);
+    
+    // Come removeRows, anche per le liste normali
+    static void removeRows(List<Transaction> transactions, BitSet rows) {
+        if (transactions instanceof TransactionColumns) {
+            ((TransactionColumns) transactions).removeRows(rows);
+            return;
+        }
+        int size = transactions.size();
+        int kept = 0;
+        for (int row = 0; row < size; row++) {
+            if (!rows.get(row)) {
+                if (kept != row) {
+                    transactions.set(kept, transactions.get(row));
+                }
+                kept++;
+            }
+        }
+        transactions.subList(kept, size).clear();
+    }
+    
+    /*
+     * Le colonne come array, se l'archivio le tiene cosi' (altrimenti null).
+     * Sono valide le prime size() posizioni e vanno solo lette.
+     */
+    
+    default long[] amountCentsArray() {
+        return null;
+    }
+    
+    // Codice del tipo: TransactionType.ordinal()
+    default byte[] typeCodeArray() {
+        return null;
+    }
+    
+    default int[] categoryIdArray() {
+        return null;
+    }
+    
+    default int[] descriptionRefArray() {
+        return null;
+    }
+}
@@ -0,0 +1,108 @@
+package com.epicode.spesepersonali.strategy;
+
+/**
+ * Somme di importi in centesimi su array primitivi.
+ *
+ * I cicli sono semplici e senza salti (il filtro sul tipo e' una maschera di bit),
+ * cosi' il JIT puo' srotolarli e vettorizzarli.
+ */
+public final class AmountKernels {
+    
+    private AmountKernels() {
+    }
+    
+    public static long sum(long[] values, int length) {
+        long sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+    
+    // Somma solo le righe con codes[i] == code
+    public static long sumWhere(long[] values, byte[] codes, byte code, int length) {
+        return sumWhere(values, codes, code, 0, length);
+    }
+    
+    // Come sopra, solo per le righe in [from, to)
+    public static long sumWhere(long[] values, byte[] codes, byte code, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += values[i] & equalMask(codes[i], code);
+        }
+        return sum;
+    }
+    
+    // totals[keys[i]] += values[i] per le righe con codes[i] == code
+    public static void sumPerKeyWhere(long[] values, int[] keys, byte[] codes, byte code, long[] totals, int length) {
+        sumPerKeyWhere(values, keys, codes, code, totals, 0, length);
+    }
+    
+    public static void sumPerKeyWhere(long[] values, int[] keys, byte[] codes, byte code, long[] totals,
+                                      int from, int to) {
+        for (int i = from; i < to; i++) {
+            totals[keys[i]] += values[i] & equalMask(codes[i], code);
+        }
+    }
+    
+    // -1 (tutti i bit a uno) se a == b, altrimenti 0
+    private static long equalMask(byte a, byte b) {
+        int difference = a ^ b;
+        return ~((difference | -difference) >> 31);
+    }
+    
+    /*
+     * Quickselect: sposta in values[k] il valore che avrebbe in posizione k se le prime
+     * length posizioni fossero ordinate e lo restituisce. O(n) in media, senza ordinare
+     * tutto; l'ordine degli altri valori cambia.
+     */
+    public static long select(long[] values, int length, int k) {
+        if (k < 0 || k >= length) {
+            throw new IndexOutOfBoundsException("Posizione: " + k + ", valori: " + length);
+        }
+        int low = 0;
+        int high = length - 1;
+        while (low < high) {
+            // Pivot: mediana di primo, centro e ultimo
+            int middle = (low + high) >>> 1;
+            if (values[middle] < values[low]) {
+                swap(values, middle, low);
+            }
+            if (values[high] < values[low]) {
+                swap(values, high, low);
+            }
+            if (values[high] < values[middle]) {
+                swap(values, high, middle);
+            }
+            long pivot = values[middle];
+            
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, i++, j--);
+                }
+            }
+            if (k <= j) {
+                high = j;
+            } else if (k >= i) {
+                low = i;
+            } else {
+                return values[k];
+            }
+        }
+        return values[k];
+    }
+    
+    private static void swap(long[] values, int a, int b) {
+        long tmp = values[a];
+        values[a] = values[b];
+        values[b] = tmp;
+    }
+}
@@ -0,0 +1,181 @@
+package com.epicode.spesepersonali.strategy;
+
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.store.TransactionColumns;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Esegue piu' strategie con un solo passaggio sulle transazioni.
+ *
+ * Le righe vengono lette a blocchi abbastanza piccoli da restare in cache: ogni blocco
+ * passa a tutte le strategie prima di leggere il successivo, quindi aggiungere una
+ * strategia non rilegge la memoria. Il tempo di ogni strategia viene misurato per
+ * blocco, non per riga, cosi' la misura costa poco.
+ *
+ * Le strategie che non sono StreamingCalculationStrategy vengono eseguite a parte
+ * con calculate (solo sulle liste).
+ */
+public class AnalyticsEngine {
+    
+    public static final int BLOCK_SIZE = 4096;
+    
+    private final List<CalculationStrategy> strategies;
+    
+    public AnalyticsEngine(List<? extends CalculationStrategy> strategies) {
+        this.strategies = new ArrayList<>(strategies);
+    }
+    
+    public AnalyticsReport run(List<Transaction> transactions) {
+        AnalyticsReport report = new AnalyticsReport();
+        List<Slot<?>> slots = new ArrayList<>();
+        for (CalculationStrategy strategy : strategies) {
+            if (strategy instanceof StreamingCalculationStrategy) {
+                slots.add(Slot.of((StreamingCalculationStrategy<?>) strategy));
+            } else {
+                long start = System.nanoTime();
+                Map<String, Object> results = strategy.calculate(transactions);
+                report.add(strategy, results, System.nanoTime() - start);
+            }
+        }
+        
+        if (!slots.isEmpty()) {
+            if (transactions instanceof TransactionColumns) {
+                runColumns(slots, (TransactionColumns) transactions);
+            } else {
+                Transaction[] block = new Transaction[BLOCK_SIZE];
+                int count = 0;
+                for (Transaction transaction : transactions) {
+                    block[count++] = transaction;
+                    if (count == BLOCK_SIZE) {
+                        feed(slots, block, count);
+                        count = 0;
+                    }
+                }
+                feed(slots, block, count);
+            }
+        }
+        
+        finish(slots, report);
+        report.setRows(transactions.size());
+        return report;
+    }
+    
+    // Un solo passaggio anche su uno stream (es. TransactionRepository.streamTransactions)
+    public AnalyticsReport run(Stream<Transaction> transactions) {
+        List<Slot<?>> slots = new ArrayList<>();
+        for (CalculationStrategy strategy : strategies) {
+            if (!(strategy instanceof StreamingCalculationStrategy)) {
+                throw new IllegalArgumentException("Su uno stream servono strategie in streaming: "
+                        + strategy.getStrategyName());
+            }
+            slots.add(Slot.of((StreamingCalculationStrategy<?>) strategy));
+        }
+        
+        Transaction[] block = new Transaction[BLOCK_SIZE];
+        int count = 0;
+        int rows = 0;
+        for (Iterator<Transaction> it = transactions.iterator(); it.hasNext(); ) {
+            block[count++] = it.next();
+            rows++;
+            if (count == BLOCK_SIZE) {
+                feed(slots, block, count);
+                count = 0;
+            }
+        }
+        feed(slots, block, count);
+        
+        AnalyticsReport report = new AnalyticsReport();
+        finish(slots, report);
+        report.setRows(rows);
+        return report;
+    }
+    
+    /*
+     * Le strategie con accumulo a intervalli leggono direttamente le colonne del blocco;
+     * per le altre le righe del blocco diventano oggetti una volta sola, per tutte.
+     */
+    private static void runColumns(List<Slot<?>> slots, TransactionColumns columns) {
+        boolean needsObjects = false;
+        for (Slot<?> slot : slots) {
+            needsObjects |= !(slot.strategy instanceof ParallelCalculationStrategy);
+        }
+        
+        Transaction[] block = needsObjects ? new Transaction[BLOCK_SIZE] : null;
+        for (int from = 0; from < columns.size(); from += BLOCK_SIZE) {
+            int to = Math.min(from + BLOCK_SIZE, columns.size());
+            if (needsObjects) {
+                for (int row = from; row < to; row++) {
+                    block[row - from] = columns.getTransaction(row);
+                }
+            }
+            for (Slot<?> slot : slots) {
+                slot.accumulate(columns, from, to, block);
+            }
+        }
+    }
+    
+    private static void feed(List<Slot<?>> slots, Transaction[] block, int count) {
+        if (count == 0) {
+            return;
+        }
+        for (Slot<?> slot : slots) {
+            slot.accumulate(block, count);
+        }
+    }
+    
+    private static void finish(List<Slot<?>> slots, AnalyticsReport report) {
+        for (Slot<?> slot : slots) {
+            Map<String, Object> results = slot.finish();
+            report.add(slot.strategy, results, slot.nanos);
+        }
+    }
+    
+    // Una strategia con il suo accumulatore e il tempo speso finora
+    private static class Slot<A> {
+        private final StreamingCalculationStrategy<A> strategy;
+        private final A accumulator;
+        private long nanos;
+        
+        private Slot(StreamingCalculationStrategy<A> strategy) {
+            this.strategy = strategy;
+            this.accumulator = strategy.createAccumulator();
+        }
+        
+        static <A> Slot<A> of(StreamingCalculationStrategy<A> strategy) {
+            return new Slot<>(strategy);
+        }
+        
+        void accumulate(Transaction[] block, int count) {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                strategy.accumulate(accumulator, block[i]);
+            }
+            nanos += System.nanoTime() - start;
+        }
+        
+        @SuppressWarnings("unchecked")
+        void accumulate(TransactionColumns columns, int from, int to, Transaction[] block) {
+            long start = System.nanoTime();
+            if (strategy instanceof ParallelCalculationStrategy) {
+                ((ParallelCalculationStrategy<A>) strategy).accumulateColumns(accumulator, columns, from, to);
+            } else {
+                for (int i = 0; i < to - from; i++) {
+                    strategy.accumulate(accumulator, block[i]);
+                }
+            }
+            nanos += System.nanoTime() - start;
+        }
+        
+        Map<String, Object> finish() {
+            long start = System.nanoTime();
+            Map<String, Object> results = strategy.finish(accumulator);
+            nanos += System.nanoTime() - start;
+            return results;
+        }
+    }
+}
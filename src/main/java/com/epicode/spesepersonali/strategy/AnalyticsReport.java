@@ -0,0 +1,117 @@
+package com.epicode.spesepersonali.strategy;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Risultati di piu' strategie calcolate insieme, con il tempo speso da ognuna.
+ *
+ * Le strategie sono identificate dall'istanza: due strategie con lo stesso nome
+ * (es. due TopExpensesStrategy(5) diverse) restano separate. La ricerca per nome
+ * restituisce la prima con quel nome.
+ */
+public class AnalyticsReport {
+    
+    // In ordine di aggiunta
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<CalculationStrategy, Entry> byStrategy = new IdentityHashMap<>();
+    private int rows;
+    
+    // Aggiunge i risultati di una strategia; la stessa istanza aggiunta di nuovo li sostituisce
+    public void add(CalculationStrategy strategy, Map<String, Object> strategyResults, long elapsedNanos) {
+        Entry entry = byStrategy.get(strategy);
+        if (entry == null) {
+            entry = new Entry(strategy);
+            byStrategy.put(strategy, entry);
+            entries.add(entry);
+        }
+        entry.results = strategyResults;
+        entry.nanos = elapsedNanos;
+    }
+    
+    public Map<String, Object> getResults(CalculationStrategy strategy) {
+        Entry entry = byStrategy.get(strategy);
+        return entry != null ? entry.results : null;
+    }
+    
+    // Risultati della prima strategia con questo nome, null se non presente
+    public Map<String, Object> getResults(String strategyName) {
+        Entry entry = find(strategyName);
+        return entry != null ? entry.results : null;
+    }
+    
+    // Tempo speso dalla strategia in nanosecondi, 0 se non presente
+    public long getNanos(CalculationStrategy strategy) {
+        Entry entry = byStrategy.get(strategy);
+        return entry != null ? entry.nanos : 0L;
+    }
+    
+    public long getNanos(String strategyName) {
+        Entry entry = find(strategyName);
+        return entry != null ? entry.nanos : 0L;
+    }
+    
+    public long getTotalNanos() {
+        long total = 0;
+        for (Entry entry : entries) {
+            total += entry.nanos;
+        }
+        return total;
+    }
+    
+    public List<CalculationStrategy> getStrategies() {
+        List<CalculationStrategy> strategies = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            strategies.add(entry.strategy);
+        }
+        return strategies;
+    }
+    
+    // Nomi in ordine di aggiunta, anche ripetuti
+    public List<String> getStrategyNames() {
+        List<String> names = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            names.add(entry.strategy.getStrategyName());
+        }
+        return names;
+    }
+    
+    // Righe lette nel passaggio unico (0 se tutti i risultati erano gia' pronti)
+    public int getRows() {
+        return rows;
+    }
+    
+    void setRows(int rows) {
+        this.rows = rows;
+    }
+    
+    private Entry find(String strategyName) {
+        for (Entry entry : entries) {
+            if (entry.strategy.getStrategyName().equals(strategyName)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Analisi su " + rows + " righe:");
+        for (Entry entry : entries) {
+            builder.append(String.format(" %s %.3f ms;", entry.strategy.getStrategyName(), entry.nanos / 1_000_000.0));
+        }
+        return builder.toString();
+    }
+    
+    private static final class Entry {
+        private final CalculationStrategy strategy;
+        private Map<String, Object> results;
+        private long nanos;
+        
+        Entry(CalculationStrategy strategy) {
+            this.strategy = strategy;
+        }
+    }
+}
@@ -26,4 +26,14 @@ public interface CalculationStrategy {
      * Descrizione di cosa fa questa strategia
      */
     String getDescription();
+    
+    /**
+     * Chiave dei risultati nella cache del servizio. Di default e' l'istanza stessa:
+     * una nuova istanza a ogni chiamata non trova mai i risultati della precedente.
+     * Le strategie che danno gli stessi risultati a parita' di parametri restituiscono
+     * un valore con equals (es. classe e parametri), cosi' le istanze uguali li condividono.
+     */
+    default Object getCacheKey() {
+        return this;
+    }
 } 
\ No newline at end of file
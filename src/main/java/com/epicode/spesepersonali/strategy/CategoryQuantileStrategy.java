@@ -0,0 +1,120 @@
+package com.epicode.spesepersonali.strategy;
+
+import com.epicode.spesepersonali.model.Amounts;
+import com.epicode.spesepersonali.model.Category;
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.model.TransactionType;
+import com.epicode.spesepersonali.store.TransactionColumns;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Mediana e 90esimo percentile esatti della spesa per categoria.
+ *
+ * Gli importi di ogni categoria vengono raccolti in un array di long (niente oggetti
+ * per riga) e i percentili si trovano con quickselect, in O(n) medio invece di ordinare.
+ * Percentile "nearest rank": il valore in posizione ceil(p * n) tra quelli ordinati,
+ * quindi la mediana di un numero pari di spese e' la minore delle due centrali.
+ */
+public class CategoryQuantileStrategy implements ParallelCalculationStrategy<Map<Category, CategoryQuantileStrategy.Values>> {
+    
+    // Importi in centesimi di una categoria
+    public static class Values {
+        long[] cents = new long[8];
+        int size;
+        
+        void add(long amountCents) {
+            if (size == cents.length) {
+                cents = Arrays.copyOf(cents, size * 2);
+            }
+            cents[size++] = amountCents;
+        }
+    }
+    
+    // Chiave: l'istanza della categoria (per riga solo un hash di identita'), unite per nome alla fine
+    @Override
+    public Map<Category, Values> createAccumulator() {
+        return new IdentityHashMap<>();
+    }
+    
+    @Override
+    public void accumulate(Map<Category, Values> values, Transaction transaction) {
+        if (transaction.getType() == TransactionType.EXPENSE) {
+            values.computeIfAbsent(transaction.getCategory(), category -> new Values()).add(transaction.getAmountCents());
+        }
+    }
+    
+    @Override
+    public void accumulateColumns(Map<Category, Values> values, TransactionColumns columns, int from, int to) {
+        for (int row = from; row < to; row++) {
+            if (columns.getType(row) == TransactionType.EXPENSE) {
+                Category category = columns.getCategoryRegistry().get(columns.getCategoryId(row));
+                values.computeIfAbsent(category, c -> new Values()).add(columns.getAmountCents(row));
+            }
+        }
+    }
+    
+    @Override
+    public void accumulateColumns(Map<Category, Values> values, TransactionColumns columns) {
+        accumulateColumns(values, columns, 0, columns.size());
+    }
+    
+    @Override
+    public void combine(Map<Category, Values> values, Map<Category, Values> other) {
+        for (Map.Entry<Category, Values> entry : other.entrySet()) {
+            Values target = values.computeIfAbsent(entry.getKey(), category -> new Values());
+            for (int i = 0; i < entry.getValue().size; i++) {
+                target.add(entry.getValue().cents[i]);
+            }
+        }
+    }
+    
+    @Override
+    public Map<String, Object> finish(Map<Category, Values> values) {
+        // Istanze diverse con lo stesso nome contano come una categoria
+        Map<String, Values> byName = new HashMap<>();
+        for (Map.Entry<Category, Values> entry : values.entrySet()) {
+            Values merged = byName.computeIfAbsent(entry.getKey().getName(), name -> new Values());
+            for (int i = 0; i < entry.getValue().size; i++) {
+                merged.add(entry.getValue().cents[i]);
+            }
+        }
+        
+        Map<String, Double> mediana = new HashMap<>();
+        Map<String, Double> p90 = new HashMap<>();
+        for (Map.Entry<String, Values> entry : byName.entrySet()) {
+            Values v = entry.getValue();
+            mediana.put(entry.getKey(), Amounts.toDouble(AmountKernels.select(v.cents, v.size, rank(0.5, v.size))));
+            p90.put(entry.getKey(), Amounts.toDouble(AmountKernels.select(v.cents, v.size, rank(0.9, v.size))));
+        }
+        
+        Map<String, Object> results = new HashMap<>();
+        results.put("medianaSpese", mediana);
+        results.put("p90Spese", p90);
+        return results;
+    }
+    
+    // Posizione (da 0) del percentile p tra n valori ordinati
+    static int rank(double p, int n) {
+        return Math.max(0, (int) Math.ceil(p * n) - 1);
+    }
+    
+    // Senza parametri: tutte le istanze danno gli stessi risultati
+    @Override
+    public Object getCacheKey() {
+        return getClass();
+    }
+    
+    @Override
+    public String getStrategyName() {
+        return "Percentili";
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Mediana e 90esimo percentile delle spese per categoria";
+    }
+}
@@ -1,43 +1,205 @@
 package com.epicode.spesepersonali.strategy;
 
+import com.epicode.spesepersonali.model.Amounts;
+import com.epicode.spesepersonali.model.Category;
+import com.epicode.spesepersonali.model.CategoryRegistry;
 import com.epicode.spesepersonali.model.Transaction;
 import com.epicode.spesepersonali.model.TransactionType;
+import com.epicode.spesepersonali.store.TransactionColumns;
 
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
- * Raggruppa per categoria
+ * Raggruppa per categoria, anche a un livello dell'albero delle categorie:
+ * con depth = 0 le spese delle sottocategorie vengono sommate nelle categorie radice
  */
-public class CategorySummaryStrategy implements CalculationStrategy {
+public class CategorySummaryStrategy implements IncrementalCalculationStrategy<CategorySummaryStrategy.Totals>,
+        ParallelCalculationStrategy<CategorySummaryStrategy.Totals> {
+    
+    private static final byte EXPENSE = (byte) TransactionType.EXPENSE.ordinal();
+    
+    // Livello a cui raggruppare, -1 = ogni categoria per conto suo
+    private final int depth;
+    
+    public CategorySummaryStrategy() {
+        this(-1);
+    }
+    
+    public CategorySummaryStrategy(int depth) {
+        this.depth = depth;
+    }
+    
+    /*
+     * Centesimi spesi e numero di spese per id di categoria, in array: nessun oggetto
+     * creato per riga. Le categorie non registrate (o con un id gia' usato da un altro
+     * nome) finiscono nella mappa per nome, come {centesimi, spese}.
+     */
+    public static class Totals {
+        long[] cents = new long[16];
+        int[] counts = new int[16];
+        Category[] owners = new Category[16];
+        Map<String, long[]> byName;
+        
+        void add(Category category, long amountCents, int count) {
+            int id = category.getId();
+            if (id >= 0) {
+                if (id >= owners.length) {
+                    int capacity = Math.max(id + 1, owners.length * 2);
+                    cents = Arrays.copyOf(cents, capacity);
+                    counts = Arrays.copyOf(counts, capacity);
+                    owners = Arrays.copyOf(owners, capacity);
+                }
+                Category owner = owners[id];
+                if (owner == null) {
+                    owners[id] = category;
+                    owner = category;
+                }
+                if (owner == category || owner.getName().equals(category.getName())) {
+                    cents[id] += amountCents;
+                    counts[id] += count;
+                    return;
+                }
+            }
+            
+            if (byName == null) {
+                byName = new HashMap<>();
+            }
+            long[] entry = byName.computeIfAbsent(category.getName(), name -> new long[2]);
+            entry[0] += amountCents;
+            entry[1] += count;
+        }
+    }
     
     @Override
-    public Map<String, Object> calculate(List<Transaction> transactions) {
-        Map<String, Object> results = new HashMap<>();
-        Map<String, Double> categorieSpese = new HashMap<>();
+    public Totals createAccumulator() {
+        return new Totals();
+    }
+    
+    // Conta per categoria
+    @Override
+    public void accumulate(Totals totals, Transaction transaction) {
+        if (transaction.getType() == TransactionType.EXPENSE) {
+            totals.add(transaction.getCategory(), transaction.getAmountCents(), 1);
+        }
+    }
+    
+    @Override
+    public void retract(Totals totals, Transaction transaction) {
+        if (transaction.getType() == TransactionType.EXPENSE) {
+            totals.add(transaction.getCategory(), -transaction.getAmountCents(), -1);
+        }
+    }
+    
+    @Override
+    public void accumulateColumns(Totals totals, TransactionColumns columns) {
+        accumulateColumns(totals, columns, 0, columns.size());
+    }
+    
+    // Somma per id del registro in un array locale, poi aggiunge una volta per categoria
+    @Override
+    public void accumulateColumns(Totals totals, TransactionColumns columns, int from, int to) {
+        CategoryRegistry registry = columns.getCategoryRegistry();
+        long[] centsPerCategory = new long[registry.size()];
+        int[] countPerCategory = new int[centsPerCategory.length];
+        
+        long[] amounts = columns.amountCentsArray();
+        byte[] types = columns.typeCodeArray();
+        int[] categoryIds = columns.categoryIdArray();
         
-        // Conta per categoria
-        for (Transaction transaction : transactions) {
-            if (transaction.getType() == TransactionType.EXPENSE) {
-                String categoria = transaction.getCategory().getName();
-                double importo = categorieSpese.getOrDefault(categoria, 0.0);
-                categorieSpese.put(categoria, importo + transaction.getAmount());
+        for (int row = from; row < to; row++) {
+            if (columns.getType(row) == TransactionType.EXPENSE) {
+                countPerCategory[columns.getCategoryId(row)]++;
+            }
+        }
+        if (amounts != null && types != null && categoryIds != null) {
+            AmountKernels.sumPerKeyWhere(amounts, categoryIds, types, EXPENSE, centsPerCategory, from, to);
+        } else {
+            for (int row = from; row < to; row++) {
+                if (columns.getType(row) == TransactionType.EXPENSE) {
+                    centsPerCategory[columns.getCategoryId(row)] += columns.getAmountCents(row);
+                }
             }
         }
         
-        results.put("categorieSpese", categorieSpese);
+        for (int categoryId = 0; categoryId < centsPerCategory.length; categoryId++) {
+            if (countPerCategory[categoryId] > 0) {
+                totals.add(registry.get(categoryId), centsPerCategory[categoryId], countPerCategory[categoryId]);
+            }
+        }
+    }
+    
+    // Somme per categoria: l'ordine in cui si uniscono le parti non cambia il risultato
+    @Override
+    public void combine(Totals totals, Totals other) {
+        for (int id = 0; id < other.owners.length; id++) {
+            if (other.owners[id] != null) {
+                totals.add(other.owners[id], other.cents[id], other.counts[id]);
+            }
+        }
+        if (other.byName != null) {
+            for (Map.Entry<String, long[]> entry : other.byName.entrySet()) {
+                if (totals.byName == null) {
+                    totals.byName = new HashMap<>();
+                }
+                long[] target = totals.byName.computeIfAbsent(entry.getKey(), name -> new long[2]);
+                target[0] += entry.getValue()[0];
+                target[1] += entry.getValue()[1];
+            }
+        }
+    }
+    
+    @Override
+    public Map<String, Object> finish(Totals totals) {
+        return finishAtDepth(totals, depth);
+    }
+    
+    /*
+     * La mappa per nome viene creata solo qui; le categorie senza spese restano fuori.
+     * Con depth >= 0 ogni categoria finisce sotto il suo antenato a quel livello.
+     */
+    public Map<String, Object> finishAtDepth(Totals totals, int depth) {
+        Map<String, Long> centesimi = new HashMap<>();
+        for (int id = 0; id < totals.owners.length; id++) {
+            if (totals.owners[id] != null && totals.counts[id] > 0) {
+                Category target = depth >= 0 ? totals.owners[id].getAncestorAt(depth) : totals.owners[id];
+                centesimi.merge(target.getName(), totals.cents[id], Long::sum);
+            }
+        }
+        if (totals.byName != null) {
+            for (Map.Entry<String, long[]> entry : totals.byName.entrySet()) {
+                if (entry.getValue()[1] == 0) {
+                    continue;
+                }
+                centesimi.merge(entry.getKey(), entry.getValue()[0], Long::sum);
+            }
+        }
+        
+        Map<String, Double> totali = new HashMap<>();
+        for (Map.Entry<String, Long> entry : centesimi.entrySet()) {
+            totali.put(entry.getKey(), Amounts.toDouble(entry.getValue()));
+        }
+        
+        Map<String, Object> results = new HashMap<>();
+        results.put("categorieSpese", totali);
         
         return results;
     }
     
+    // Istanze con lo stesso livello danno gli stessi risultati
+    @Override
+    public Object getCacheKey() {
+        return Arrays.asList(getClass(), depth);
+    }
+    
     @Override
     public String getStrategyName() {
-        return "Categorie";
+        return depth >= 0 ? "Categorie (livello " + depth + ")" : "Categorie";
     }
     
     @Override
     public String getDescription() {
         return "Raggruppa spese per categoria";
     }
-} 
\ No newline at end of file
+}
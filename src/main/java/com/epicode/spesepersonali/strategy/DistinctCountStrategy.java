@@ -0,0 +1,59 @@
+package com.epicode.spesepersonali.strategy;
+
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.sketch.HyperLogLog;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Numero stimato di valori distinti di un campo (descrizioni, o un altro campo scelto
+ * con la funzione chiave) con un HyperLogLog da 4 KB per mese
+ */
+public class DistinctCountStrategy extends MonthlySketchStrategy<HyperLogLog> {
+    
+    private final String name;
+    private final Function<Transaction, String> key;
+    
+    // name compare nel nome della strategia; le chiavi null vengono ignorate
+    public DistinctCountStrategy(String name, Function<Transaction, String> key) {
+        this.name = name;
+        this.key = key;
+    }
+    
+    // Descrizioni distinte
+    public static DistinctCountStrategy descriptions() {
+        return new DistinctCountStrategy("descrizioni", Transaction::getDescription);
+    }
+    
+    @Override
+    protected HyperLogLog createSketch() {
+        return new HyperLogLog();
+    }
+    
+    @Override
+    protected void add(HyperLogLog sketch, Transaction transaction) {
+        String value = key.apply(transaction);
+        if (value != null) {
+            sketch.add(value);
+        }
+    }
+    
+    @Override
+    protected Map<String, Object> results(HyperLogLog sketch) {
+        Map<String, Object> results = new HashMap<>();
+        results.put("distinti", sketch.estimate());
+        return results;
+    }
+    
+    @Override
+    public String getStrategyName() {
+        return "Distinti (" + name + ")";
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Numero approssimato di " + name + " diverse";
+    }
+}
@@ -0,0 +1,67 @@
+package com.epicode.spesepersonali.strategy;
+
+import com.epicode.spesepersonali.model.Amounts;
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.model.TransactionType;
+import com.epicode.spesepersonali.sketch.MonthlySketches;
+import com.epicode.spesepersonali.sketch.TDigest;
+import com.epicode.spesepersonali.store.TransactionColumns;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mediana, 90° e 99° percentile stimati degli importi delle spese con un t-digest per
+ * mese: memoria fissa invece di tutti gli importi come CategoryQuantileStrategy
+ */
+public class ExpenseQuantileSketchStrategy extends MonthlySketchStrategy<TDigest> {
+    
+    @Override
+    protected TDigest createSketch() {
+        return new TDigest();
+    }
+    
+    @Override
+    protected void add(TDigest digest, Transaction transaction) {
+        if (transaction.getType() == TransactionType.EXPENSE) {
+            digest.add(Amounts.toDouble(transaction.getAmountCents()));
+        }
+    }
+    
+    @Override
+    public void accumulateColumns(MonthlySketches<TDigest> sketches, TransactionColumns columns, int from, int to) {
+        for (int row = from; row < to; row++) {
+            if (columns.getType(row) == TransactionType.EXPENSE) {
+                sketches.getEpochDay(columns.getEpochDay(row)).add(Amounts.toDouble(columns.getAmountCents(row)));
+            }
+        }
+    }
+    
+    // Senza spese le stime valgono 0
+    @Override
+    protected Map<String, Object> results(TDigest digest) {
+        boolean empty = digest.size() == 0;
+        Map<String, Object> results = new HashMap<>();
+        results.put("speseStimate", digest.size());
+        results.put("medianaStimata", empty ? 0.0 : digest.quantile(0.5));
+        results.put("p90Stimato", empty ? 0.0 : digest.quantile(0.9));
+        results.put("p99Stimato", empty ? 0.0 : digest.quantile(0.99));
+        return results;
+    }
+    
+    // Senza parametri: tutte le istanze danno gli stessi risultati
+    @Override
+    public Object getCacheKey() {
+        return getClass();
+    }
+    
+    @Override
+    public String getStrategyName() {
+        return "Quantili stimati";
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Mediana, 90° e 99° percentile approssimati delle spese";
+    }
+}
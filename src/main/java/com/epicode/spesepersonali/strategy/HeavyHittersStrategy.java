@@ -0,0 +1,70 @@
+package com.epicode.spesepersonali.strategy;
+
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.sketch.HeavyHitters;
+import com.epicode.spesepersonali.sketch.MonthlySketches;
+import com.epicode.spesepersonali.store.TransactionColumns;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Le descrizioni che compaiono piu' spesso, con conteggi stimati da un Count-Min
+ * sketch per mese: la memoria non cresce con il numero di descrizioni diverse
+ */
+public class HeavyHittersStrategy extends MonthlySketchStrategy<HeavyHitters> {
+    
+    private final int limit;
+    
+    public HeavyHittersStrategy(int limit) {
+        if (limit < 1 || limit > HeavyHitters.DEFAULT_CAPACITY) {
+            throw new IllegalArgumentException("Il numero di descrizioni deve essere tra 1 e "
+                    + HeavyHitters.DEFAULT_CAPACITY + ": " + limit);
+        }
+        this.limit = limit;
+    }
+    
+    @Override
+    protected HeavyHitters createSketch() {
+        return new HeavyHitters();
+    }
+    
+    @Override
+    protected void add(HeavyHitters sketch, Transaction transaction) {
+        sketch.add(transaction.getDescription());
+    }
+    
+    // Solo la descrizione, senza creare la Transaction
+    @Override
+    public void accumulateColumns(MonthlySketches<HeavyHitters> sketches, TransactionColumns columns, int from, int to) {
+        for (int row = from; row < to; row++) {
+            sketches.getEpochDay(columns.getEpochDay(row))
+                    .add(columns.getDescription(columns.getDescriptionRef(row)));
+        }
+    }
+    
+    // Descrizione -> conteggio stimato, dalla piu' frequente
+    @Override
+    protected Map<String, Object> results(HeavyHitters sketch) {
+        Map<String, Object> results = new HashMap<>();
+        results.put("piuFrequenti", sketch.top(limit));
+        return results;
+    }
+    
+    // Istanze con lo stesso limite danno gli stessi risultati
+    @Override
+    public Object getCacheKey() {
+        return Arrays.asList(getClass(), limit);
+    }
+    
+    @Override
+    public String getStrategyName() {
+        return "Piu' frequenti " + limit;
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Le " + limit + " descrizioni piu' frequenti (stima)";
+    }
+}
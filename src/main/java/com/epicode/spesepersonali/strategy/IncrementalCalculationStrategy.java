@@ -0,0 +1,18 @@
+package com.epicode.spesepersonali.strategy;
+
+import com.epicode.spesepersonali.model.Transaction;
+
+/**
+ * Strategia il cui accumulatore puo' restare sempre aggiornato: il servizio lo costruisce
+ * una volta al caricamento e poi aggiunge o toglie solo le transazioni modificate.
+ * Leggere i risultati non richiede di riscorrere tutte le transazioni.
+ *
+ * @param <A> tipo dell'accumulatore con i risultati parziali
+ */
+public interface IncrementalCalculationStrategy<A> extends StreamingCalculationStrategy<A> {
+    
+    /**
+     * Toglie dall'accumulatore una transazione aggiunta in precedenza con accumulate
+     */
+    void retract(A accumulator, Transaction transaction);
+}
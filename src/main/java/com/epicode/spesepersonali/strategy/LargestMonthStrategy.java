@@ -0,0 +1,93 @@
+package com.epicode.spesepersonali.strategy;
+
+import com.epicode.spesepersonali.model.Amounts;
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.model.TransactionType;
+import com.epicode.spesepersonali.store.TransactionColumns;
+
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Il mese con le spese piu' alte. Le spese vengono sommate per mese in una
+ * MonthlyTimeSeries e alla fine si scorrono solo i mesi, non le transazioni.
+ */
+public class LargestMonthStrategy implements IncrementalCalculationStrategy<MonthlyTimeSeries>,
+        ParallelCalculationStrategy<MonthlyTimeSeries> {
+    
+    @Override
+    public MonthlyTimeSeries createAccumulator() {
+        return new MonthlyTimeSeries();
+    }
+    
+    @Override
+    public void accumulate(MonthlyTimeSeries series, Transaction transaction) {
+        if (transaction.getType() == TransactionType.EXPENSE) {
+            series.add(MonthlyTotalStrategy.monthIndex(transaction.getDate()), false, transaction.getAmountCents());
+        }
+    }
+    
+    @Override
+    public void retract(MonthlyTimeSeries series, Transaction transaction) {
+        if (transaction.getType() == TransactionType.EXPENSE) {
+            series.add(MonthlyTotalStrategy.monthIndex(transaction.getDate()), false, -transaction.getAmountCents());
+        }
+    }
+    
+    @Override
+    public void accumulateColumns(MonthlyTimeSeries series, TransactionColumns columns, int from, int to) {
+        for (int row = from; row < to; row++) {
+            if (columns.getType(row) == TransactionType.EXPENSE) {
+                series.addEpochDay(columns.getEpochDay(row), false, columns.getAmountCents(row));
+            }
+        }
+    }
+    
+    @Override
+    public void accumulateColumns(MonthlyTimeSeries series, TransactionColumns columns) {
+        accumulateColumns(series, columns, 0, columns.size());
+    }
+    
+    @Override
+    public void combine(MonthlyTimeSeries series, MonthlyTimeSeries other) {
+        series.addAll(other);
+    }
+    
+    // A parita' di spesa vince il mese piu' vecchio; null se non ci sono spese
+    @Override
+    public Map<String, Object> finish(MonthlyTimeSeries series) {
+        YearMonth largest = null;
+        long largestCents = 0;
+        if (series.getFirstMonth() != null) {
+            for (YearMonth month = series.getFirstMonth(); !month.isAfter(series.getLastMonth()); month = month.plusMonths(1)) {
+                long cents = series.getExpenseCents(month, month);
+                if (cents > largestCents) {
+                    largest = month;
+                    largestCents = cents;
+                }
+            }
+        }
+        
+        Map<String, Object> results = new HashMap<>();
+        results.put("meseMaggioreSpesa", largest);
+        results.put("speseMeseMaggiore", Amounts.toDouble(largestCents));
+        return results;
+    }
+    
+    // Senza parametri: tutte le istanze danno gli stessi risultati
+    @Override
+    public Object getCacheKey() {
+        return getClass();
+    }
+    
+    @Override
+    public String getStrategyName() {
+        return "Mese maggiore";
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Il mese con le spese piu' alte";
+    }
+}
@@ -0,0 +1,67 @@
+package com.epicode.spesepersonali.strategy;
+
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.sketch.MergeableSketch;
+import com.epicode.spesepersonali.sketch.MonthlySketches;
+import com.epicode.spesepersonali.store.TransactionColumns;
+
+import java.time.YearMonth;
+import java.util.Map;
+
+/**
+ * Base delle strategie approssimate: un riassunto a memoria fissa per mese, uniti
+ * alla fine per tutto lo storico o con finishRange per un intervallo di mesi.
+ *
+ * Unire i riassunti e' associativo a meno dell'approssimazione: i risultati in
+ * parallelo possono differire di poco da quelli sequenziali.
+ *
+ * @param <S> il tipo di riassunto
+ */
+public abstract class MonthlySketchStrategy<S extends MergeableSketch<S>>
+        implements ParallelCalculationStrategy<MonthlySketches<S>> {
+    
+    /**
+     * Crea un riassunto vuoto
+     */
+    protected abstract S createSketch();
+    
+    /**
+     * Aggiunge la transazione al riassunto del suo mese (se la strategia la considera)
+     */
+    protected abstract void add(S sketch, Transaction transaction);
+    
+    /**
+     * Trasforma un riassunto nella mappa dei risultati
+     */
+    protected abstract Map<String, Object> results(S sketch);
+    
+    @Override
+    public MonthlySketches<S> createAccumulator() {
+        return new MonthlySketches<>(this::createSketch);
+    }
+    
+    @Override
+    public void accumulate(MonthlySketches<S> sketches, Transaction transaction) {
+        add(sketches.get(transaction.getDate()), transaction);
+    }
+    
+    @Override
+    public void accumulateColumns(MonthlySketches<S> sketches, TransactionColumns columns) {
+        accumulateColumns(sketches, columns, 0, columns.size());
+    }
+    
+    @Override
+    public void combine(MonthlySketches<S> sketches, MonthlySketches<S> other) {
+        sketches.mergeAll(other);
+    }
+    
+    @Override
+    public Map<String, Object> finish(MonthlySketches<S> sketches) {
+        return finishRange(sketches, null, null);
+    }
+    
+    // Risultati dei mesi da from a to compresi (null = nessun limite), senza rileggere le transazioni
+    public Map<String, Object> finishRange(MonthlySketches<S> sketches, YearMonth from, YearMonth to) {
+        return results(sketches.merged(from, to));
+    }
+}
@@ -0,0 +1,259 @@
+package com.epicode.spesepersonali.strategy;
+
+import com.epicode.spesepersonali.model.Amounts;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Entrate e spese mese per mese, in centesimi, con somme cumulative (prefix sums):
+ * il totale di un intervallo qualsiasi di mesi costa due sottrazioni.
+ *
+ * Le somme cumulative sono valide fino a un certo mese e vengono estese solo quando
+ * servono: un'aggiunta nell'ultimo mese (il caso normale) invalida solo l'ultima.
+ * Non e' thread-safe.
+ */
+public class MonthlyTimeSeries {
+    
+    // Mesi come indici: anno * 12 + mese - 1
+    private int firstMonth;
+    private long[] income = new long[0];
+    private long[] expense = new long[0];
+    private int months;
+    
+    // prefixIncome[k] = somma di income[0..k-1], valida per k <= prefixValid
+    private long[] prefixIncome = new long[1];
+    private long[] prefixExpense = new long[1];
+    private int prefixValid;
+    
+    // Giorni dell'ultimo mese visto, per non convertire ogni giorno in mese
+    private int cachedFirstDay = 1;
+    private int cachedLastDay;
+    private int cachedMonth;
+    
+    public MonthlyTimeSeries() {
+    }
+    
+    // Copia indipendente
+    public MonthlyTimeSeries(MonthlyTimeSeries other) {
+        firstMonth = other.firstMonth;
+        months = other.months;
+        income = Arrays.copyOf(other.income, other.months);
+        expense = Arrays.copyOf(other.expense, other.months);
+        prefixIncome = new long[months + 1];
+        prefixExpense = new long[months + 1];
+    }
+    
+    // Copia in sola lettura (es. nei risultati condivisi dalla cache): add e addAll lanciano
+    // UnsupportedOperationException
+    public static MonthlyTimeSeries unmodifiable(MonthlyTimeSeries series) {
+        return series instanceof ReadOnly ? series : new ReadOnly(series);
+    }
+    
+    // Aggiunge un importo (negativo per togliere) al mese
+    void add(int month, boolean isIncome, long amountCents) {
+        int index = slot(month);
+        if (isIncome) {
+            income[index] += amountCents;
+        } else {
+            expense[index] += amountCents;
+        }
+        prefixValid = Math.min(prefixValid, index);
+    }
+    
+    // Come add, con la data come epoch day (letta dalle colonne)
+    public void addEpochDay(int epochDay, boolean isIncome, long amountCents) {
+        if (epochDay < cachedFirstDay || epochDay > cachedLastDay) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            cachedFirstDay = (int) date.withDayOfMonth(1).toEpochDay();
+            cachedLastDay = cachedFirstDay + date.lengthOfMonth() - 1;
+            cachedMonth = date.getYear() * 12 + date.getMonthValue() - 1;
+        }
+        add(cachedMonth, isIncome, amountCents);
+    }
+    
+    public void add(YearMonth month, boolean isIncome, long amountCents) {
+        add(index(month), isIncome, amountCents);
+    }
+    
+    public void addAll(MonthlyTimeSeries other) {
+        for (int i = 0; i < other.months; i++) {
+            if (other.income[i] != 0) {
+                add(other.firstMonth + i, true, other.income[i]);
+            }
+            if (other.expense[i] != 0) {
+                add(other.firstMonth + i, false, other.expense[i]);
+            }
+        }
+    }
+    
+    // Primo e ultimo mese coperti (null se la serie e' vuota)
+    public YearMonth getFirstMonth() {
+        return months == 0 ? null : month(firstMonth);
+    }
+    
+    public YearMonth getLastMonth() {
+        return months == 0 ? null : month(firstMonth + months - 1);
+    }
+    
+    // Totali in centesimi dei mesi da from a to compresi (null = nessun limite)
+    public long getIncomeCents(YearMonth from, YearMonth to) {
+        return range(from, to, true);
+    }
+    
+    public long getExpenseCents(YearMonth from, YearMonth to) {
+        return range(from, to, false);
+    }
+    
+    public long getBalanceCents(YearMonth from, YearMonth to) {
+        return getIncomeCents(from, to) - getExpenseCents(from, to);
+    }
+    
+    // Totali di un solo mese, letti direttamente senza le somme cumulative
+    public long getIncomeCents(YearMonth month) {
+        return at(income, month);
+    }
+    
+    public long getExpenseCents(YearMonth month) {
+        return at(expense, month);
+    }
+    
+    // Mese -> {entrate, spese, bilancio} in euro, solo per i mesi con movimenti
+    public Map<YearMonth, double[]> toMap() {
+        Map<YearMonth, double[]> map = new LinkedHashMap<>();
+        for (int i = 0; i < months; i++) {
+            if (income[i] != 0 || expense[i] != 0) {
+                map.put(month(firstMonth + i), new double[] {
+                    Amounts.toDouble(income[i]), Amounts.toDouble(expense[i]), Amounts.toDouble(income[i] - expense[i])
+                });
+            }
+        }
+        return map;
+    }
+    
+    private long range(YearMonth from, YearMonth to, boolean isIncome) {
+        if (months == 0) {
+            return 0;
+        }
+        int first = from == null ? 0 : Math.max(index(from) - firstMonth, 0);
+        int last = to == null ? months - 1 : Math.min(index(to) - firstMonth, months - 1);
+        if (first > last) {
+            return 0;
+        }
+        
+        extendPrefix(last + 1);
+        long[] prefix = isIncome ? prefixIncome : prefixExpense;
+        return prefix[last + 1] - prefix[first];
+    }
+    
+    private long at(long[] values, YearMonth month) {
+        int i = index(month) - firstMonth;
+        return i >= 0 && i < months ? values[i] : 0;
+    }
+    
+    private void extendPrefix(int upTo) {
+        if (prefixIncome.length < months + 1) {
+            prefixIncome = Arrays.copyOf(prefixIncome, income.length + 1);
+            prefixExpense = Arrays.copyOf(prefixExpense, expense.length + 1);
+        }
+        for (int k = prefixValid; k < upTo; k++) {
+            prefixIncome[k + 1] = prefixIncome[k] + income[k];
+            prefixExpense[k + 1] = prefixExpense[k] + expense[k];
+        }
+        prefixValid = Math.max(prefixValid, upTo);
+    }
+    
+    // Allarga gli array se il mese e' fuori dall'intervallo coperto
+    private int slot(int month) {
+        if (months == 0) {
+            firstMonth = month;
+            if (income.length == 0) {
+                income = new long[12];
+                expense = new long[12];
+            }
+            months = 1;
+        } else if (month < firstMonth) {
+            int shift = firstMonth - month;
+            int capacity = Math.max(months + shift, income.length);
+            income = shifted(income, months, shift, capacity);
+            expense = shifted(expense, months, shift, capacity);
+            firstMonth = month;
+            months += shift;
+            prefixValid = 0;
+        } else if (month - firstMonth >= months) {
+            months = month - firstMonth + 1;
+            if (months > income.length) {
+                int capacity = Math.max(months, income.length * 2);
+                income = Arrays.copyOf(income, capacity);
+                expense = Arrays.copyOf(expense, capacity);
+            }
+        }
+        return month - firstMonth;
+    }
+    
+    private static long[] shifted(long[] values, int used, int shift, int capacity) {
+        long[] bigger = new long[capacity];
+        System.arraycopy(values, 0, bigger, shift, used);
+        return bigger;
+    }
+    
+    static int index(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+    
+    private static YearMonth month(int index) {
+        return YearMonth.of(Math.floorDiv(index, 12), Math.floorMod(index, 12) + 1);
+    }
+    
+    // Uguali se hanno gli stessi importi negli stessi mesi
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MonthlyTimeSeries)) {
+            return false;
+        }
+        Map<YearMonth, double[]> mine = toMap();
+        Map<YearMonth, double[]> theirs = ((MonthlyTimeSeries) o).toMap();
+        if (!mine.keySet().equals(theirs.keySet())) {
+            return false;
+        }
+        for (Map.Entry<YearMonth, double[]> entry : mine.entrySet()) {
+            if (!Arrays.equals(entry.getValue(), theirs.get(entry.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (Map.Entry<YearMonth, double[]> entry : toMap().entrySet()) {
+            hash += entry.getKey().hashCode() ^ Arrays.hashCode(entry.getValue());
+        }
+        return hash;
+    }
+    
+    @Override
+    public String toString() {
+        return "Serie mensile " + getFirstMonth() + " - " + getLastMonth();
+    }
+    
+    // Tutte le modifiche passano da add(int, ...)
+    private static final class ReadOnly extends MonthlyTimeSeries {
+        
+        ReadOnly(MonthlyTimeSeries series) {
+            super(series);
+        }
+        
+        @Override
+        void add(int month, boolean isIncome, long amountCents) {
+            throw new UnsupportedOperationException("Serie mensile in sola lettura");
+        }
+    }
+}
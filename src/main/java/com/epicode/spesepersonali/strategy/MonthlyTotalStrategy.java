@@ -1,42 +1,129 @@
 package com.epicode.spesepersonali.strategy;
 
+import com.epicode.spesepersonali.model.Amounts;
 import com.epicode.spesepersonali.model.Transaction;
 import com.epicode.spesepersonali.model.TransactionType;
+import com.epicode.spesepersonali.store.TransactionColumns;
 
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
- * Calcola totali semplici
+ * Calcola i totali di sempre e la serie mese per mese
  */
-public class MonthlyTotalStrategy implements CalculationStrategy {
+public class MonthlyTotalStrategy implements IncrementalCalculationStrategy<MonthlyTotalStrategy.Totals>,
+        ParallelCalculationStrategy<MonthlyTotalStrategy.Totals> {
     
-    @Override
-    public Map<String, Object> calculate(List<Transaction> transactions) {
-        Map<String, Object> results = new HashMap<>();
+    private static final byte INCOME = (byte) TransactionType.INCOME.ordinal();
+    private static final byte EXPENSE = (byte) TransactionType.EXPENSE.ordinal();
+    
+    // Totali parziali in centesimi, anche per mese (senza creare oggetti per riga)
+    public static class Totals {
+        long entrateCents;
+        long speseCents;
+        final MonthlyTimeSeries mesi = new MonthlyTimeSeries();
         
-        double totaleEntrate = 0.0;
-        double totaleSpese = 0.0;
+        void add(boolean income, long amountCents, int month) {
+            addTotal(income, amountCents);
+            mesi.add(month, income, amountCents);
+        }
         
-        // Somma tutto
-        for (Transaction transaction : transactions) {
-            if (transaction.getType() == TransactionType.INCOME) {
-                totaleEntrate += transaction.getAmount();
-            } else if (transaction.getType() == TransactionType.EXPENSE) {
-                totaleSpese += transaction.getAmount();
-            }
+        void addEpochDay(boolean income, long amountCents, int epochDay) {
+            addTotal(income, amountCents);
+            mesi.addEpochDay(epochDay, income, amountCents);
         }
         
-        double bilancio = totaleEntrate - totaleSpese;
+        // La serie mensile aggiornata, non una copia: per chi la deve solo leggere
+        public MonthlyTimeSeries getMonthlySeries() {
+            return mesi;
+        }
         
-        results.put("totaleEntrate", totaleEntrate);
-        results.put("totaleSpese", totaleSpese);
-        results.put("bilancio", bilancio);
+        private void addTotal(boolean income, long amountCents) {
+            if (income) {
+                entrateCents += amountCents;
+            } else {
+                speseCents += amountCents;
+            }
+        }
+    }
+    
+    @Override
+    public Totals createAccumulator() {
+        return new Totals();
+    }
+    
+    @Override
+    public void accumulate(Totals totals, Transaction transaction) {
+        totals.add(transaction.getType() == TransactionType.INCOME, transaction.getAmountCents(),
+                monthIndex(transaction.getDate()));
+    }
+    
+    // Stessa somma con l'importo negativo
+    @Override
+    public void retract(Totals totals, Transaction transaction) {
+        totals.add(transaction.getType() == TransactionType.INCOME, -transaction.getAmountCents(),
+                monthIndex(transaction.getDate()));
+    }
+    
+    @Override
+    public void accumulateColumns(Totals totals, TransactionColumns columns) {
+        accumulateColumns(totals, columns, 0, columns.size());
+    }
+    
+    // Somma i centesimi direttamente dalle colonne
+    @Override
+    public void accumulateColumns(Totals totals, TransactionColumns columns, int from, int to) {
+        long[] amounts = columns.amountCentsArray();
+        byte[] types = columns.typeCodeArray();
         
+        if (amounts != null && types != null) {
+            totals.entrateCents += AmountKernels.sumWhere(amounts, types, INCOME, from, to);
+            totals.speseCents += AmountKernels.sumWhere(amounts, types, EXPENSE, from, to);
+            for (int row = from; row < to; row++) {
+                totals.mesi.addEpochDay(columns.getEpochDay(row), types[row] == INCOME, amounts[row]);
+            }
+            return;
+        }
+        
+        for (int row = from; row < to; row++) {
+            totals.addEpochDay(columns.getType(row) == TransactionType.INCOME, columns.getAmountCents(row),
+                    columns.getEpochDay(row));
+        }
+    }
+    
+    // Somme: l'ordine in cui si uniscono le parti non cambia il risultato
+    @Override
+    public void combine(Totals totals, Totals other) {
+        totals.entrateCents += other.entrateCents;
+        totals.speseCents += other.speseCents;
+        totals.mesi.addAll(other.mesi);
+    }
+    
+    // Totali di sempre piu' la serie mensile (una copia, sotto "serieMensile")
+    @Override
+    public Map<String, Object> finish(Totals totals) {
+        Map<String, Object> results = results(totals.entrateCents, totals.speseCents);
+        results.put("serieMensile", new MonthlyTimeSeries(totals.mesi));
         return results;
     }
     
+    // Stesse chiavi dei totali, solo per i mesi da from a to compresi (null = nessun limite)
+    public Map<String, Object> finishRange(Totals totals, YearMonth from, YearMonth to) {
+        return results(totals.mesi.getIncomeCents(from, to), totals.mesi.getExpenseCents(from, to));
+    }
+    
+    public Map<String, Object> finishMonth(Totals totals, YearMonth month) {
+        return finishRange(totals, month, month);
+    }
+    
+    // Senza parametri: tutte le istanze danno gli stessi risultati
+    @Override
+    public Object getCacheKey() {
+        return getClass();
+    }
+    
     @Override
     public String getStrategyName() {
         return "Totali";
@@ -46,4 +133,20 @@ public class MonthlyTotalStrategy implements CalculationStrategy {
     public String getDescription() {
         return "Calcola totali entrate e spese";
     }
-} 
\ No newline at end of file
+    
+    private static Map<String, Object> results(long entrateCents, long speseCents) {
+        Map<String, Object> results = new HashMap<>();
+        
+        long bilancio = entrateCents - speseCents;
+        
+        results.put("totaleEntrate", Amounts.toDouble(entrateCents));
+        results.put("totaleSpese", Amounts.toDouble(speseCents));
+        results.put("bilancio", Amounts.toDouble(bilancio));
+        
+        return results;
+    }
+    
+    static int monthIndex(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+}
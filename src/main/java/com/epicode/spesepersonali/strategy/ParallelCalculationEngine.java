@@ -0,0 +1,100 @@
+package com.epicode.spesepersonali.strategy;
+
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.store.TransactionColumns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Esegue una ParallelCalculationStrategy dividendo la lista su un ForkJoinPool.
+ *
+ * La lista viene divisa in blocchi di dimensione fissa, indipendente dal numero di
+ * thread, e le parti vengono unite sempre da sinistra a destra: a parita' di dati il
+ * risultato e' sempre lo stesso.
+ */
+public class ParallelCalculationEngine {
+    
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+    
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    
+    public ParallelCalculationEngine() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+    
+    public ParallelCalculationEngine(ForkJoinPool pool, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("La dimensione dei blocchi deve essere positiva: " + chunkSize);
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+    
+    public <A> Map<String, Object> calculate(ParallelCalculationStrategy<A> strategy, List<Transaction> transactions) {
+        return strategy.finish(accumulate(strategy, transactions));
+    }
+    
+    // L'accumulatore con tutte le righe, prima di finish
+    public <A> A accumulate(ParallelCalculationStrategy<A> strategy, List<Transaction> transactions) {
+        if (!(transactions instanceof RandomAccess)) {
+            transactions = new ArrayList<>(transactions);
+        }
+        if (transactions.size() <= chunkSize) {
+            A accumulator = strategy.createAccumulator();
+            accumulateRange(strategy, accumulator, transactions, 0, transactions.size());
+            return accumulator;
+        }
+        return pool.invoke(new RangeTask<>(strategy, transactions, 0, transactions.size(), chunkSize));
+    }
+    
+    private static <A> void accumulateRange(ParallelCalculationStrategy<A> strategy, A accumulator,
+                                            List<Transaction> transactions, int from, int to) {
+        if (transactions instanceof TransactionColumns) {
+            strategy.accumulateColumns(accumulator, (TransactionColumns) transactions, from, to);
+        } else {
+            for (int i = from; i < to; i++) {
+                strategy.accumulate(accumulator, transactions.get(i));
+            }
+        }
+    }
+    
+    // Divide a meta' (sui confini dei blocchi) fino ad arrivare a un blocco solo
+    private static class RangeTask<A> extends RecursiveTask<A> {
+        private final ParallelCalculationStrategy<A> strategy;
+        private final List<Transaction> transactions;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+        
+        RangeTask(ParallelCalculationStrategy<A> strategy, List<Transaction> transactions, int from, int to, int chunkSize) {
+            this.strategy = strategy;
+            this.transactions = transactions;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+        
+        @Override
+        protected A compute() {
+            int chunks = (to - from + chunkSize - 1) / chunkSize;
+            if (chunks <= 1) {
+                A accumulator = strategy.createAccumulator();
+                accumulateRange(strategy, accumulator, transactions, from, to);
+                return accumulator;
+            }
+            
+            int middle = from + (chunks / 2) * chunkSize;
+            RangeTask<A> right = new RangeTask<>(strategy, transactions, middle, to, chunkSize);
+            right.fork();
+            A accumulator = new RangeTask<>(strategy, transactions, from, middle, chunkSize).compute();
+            strategy.combine(accumulator, right.join());
+            return accumulator;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.epicode.spesepersonali.strategy;
+
+import com.epicode.spesepersonali.store.TransactionColumns;
+
+/**
+ * Strategia che puo' essere divisa tra piu' thread: ogni parte della lista ha il suo
+ * accumulatore, poi le parti vengono unite con combine.
+ *
+ * combine deve essere associativa (unire a-b e poi c oppure a e poi b-c da' lo
+ * stesso risultato), cosi' il risultato non dipende da come e' stata divisa la lista.
+ *
+ * @param <A> tipo dell'accumulatore con i risultati parziali
+ */
+public interface ParallelCalculationStrategy<A> extends StreamingCalculationStrategy<A> {
+    
+    /**
+     * Aggiunge ad accumulator i risultati di other, che riguarda righe successive
+     */
+    void combine(A accumulator, A other);
+    
+    /**
+     * Aggiunge le righe [from, to) di un archivio a colonne. Di default crea una
+     * Transaction per riga, come accumulateColumns.
+     */
+    default void accumulateColumns(A accumulator, TransactionColumns columns, int from, int to) {
+        for (int row = from; row < to; row++) {
+            accumulate(accumulator, columns.getTransaction(row));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.epicode.spesepersonali.strategy;
+
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.store.TransactionColumns;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Strategia che elabora una transazione alla volta in un accumulatore,
+ * quindi puo' lavorare su uno stream senza tenere tutte le righe in memoria
+ *
+ * @param <A> tipo dell'accumulatore con i risultati parziali
+ */
+public interface StreamingCalculationStrategy<A> extends CalculationStrategy {
+    
+    /**
+     * Crea un accumulatore vuoto
+     */
+    A createAccumulator();
+    
+    /**
+     * Aggiunge una transazione all'accumulatore
+     */
+    void accumulate(A accumulator, Transaction transaction);
+    
+    /**
+     * Trasforma l'accumulatore nella mappa dei risultati
+     */
+    Map<String, Object> finish(A accumulator);
+    
+    /**
+     * Aggiunge tutte le righe di un archivio a colonne. Di default crea una Transaction
+     * per riga: le strategie possono sovrascriverlo lavorando sui valori primitivi.
+     */
+    default void accumulateColumns(A accumulator, TransactionColumns columns) {
+        for (int row = 0; row < columns.size(); row++) {
+            accumulate(accumulator, columns.getTransaction(row));
+        }
+    }
+    
+    @Override
+    default Map<String, Object> calculate(List<Transaction> transactions) {
+        A accumulator = createAccumulator();
+        if (transactions instanceof TransactionColumns) {
+            accumulateColumns(accumulator, (TransactionColumns) transactions);
+        } else {
+            for (Transaction transaction : transactions) {
+                accumulate(accumulator, transaction);
+            }
+        }
+        return finish(accumulator);
+    }
+    
+    /**
+     * Esegue il calcolo su uno stream, senza materializzarlo
+     * @param transactions Stream delle transazioni da analizzare
+     * @return Mappa con i risultati del calcolo
+     */
+    default Map<String, Object> calculate(Stream<Transaction> transactions) {
+        A accumulator = createAccumulator();
+        transactions.forEachOrdered(transaction -> accumulate(accumulator, transaction));
+        return finish(accumulator);
+    }
+}
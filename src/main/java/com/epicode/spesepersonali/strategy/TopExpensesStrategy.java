@@ -0,0 +1,107 @@
+package com.epicode.spesepersonali.strategy;
+
+import com.epicode.spesepersonali.model.Transaction;
+import com.epicode.spesepersonali.model.TransactionType;
+import com.epicode.spesepersonali.store.TransactionColumns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Le N spese piu' grandi, con un heap che non supera mai N elementi:
+ * O(n log N) senza copiare ne' ordinare tutta la lista
+ */
+public class TopExpensesStrategy implements ParallelCalculationStrategy<PriorityQueue<Transaction>> {
+    
+    // Dal piu' piccolo: in cima all'heap c'e' la spesa da scartare per prima.
+    // A parita' di importo resta la transazione con ID minore, cosi' il risultato non dipende dall'ordine.
+    private static final Comparator<Transaction> SMALLEST_FIRST = Comparator
+            .comparingLong(Transaction::getAmountCents)
+            .thenComparing(Comparator.comparingLong(Transaction::getIdValue).reversed());
+    
+    private final int limit;
+    
+    public TopExpensesStrategy(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Il numero di spese deve essere positivo: " + limit);
+        }
+        this.limit = limit;
+    }
+    
+    @Override
+    public PriorityQueue<Transaction> createAccumulator() {
+        return new PriorityQueue<>(limit + 1, SMALLEST_FIRST);
+    }
+    
+    @Override
+    public void accumulate(PriorityQueue<Transaction> heap, Transaction transaction) {
+        if (transaction.getType() == TransactionType.EXPENSE) {
+            offer(heap, transaction);
+        }
+    }
+    
+    // La Transaction viene creata solo per le righe che entrano nell'heap
+    @Override
+    public void accumulateColumns(PriorityQueue<Transaction> heap, TransactionColumns columns, int from, int to) {
+        for (int row = from; row < to; row++) {
+            if (columns.getType(row) != TransactionType.EXPENSE) {
+                continue;
+            }
+            if (heap.size() < limit || columns.getAmountCents(row) >= heap.peek().getAmountCents()) {
+                offer(heap, columns.getTransaction(row));
+            }
+        }
+    }
+    
+    @Override
+    public void accumulateColumns(PriorityQueue<Transaction> heap, TransactionColumns columns) {
+        accumulateColumns(heap, columns, 0, columns.size());
+    }
+    
+    @Override
+    public void combine(PriorityQueue<Transaction> heap, PriorityQueue<Transaction> other) {
+        for (Transaction transaction : other) {
+            offer(heap, transaction);
+        }
+    }
+    
+    @Override
+    public Map<String, Object> finish(PriorityQueue<Transaction> heap) {
+        List<Transaction> spese = new ArrayList<>(heap);
+        spese.sort(SMALLEST_FIRST.reversed());
+        
+        Map<String, Object> results = new HashMap<>();
+        results.put("spesePiuGrandi", spese);
+        return results;
+    }
+    
+    private void offer(PriorityQueue<Transaction> heap, Transaction transaction) {
+        if (heap.size() < limit) {
+            heap.add(transaction);
+        } else if (SMALLEST_FIRST.compare(transaction, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(transaction);
+        }
+    }
+    
+    // Istanze con lo stesso limite danno gli stessi risultati
+    @Override
+    public Object getCacheKey() {
+        return Arrays.asList(getClass(), limit);
+    }
+    
+    @Override
+    public String getStrategyName() {
+        return "Top " + limit;
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Le " + limit + " spese piu' grandi";
+    }
+}
@@ -2,27 +2,79 @@ package com.epicode;
 
 import static org.junit.Assert.*;
 
+import com.epicode.spesepersonali.budget.BudgetAlert;
+import com.epicode.spesepersonali.budget.BudgetRule;
+import com.epicode.spesepersonali.exception.DataAccessException;
 import com.epicode.spesepersonali.exception.ValidationException;
 import com.epicode.spesepersonali.factory.TransactionFactory;
+import com.epicode.spesepersonali.iterator.ColumnsByDateIterator;
+import com.epicode.spesepersonali.iterator.PositionIndex;
 import com.epicode.spesepersonali.iterator.TransactionByDateIterator;
+import com.epicode.spesepersonali.iterator.TransactionIterator;
+import com.epicode.spesepersonali.model.Amounts;
 import com.epicode.spesepersonali.model.Category;
+import com.epicode.spesepersonali.model.CategoryRegistry;
+import com.epicode.spesepersonali.model.DescriptionDictionary;
 import com.epicode.spesepersonali.model.Transaction;
 import com.epicode.spesepersonali.model.TransactionType;
+import com.epicode.spesepersonali.repository.CommitPolicy;
+import com.epicode.spesepersonali.repository.CsvTokenizer;
+import com.epicode.spesepersonali.repository.LoadMode;
+import com.epicode.spesepersonali.repository.PartitionManifest;
+import com.epicode.spesepersonali.repository.StorageLayout;
+import com.epicode.spesepersonali.repository.TransactionRepository;
+import com.epicode.spesepersonali.service.ExpenseService;
+import com.epicode.spesepersonali.service.StrategyResultCache;
+import com.epicode.spesepersonali.sketch.HyperLogLog;
+import com.epicode.spesepersonali.sketch.MonthlySketches;
+import com.epicode.spesepersonali.store.ColumnarTransactionStore;
+import com.epicode.spesepersonali.store.OffHeapTransactionStore;
+import com.epicode.spesepersonali.store.StoreMode;
+import com.epicode.spesepersonali.strategy.DistinctCountStrategy;
+import com.epicode.spesepersonali.strategy.ExpenseQuantileSketchStrategy;
+import com.epicode.spesepersonali.strategy.HeavyHittersStrategy;
+import com.epicode.spesepersonali.strategy.AmountKernels;
+import com.epicode.spesepersonali.strategy.AnalyticsEngine;
+import com.epicode.spesepersonali.strategy.AnalyticsReport;
+import com.epicode.spesepersonali.strategy.CalculationStrategy;
+import com.epicode.spesepersonali.strategy.CategoryQuantileStrategy;
+import com.epicode.spesepersonali.strategy.LargestMonthStrategy;
+import com.epicode.spesepersonali.strategy.TopExpensesStrategy;
+import com.epicode.spesepersonali.strategy.MonthlyTimeSeries;
 import com.epicode.spesepersonali.strategy.MonthlyTotalStrategy;
+import com.epicode.spesepersonali.strategy.ParallelCalculationEngine;
 import com.epicode.spesepersonali.strategy.CategorySummaryStrategy;
 
+import org.junit.Assume;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 /**
  * Test semplici
  */
 public class AppTest {
     
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
     @Test
     public void shouldAnswerWithTrue() {
         assertTrue(true);
@@ -217,4 +269,1290 @@ public class AppTest {
         assertEquals(c1.hashCode(), c2.hashCode());
         assertNotNull(c1.toString());
     }
+    
+    // Test Tokenizer CSV - virgolette e virgole nei campi
+    @Test
+    public void testCsvTokenizerQuotedFields() throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader(
+            "a,\"Pane, latte\",\"dice \"\"ciao\"\"\",12.5,2024-03-01\r\n\"riga\nsu due\"\n"));
+        
+        assertTrue(tokenizer.nextRecord());
+        assertEquals(5, tokenizer.getFieldCount());
+        assertEquals("Pane, latte", tokenizer.getString(1));
+        assertEquals("dice \"ciao\"", tokenizer.getString(2));
+        assertEquals(1250, tokenizer.getCents(3));
+        assertEquals(LocalDate.of(2024, 3, 1), tokenizer.getDate(4));
+        
+        assertTrue(tokenizer.nextRecord());
+        assertEquals("riga\nsu due", tokenizer.getString(0));
+        assertFalse(tokenizer.nextRecord());
+    }
+    
+    // Test Repository - salva e ricarica
+    @Test
+    public void testRepositoryRoundTrip() throws ValidationException, DataAccessException, IOException {
+        File file = new File(folder.getRoot(), "transactions.csv");
+        TransactionRepository repository = new TransactionRepository(file.getPath());
+        Category category = new Category("Cibo", "Spese cibo");
+        
+        repository.saveTransactions(Arrays.asList(
+            TransactionFactory.createExpense(12.34, "Pane, latte e \"uova\"", category, LocalDate.of(2024, 1, 5)),
+            TransactionFactory.createIncome(1500.0, "Stipendio", category, LocalDate.of(2024, 1, 27))
+        ));
+        
+        List<Transaction> loaded = repository.loadTransactions();
+        
+        assertEquals(2, loaded.size());
+        assertEquals("Pane, latte e \"uova\"", loaded.get(0).getDescription());
+        assertEquals(12.34, loaded.get(0).getAmount(), 0.0);
+        assertEquals(TransactionType.INCOME, loaded.get(1).getType());
+        assertEquals(LocalDate.of(2024, 1, 27), loaded.get(1).getDate());
+    }
+    
+    // Test Repository - caricamento parallelo uguale a quello sequenziale
+    @Test
+    public void testParallelLoadMatchesSequential() throws ValidationException, DataAccessException {
+        File file = new File(folder.getRoot(), "transactions.csv");
+        Category category = new Category("Cibo", "Spese cibo");
+        
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            String description = i % 7 == 0 ? "Spesa \"grande\",\nsu due righe " + i : "Spesa " + i;
+            transactions.add(TransactionFactory.createExpense(1 + i % 100, description, category,
+                    LocalDate.of(2024, 1, 1).plusDays(i % 365)));
+        }
+        new TransactionRepository(file.getPath()).saveTransactions(transactions);
+        File snapshot = new File(file.getPath() + ".snap");
+        
+        // Senza snapshot per leggere davvero il CSV
+        assertTrue(snapshot.delete());
+        List<Transaction> sequential = new TransactionRepository(file.getPath(), LoadMode.SEQUENTIAL).loadTransactions();
+        assertTrue(snapshot.delete());
+        List<Transaction> parallel = new TransactionRepository(file.getPath(), LoadMode.PARALLEL).loadTransactions();
+        
+        assertTrue(file.length() > 1024 * 1024);
+        assertEquals(transactions.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertEquals(sequential.get(i).getDescription(), parallel.get(i).getDescription());
+            assertEquals(sequential.get(i).getDate(), parallel.get(i).getDate());
+        }
+    }
+    
+    // Test Snapshot - al riavvio rilegge solo le righe aggiunte dopo lo snapshot
+    @Test
+    public void testSnapshotReplaysAppendedRows() throws ValidationException, DataAccessException, IOException {
+        File file = new File(folder.getRoot(), "transactions.csv");
+        TransactionRepository repository = new TransactionRepository(file.getPath());
+        Category category = new Category("Cibo", "Spese cibo");
+        
+        repository.saveTransactions(Arrays.asList(
+            TransactionFactory.createExpense(10.0, "Prima", category, LocalDate.of(2024, 1, 1))));
+        assertTrue(new File(file.getPath() + ".snap").exists());
+        
+        repository.appendTransaction(
+            TransactionFactory.createExpense(20.0, "Dopo lo snapshot", category, LocalDate.of(2024, 1, 2)));
+        repository.close();
+        
+        List<Transaction> loaded = new TransactionRepository(file.getPath()).loadTransactions();
+        assertEquals(2, loaded.size());
+        assertEquals("Prima", loaded.get(0).getDescription());
+        assertEquals("Dopo lo snapshot", loaded.get(1).getDescription());
+        
+        // Dopo la compattazione il log e' vuoto e le righe stanno nel file base
+        repository.compact();
+        assertFalse(new File(file.getPath() + ".wal").exists());
+        assertEquals(2, new TransactionRepository(file.getPath()).loadTransactions().size());
+        
+        // Un CSV riscritto a mano non deve usare lo snapshot vecchio
+        new TransactionRepository(file.getPath() + ".altro").saveTransactions(Arrays.asList(
+            TransactionFactory.createExpense(30.0, "Riscritto", category, LocalDate.of(2024, 2, 1))));
+        assertTrue(new File(file.getPath() + ".altro").renameTo(file));
+        
+        loaded = new TransactionRepository(file.getPath()).loadTransactions();
+        assertEquals(1, loaded.size());
+        assertEquals("Riscritto", loaded.get(0).getDescription());
+        
+        // Una riga cambiata a mano in mezzo al file, con la stessa lunghezza, scarta lo snapshot
+        List<Transaction> rows = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            rows.add(TransactionFactory.createExpense(1.0 + i, i == 150 ? "Centrale" : "Riga " + i, category,
+                    LocalDate.of(2024, 1, 1).plusDays(i)));
+        }
+        new TransactionRepository(file.getPath()).saveTransactions(rows);
+        assertTrue(new File(file.getPath() + ".snap").exists());
+        
+        String csv = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        Files.write(file.toPath(), csv.replace("Centrale", "Cambiata").getBytes(StandardCharsets.UTF_8));
+        assertTrue(file.setLastModified(file.lastModified() + 5000));
+        
+        loaded = new TransactionRepository(file.getPath()).loadTransactions();
+        assertEquals(300, loaded.size());
+        assertEquals("Cambiata", loaded.get(150).getDescription());
+    }
+    
+    // Test Group commit - ogni append torna con la riga su disco, le righe in differita solo se richiesto
+    @Test
+    public void testGroupCommitAppend() throws Exception {
+        File file = new File(folder.getRoot(), "transactions.csv");
+        Category category = new Category("Cibo", "Spese cibo");
+        
+        // Piu' thread insieme: nessuna riga resta in attesa quando append torna
+        TransactionRepository batched = new TransactionRepository(file.getPath(), LoadMode.SEQUENTIAL,
+                CommitPolicy.perBatch(100, 5));
+        List<Thread> threads = new ArrayList<>();
+        List<Exception> failures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < 50; i++) {
+                        batched.appendTransaction(TransactionFactory.createExpense(1.0, "Riga " + thread + "-" + i, category));
+                    }
+                } catch (Exception e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(failures.isEmpty());
+        assertFalse(batched.hasPendingWrites());
+        assertEquals(200, new TransactionRepository(file.getPath()).loadTransactions().size());
+        
+        // In differita le righe aspettano il prossimo intervallo
+        TransactionRepository deferred = new TransactionRepository(file.getPath(), LoadMode.SEQUENTIAL,
+                CommitPolicy.perInterval(100, 60000));
+        deferred.appendTransaction(TransactionFactory.createExpense(1.0, "In attesa", category));
+        assertTrue(deferred.hasPendingWrites());
+        deferred.sync();
+        assertFalse(deferred.hasPendingWrites());
+        
+        TransactionRepository perWrite = new TransactionRepository(file.getPath(), LoadMode.SEQUENTIAL,
+                CommitPolicy.perWrite());
+        perWrite.appendTransaction(TransactionFactory.createExpense(1.0, "Subito su disco", category));
+        assertFalse(perWrite.hasPendingWrites());
+        assertEquals(202, new TransactionRepository(file.getPath()).loadTransactions().size());
+        
+        batched.close();
+        deferred.close();
+        perWrite.close();
+    }
+    
+    // Test Group commit - in differita le righe di un gruppo fallito restano in attesa e
+    // l'header viene scritto quando il file e' ancora vuoto
+    @Test
+    public void testDeferredCommitKeepsFailedRows() throws Exception {
+        Assume.assumeTrue(new File("/dev/full").exists());
+        File file = new File(folder.getRoot(), "transactions.csv");
+        File wal = new File(file.getPath() + ".wal");
+        Category category = new Category("Cibo", "Spese cibo");
+        
+        // /dev/full rifiuta ogni scrittura: il commit per dimensione del gruppo fallisce
+        Files.createSymbolicLink(wal.toPath(), new File("/dev/full").toPath());
+        TransactionRepository deferred = new TransactionRepository(file.getPath(), LoadMode.SEQUENTIAL,
+                CommitPolicy.perInterval(1, 60000));
+        deferred.appendTransaction(TransactionFactory.createExpense(1.0, "Prima", category));
+        assertTrue(deferred.hasPendingWrites());
+        try {
+            deferred.sync();
+            fail("Il sync doveva fallire");
+        } catch (DataAccessException e) {
+            assertTrue(deferred.hasPendingWrites());
+        }
+        try {
+            deferred.close();
+            fail("La chiusura doveva fallire");
+        } catch (DataAccessException e) {
+            assertTrue(deferred.hasPendingWrites());
+        }
+        
+        // Col disco di nuovo disponibile la riga rimasta esce insieme alla successiva
+        Files.delete(wal.toPath());
+        deferred.appendTransaction(TransactionFactory.createExpense(2.0, "Seconda", category));
+        deferred.sync();
+        assertFalse(deferred.hasPendingWrites());
+        deferred.close();
+        
+        List<Transaction> loaded = new TransactionRepository(file.getPath()).loadTransactions();
+        assertEquals(2, loaded.size());
+        assertEquals("Prima", loaded.get(0).getDescription());
+        assertEquals("Seconda", loaded.get(1).getDescription());
+    }
+    
+    // Test Service - il salvataggio scrive solo se qualcosa e' cambiato
+    @Test
+    public void testSaveAllOnlyWhenChanged() throws ValidationException, DataAccessException {
+        File file = new File(folder.getRoot(), "transactions.csv");
+        ExpenseService service = new ExpenseService(file.getPath());
+        assertFalse(service.hasUnsavedChanges());
+        
+        service.addExpense(25.0, "Pizza", service.getCategory("Cibo"), LocalDate.of(2024, 5, 10));
+        assertTrue(service.hasUnsavedChanges());
+        
+        service.saveAll();
+        assertFalse(service.hasUnsavedChanges());
+        service.saveAll(); // Niente da fare
+        service.close();
+        
+        ExpenseService reloaded = new ExpenseService(file.getPath());
+        assertEquals(1, reloaded.getAllTransactions().size());
+        assertFalse(reloaded.hasUnsavedChanges());
+        reloaded.close();
+    }
+    
+    // Test ID - restano uguali dopo il riavvio, modifica e cancellazione per ID
+    @Test
+    public void testStableIdsUpdateAndDelete() throws ValidationException, DataAccessException {
+        File file = new File(folder.getRoot(), "transactions.csv");
+        ExpenseService service = new ExpenseService(file.getPath());
+        Category food = service.getCategory("Cibo");
+        
+        service.addExpense(10.0, "Pane", food, LocalDate.of(2024, 5, 1));
+        service.addExpense(20.0, "Frutta", food, LocalDate.of(2024, 5, 2));
+        service.addExpense(30.0, "Pesce", food, LocalDate.of(2024, 5, 3));
+        List<Transaction> added = service.getAllTransactions();
+        String breadId = added.get(0).getId();
+        String fruitId = added.get(1).getId();
+        
+        assertEquals(16, breadId.length());
+        assertEquals("Frutta", service.findTransaction(fruitId).getDescription());
+        
+        service.updateTransaction(fruitId, 25.0, "Frutta e verdura", food, LocalDate.of(2024, 5, 2));
+        assertTrue(service.deleteTransaction(breadId));
+        assertFalse(service.deleteTransaction(breadId));
+        assertNull(service.findTransaction(breadId));
+        assertNull(service.updateTransaction(breadId, 1.0, "Pane", food, LocalDate.of(2024, 5, 1)));
+        // L'ordine di inserimento resta quello originale
+        assertEquals(fruitId, service.getAllTransactions().get(0).getId());
+        assertEquals("Pesce", service.getAllTransactions().get(1).getDescription());
+        assertEquals("Pesce", service.findTransaction(service.getAllTransactions().get(1).getId()).getDescription());
+        service.close();
+        
+        ExpenseService reloaded = new ExpenseService(file.getPath());
+        assertEquals(2, reloaded.getAllTransactions().size());
+        assertNull(reloaded.findTransaction(breadId));
+        assertEquals("Frutta e verdura", reloaded.findTransaction(fruitId).getDescription());
+        assertEquals(25.0, reloaded.findTransaction(fruitId).getAmount(), 0.0);
+        reloaded.close();
+        
+        // Anche dopo la compattazione del log
+        new TransactionRepository(file.getPath()).compact();
+        List<Transaction> compacted = new TransactionRepository(file.getPath()).loadTransactions();
+        assertEquals(2, compacted.size());
+        assertEquals(fruitId, compacted.get(0).getId());
+    }
+    
+    // Test Cancellazione in testa - molte righe, ordine e ricerche giuste in ogni archivio
+    @Test
+    public void testDeleteNearFrontOfLargeLedger() throws IOException, DataAccessException {
+        for (StoreMode mode : StoreMode.values()) {
+            File file = new File(folder.getRoot(), "ledger-" + mode + ".csv");
+            StringBuilder csv = new StringBuilder("ID,Tipo,Importo,Descrizione,Categoria,Data\n");
+            csv.append(",EXPENSE,3.00,Senza ID,Cibo,2024-01-01\n");
+            for (int i = 0; i < 2000; i++) {
+                if (i == 10) {
+                    csv.append("vecchio-1,EXPENSE,4.00,Vecchio,Cibo,2024-01-01\n");
+                }
+                csv.append(String.format("%016x", i + 1)).append(",EXPENSE,1.00,Riga ").append(i)
+                        .append(",Cibo,2024-01-01\n");
+            }
+            Files.write(file.toPath(), csv.toString().getBytes(StandardCharsets.UTF_8));
+            
+            ExpenseService service = new ExpenseService(new TransactionRepository(file.getPath()), mode);
+            String blankId = service.getAllTransactions().get(0).getId();
+            for (int i = 0; i < 10; i++) {
+                assertTrue(service.deleteTransaction(String.format("%016x", i + 1)));
+            }
+            // Le righe dopo quelle cancellate si trovano ancora per ID
+            assertEquals("Riga 1999", service.findTransaction(String.format("%016x", 2000)).getDescription());
+            assertEquals("Vecchio", service.findTransaction("vecchio-1").getDescription());
+            
+            List<Transaction> all = service.getAllTransactions();
+            assertEquals(1992, all.size());
+            assertEquals("Senza ID", all.get(0).getDescription());
+            assertEquals("vecchio-1", all.get(1).getId());
+            assertEquals("Riga 10", all.get(2).getDescription());
+            assertEquals("Riga 1999", all.get(1991).getDescription());
+            assertEquals("vecchio-1", service.findTransaction("vecchio-1").getId());
+            assertEquals("Riga 1500", service.findTransaction(String.format("%016x", 1501)).getDescription());
+            assertTrue(service.deleteTransaction("vecchio-1"));
+            assertEquals("Riga 10", service.getAllTransactions().get(1).getDescription());
+            service.close();
+            
+            // La riga senza ID ha lo stesso ID a ogni caricamento
+            ExpenseService reloaded = new ExpenseService(new TransactionRepository(file.getPath()), mode);
+            assertEquals(1991, reloaded.getAllTransactions().size());
+            assertEquals(blankId, reloaded.getAllTransactions().get(0).getId());
+            assertEquals("Senza ID", reloaded.findTransaction(blankId).getDescription());
+            assertNull(reloaded.findTransaction("vecchio-1"));
+            reloaded.close();
+        }
+    }
+    
+    // Test Registro categorie - una sola istanza per nome, condivisa da file e servizio
+    @Test
+    public void testCategoryRegistryInterning() throws ValidationException, DataAccessException {
+        File file = new File(folder.getRoot(), "transactions.csv");
+        ExpenseService service = new ExpenseService(file.getPath());
+        service.addExpense(10.0, "Pane", new Category("Cibo", "Creata a mano"), LocalDate.of(2024, 5, 1));
+        service.addExpense(15.0, "Regalo", new Category("Regali", "Regali vari"), LocalDate.of(2024, 5, 2));
+        service.addExpense(20.0, "Frutta", service.getCategory("Cibo"), LocalDate.of(2024, 5, 3));
+        service.close();
+        
+        ExpenseService reloaded = new ExpenseService(file.getPath());
+        CategoryRegistry registry = reloaded.getCategoryRegistry();
+        List<Transaction> loaded = reloaded.getAllTransactions();
+        
+        assertSame(reloaded.getCategory("Cibo"), loaded.get(0).getCategory());
+        assertSame(loaded.get(0).getCategory(), loaded.get(2).getCategory());
+        assertSame(registry.get(loaded.get(1).getCategory().getId()), loaded.get(1).getCategory());
+        assertEquals(CategoryRegistry.DEFAULT_DESCRIPTION, reloaded.getCategory("Regali").getDescription());
+        reloaded.close();
+    }
+    
+    // Test Streaming - le strategie lavorano direttamente sul file
+    @Test
+    public void testStrategiesOverRepositoryStream() throws ValidationException, DataAccessException {
+        File file = new File(folder.getRoot(), "transactions.csv");
+        ExpenseService service = new ExpenseService(file.getPath());
+        service.addExpense(40.0, "Spesa", service.getCategory("Cibo"), LocalDate.of(2024, 6, 1));
+        service.addExpense(60.0, "Treno", service.getCategory("Trasporti"), LocalDate.of(2024, 6, 2));
+        service.addIncome(1000.0, "Stipendio", service.getCategory("Stipendio"), LocalDate.of(2024, 6, 27));
+        service.close();
+        new TransactionRepository(file.getPath()).compact();
+        
+        // Modifiche rimaste solo nel log
+        service = new ExpenseService(file.getPath());
+        String trainId = service.getAllTransactions().get(1).getId();
+        service.updateTransaction(trainId, 80.0, "Treno", service.getCategory("Trasporti"), LocalDate.of(2024, 6, 2));
+        service.addExpense(5.0, "Caffe", service.getCategory("Cibo"), LocalDate.of(2024, 6, 3));
+        service.close();
+        
+        TransactionRepository repository = new TransactionRepository(file.getPath());
+        Map<String, Object> totals;
+        try (Stream<Transaction> stream = repository.streamTransactions()) {
+            totals = new MonthlyTotalStrategy().calculate(stream);
+        }
+        assertEquals(1000.0, (Double) totals.get("totaleEntrate"), 0.001);
+        assertEquals(125.0, (Double) totals.get("totaleSpese"), 0.001);
+        
+        Map<String, Object> categories;
+        try (Stream<Transaction> stream = repository.streamTransactions()) {
+            categories = new CategorySummaryStrategy().calculate(stream);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Double> categorieSpese = (Map<String, Double>) categories.get("categorieSpese");
+        assertEquals(45.0, categorieSpese.get("Cibo"), 0.001);
+        assertEquals(80.0, categorieSpese.get("Trasporti"), 0.001);
+    }
+    
+    // Test Partizioni mensili - le modifiche toccano solo i mesi coinvolti
+    @Test
+    public void testMonthlyPartitionsPruneByDate() throws ValidationException, DataAccessException {
+        File file = new File(folder.getRoot(), "transactions.csv");
+        ExpenseService service = new ExpenseService(new TransactionRepository(file.getPath(),
+                StorageLayout.MONTHLY_PARTITIONS, LoadMode.SEQUENTIAL, CommitPolicy.defaultPolicy(), new CategoryRegistry()));
+        Category food = service.getCategory("Cibo");
+        service.addExpense(10.0, "Pane", food, LocalDate.of(2024, 1, 10));
+        service.addExpense(20.0, "Frutta", food, LocalDate.of(2024, 1, 20));
+        service.addIncome(1000.0, "Stipendio", service.getCategory("Stipendio"), LocalDate.of(2024, 2, 27));
+        service.addExpense(30.0, "Pesce", food, LocalDate.of(2024, 3, 5));
+        List<Transaction> added = service.getAllTransactions();
+        
+        // Spostata da gennaio a febbraio, e una cancellata a marzo
+        service.updateTransaction(added.get(1).getId(), 25.0, "Frutta", food, LocalDate.of(2024, 2, 1));
+        service.deleteTransaction(added.get(3).getId());
+        service.close();
+        
+        TransactionRepository repository = new TransactionRepository(file.getPath(),
+                StorageLayout.MONTHLY_PARTITIONS, LoadMode.PARALLEL, CommitPolicy.defaultPolicy(), new CategoryRegistry());
+        repository.compact();
+        
+        File directory = new File(folder.getRoot(), "transactions");
+        assertTrue(new File(directory, "2024-01.csv").exists());
+        assertTrue(new File(directory, "2024-02.csv").exists());
+        assertFalse(new File(directory, "2024-03.csv").exists());
+        
+        List<PartitionManifest> manifests = repository.getPartitionManifests();
+        assertEquals(2, manifests.size());
+        assertEquals(1, manifests.get(0).getRows());
+        assertEquals(2, manifests.get(1).getRows());
+        assertEquals(LocalDate.of(2024, 2, 1), manifests.get(1).getMinDate());
+        assertEquals(1000.0, manifests.get(1).getTotalIncome(), 0.001);
+        assertEquals(25.0, manifests.get(1).getTotalExpense(), 0.001);
+        
+        assertEquals(3, repository.loadTransactions().size());
+        
+        // Gennaio non serve: anche senza il suo file la lettura di febbraio funziona
+        assertTrue(new File(directory, "2024-01.csv").delete());
+        try (Stream<Transaction> stream = repository.streamTransactions(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 29))) {
+            assertEquals(2, stream.count());
+        }
+    }
+    
+    // Test Archivio a colonne - stessi risultati della lista di oggetti
+    @Test
+    public void testColumnarStoreMatchesObjects() throws ValidationException, DataAccessException {
+        File file = new File(folder.getRoot(), "transactions.csv");
+        ExpenseService service = new ExpenseService(file.getPath());
+        service.addExpense(12.5, "Pane", service.getCategory("Cibo"), LocalDate.of(2024, 7, 1));
+        service.addExpense(40.0, "Benzina", service.getCategory("Trasporti"), LocalDate.of(2024, 7, 2));
+        service.addExpense(7.25, "Pane", service.getCategory("Cibo"), LocalDate.of(2024, 7, 3));
+        service.addIncome(1500.0, "Stipendio", service.getCategory("Stipendio"), LocalDate.of(2024, 7, 27));
+        service.close();
+        
+        ExpenseService objects = new ExpenseService(new TransactionRepository(file.getPath()), StoreMode.OBJECTS);
+        ExpenseService columnar = new ExpenseService(new TransactionRepository(file.getPath()), StoreMode.COLUMNAR);
+        assertEquals(objects.getAllTransactions(), columnar.getAllTransactions());
+        assertEquals(objects.getTotals(), columnar.getTotals());
+        assertEquals(objects.getCategorySummary(), columnar.getCategorySummary());
+        
+        // Le viste hanno gli stessi valori della transazione salvata
+        Transaction fuel = objects.getAllTransactions().get(1);
+        Transaction view = columnar.findTransaction(fuel.getId());
+        assertEquals("Benzina", view.getDescription());
+        assertEquals(40.0, view.getAmount(), 0.0);
+        assertSame(columnar.getCategory("Trasporti"), view.getCategory());
+        assertEquals(LocalDate.of(2024, 7, 2), view.getDate());
+        
+        columnar.updateTransaction(fuel.getId(), 45.0, "Benzina", columnar.getCategory("Trasporti"), LocalDate.of(2024, 7, 2));
+        assertTrue(columnar.deleteTransaction(objects.getAllTransactions().get(0).getId()));
+        assertEquals(3, columnar.getAllTransactions().size());
+        assertEquals(52.25, (Double) columnar.getTotals().get("totaleSpese"), 0.001);
+        columnar.close();
+        objects.close();
+    }
+    
+    // Test Importi in centesimi - lettura senza double e somme esatte
+    @Test
+    public void testAmountsInCents() throws IOException, ValidationException {
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader("12.5,0.1,1.0E7,12.345,-3,7.\n"));
+        assertTrue(tokenizer.nextRecord());
+        assertEquals(1250, tokenizer.getCents(0));
+        assertEquals(10, tokenizer.getCents(1));
+        assertEquals(1000000000L, tokenizer.getCents(2));
+        assertEquals(1235, tokenizer.getCents(3));
+        assertEquals(-300, tokenizer.getCents(4));
+        assertEquals(700, tokenizer.getCents(5));
+        
+        assertEquals("12.50", Amounts.format(1250));
+        assertEquals("-0.05", Amounts.format(-5));
+        
+        // Con i double dieci spese da 0.10 non fanno esattamente 1.0
+        Category food = new Category("Cibo", "Spese per mangiare");
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            transactions.add(TransactionFactory.createExpense(0.1, "Caramella", food, LocalDate.of(2024, 8, 1)));
+        }
+        assertEquals(10, transactions.get(0).getAmountCents());
+        assertEquals(1.0, (Double) new MonthlyTotalStrategy().calculate(transactions).get("totaleSpese"), 0.0);
+        
+        long[] amounts = {100, 250, 400};
+        byte[] types = {0, 1, 1};
+        assertEquals(650, AmountKernels.sumWhere(amounts, types, (byte) 1, 3));
+        assertEquals(750, AmountKernels.sum(amounts, 3));
+    }
+    
+    // Test Archivio fuori heap - stessi valori, ordine per data e descrizioni condivise
+    @Test
+    public void testOffHeapStore() throws ValidationException {
+        CategoryRegistry registry = new CategoryRegistry();
+        Category food = registry.register("Cibo", "Spese per mangiare");
+        Category salary = registry.register("Stipendio", "Stipendio mensile");
+        
+        List<Transaction> objects = new ArrayList<>();
+        OffHeapTransactionStore store = new OffHeapTransactionStore(registry);
+        for (int i = 0; i < 70000; i++) {
+            Transaction transaction = i % 10 == 0
+                    ? TransactionFactory.createIncome(100.0, "Stipendio", salary, LocalDate.of(2024, 1, 1).plusDays(i % 365))
+                    : TransactionFactory.createExpense(1.25 + i % 7, "Spesa " + (i % 3), food, LocalDate.of(2024, 1, 1).plusDays(i % 365));
+            objects.add(transaction);
+            store.add(transaction);
+        }
+        
+        assertEquals(objects.size(), store.size());
+        assertEquals(objects.get(69999), store.get(69999));
+        assertEquals(objects.get(69999).getAmountCents(), store.get(69999).getAmountCents());
+        assertEquals("Spesa 1", store.get(1).getDescription());
+        assertEquals(store.getDescriptionRef(1), store.getDescriptionRef(4));
+        assertEquals(new MonthlyTotalStrategy().calculate(objects), new MonthlyTotalStrategy().calculate(store));
+        assertEquals(new CategorySummaryStrategy().calculate(objects), new CategorySummaryStrategy().calculate(store));
+        
+        // Stesso ordine dell'iteratore sugli oggetti
+        TransactionByDateIterator expected = new TransactionByDateIterator(objects);
+        ColumnsByDateIterator actual = new ColumnsByDateIterator(store);
+        while (expected.hasNext()) {
+            assertEquals(expected.next(), actual.next());
+        }
+        assertFalse(actual.hasNext());
+        
+        // Cancellazione in mezzo: le righe successive scorrono
+        store.remove(0);
+        assertEquals(objects.get(1), store.get(0));
+        assertEquals(69999, store.size());
+    }
+    
+    // Test Dizionario descrizioni - codici stabili, istanze condivise e filtro per codice
+    @Test
+    public void testDescriptionDictionary() throws Exception {
+        DescriptionDictionary dictionary = new DescriptionDictionary();
+        int code = dictionary.encode("Spesa supermercato");
+        char[] buffer = "xxSpesa supermercatoyy".toCharArray();
+        assertEquals(code, dictionary.encode(buffer, 2, 18));
+        assertEquals(DescriptionDictionary.NOT_FOUND, dictionary.find("Benzina"));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i + 1, dictionary.encode("Voce " + i));
+        }
+        assertEquals("Voce 500", dictionary.decode(501));
+        assertSame(dictionary.decode(code), dictionary.intern(new String("Spesa supermercato")));
+        
+        String path = new File(folder.getRoot(), "descrizioni.csv").getPath();
+        ExpenseService service = new ExpenseService(new TransactionRepository(path));
+        Category food = service.getCategory("Cibo");
+        for (int i = 0; i < 6; i++) {
+            service.addExpense(10.0 + i, i % 2 == 0 ? "Pranzo" : "Cena", food, LocalDate.of(2024, 5, 1 + i));
+        }
+        service.saveAll();
+        service.close();
+        // Righe nel file base: i caricamenti seguenti passano dallo snapshot
+        new TransactionRepository(path).compact();
+        
+        // Le descrizioni finiscono nel dizionario passato al caricamento, non in uno del repository
+        DescriptionDictionary loaded = new DescriptionDictionary();
+        List<Transaction> rows = new TransactionRepository(path).loadTransactions(loaded);
+        assertEquals(2, loaded.size());
+        assertSame(loaded.decode(loaded.find("Pranzo")), rows.get(0).getDescription());
+        
+        // Dopo il caricamento le righe uguali condividono la stessa stringa
+        for (StoreMode mode : StoreMode.values()) {
+            ExpenseService reloaded = new ExpenseService(new TransactionRepository(path), mode);
+            List<Transaction> lunches = reloaded.getTransactionsByDescription("Pranzo");
+            assertEquals(3, lunches.size());
+            assertEquals(36.0, lunches.stream().mapToDouble(Transaction::getAmount).sum(), 0.001);
+            assertTrue(reloaded.getTransactionsByDescription("Colazione").isEmpty());
+            if (mode == StoreMode.OBJECTS) {
+                assertSame(lunches.get(0).getDescription(), lunches.get(1).getDescription());
+            }
+            reloaded.close();
+        }
+    }
+    
+    // Test Riepilogo categorie per id - registri diversi e categorie non registrate insieme
+    @Test
+    public void testCategorySummaryByDenseId() throws ValidationException {
+        CategoryRegistry registry = new CategoryRegistry();
+        Category food = registry.register("Cibo", "Spese per mangiare");
+        Category transport = registry.register("Trasporti", "Auto e mezzi");
+        // Stesso id 0 di "Cibo" ma in un altro registro
+        Category travel = new CategoryRegistry().register("Viaggi", "Vacanze");
+        
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            transactions.add(TransactionFactory.createExpense(1.10, "Pane", food, LocalDate.of(2024, 1, 1)));
+        }
+        transactions.add(TransactionFactory.createExpense(20.0, "Treno", transport, LocalDate.of(2024, 1, 2)));
+        transactions.add(TransactionFactory.createExpense(300.0, "Albergo", travel, LocalDate.of(2024, 1, 3)));
+        transactions.add(TransactionFactory.createExpense(5.0, "Gelato", new Category("Cibo", "Non registrata"), LocalDate.of(2024, 1, 4)));
+        
+        @SuppressWarnings("unchecked")
+        Map<String, Double> totali = (Map<String, Double>) new CategorySummaryStrategy().calculate(transactions).get("categorieSpese");
+        assertEquals(3, totali.size());
+        assertEquals(115.0, totali.get("Cibo"), 0.0);
+        assertEquals(20.0, totali.get("Trasporti"), 0.0);
+        assertEquals(300.0, totali.get("Viaggi"), 0.0);
+    }
+    
+    // Test Totali incrementali - uguali a un ricalcolo completo dopo aggiunte, modifiche e cancellazioni
+    @Test
+    public void testIncrementalAggregates() throws Exception {
+        String path = new File(folder.getRoot(), "incrementali.csv").getPath();
+        ExpenseService service = new ExpenseService(new TransactionRepository(path));
+        Category food = service.getCategory("Cibo");
+        Category transport = service.getCategory("Trasporti");
+        
+        service.addIncome(2000.0, "Stipendio", service.getCategory("Stipendio"), LocalDate.of(2024, 3, 1));
+        service.addExpense(45.30, "Spesa", food, LocalDate.of(2024, 3, 5));
+        service.addExpense(60.0, "Benzina", transport, LocalDate.of(2024, 4, 2));
+        service.addExpense(12.0, "Bus", transport, LocalDate.of(2023, 12, 20));
+        
+        String benzina = service.getTransactionsByDescription("Benzina").get(0).getId();
+        String bus = service.getTransactionsByDescription("Bus").get(0).getId();
+        service.updateTransaction(benzina, 70.0, "Benzina", food, LocalDate.of(2024, 3, 9));
+        service.deleteTransaction(bus);
+        
+        List<Transaction> all = service.getAllTransactions();
+        assertEquals(new MonthlyTotalStrategy().calculate(all), service.getTotals());
+        assertEquals(new CategorySummaryStrategy().calculate(all), service.getCategorySummary());
+        
+        @SuppressWarnings("unchecked")
+        Map<String, Double> categorie = (Map<String, Double>) service.getCategorySummary().get("categorieSpese");
+        assertFalse(categorie.containsKey("Trasporti"));
+        
+        Map<String, Object> march = service.getMonthTotals(YearMonth.of(2024, 3));
+        assertEquals(2000.0, (Double) march.get("totaleEntrate"), 0.0);
+        assertEquals(115.30, (Double) march.get("totaleSpese"), 0.0);
+        assertEquals(0.0, (Double) service.getMonthTotals(YearMonth.of(2024, 4)).get("totaleSpese"), 0.0);
+        assertEquals(0.0, (Double) service.getMonthTotals(YearMonth.of(2023, 12)).get("totaleSpese"), 0.0);
+        service.close();
+        
+        // Dopo il caricamento si riparte dagli stessi totali, anche per colonne
+        ExpenseService reloaded = new ExpenseService(new TransactionRepository(path), StoreMode.COLUMNAR);
+        assertEquals(new MonthlyTotalStrategy().calculate(all), reloaded.getTotals());
+        assertEquals(march, reloaded.getMonthTotals(YearMonth.of(2024, 3)));
+        reloaded.close();
+    }
+    
+    // Test Calcolo parallelo - stessi risultati del calcolo sequenziale, su oggetti e colonne
+    @Test
+    public void testParallelStrategies() throws ValidationException {
+        CategoryRegistry registry = new CategoryRegistry();
+        Category[] categories = {
+            registry.register("Cibo", "Spese per mangiare"),
+            registry.register("Trasporti", "Auto e mezzi"),
+            registry.register("Utenze", "Bollette")
+        };
+        
+        List<Transaction> objects = new ArrayList<>();
+        ColumnarTransactionStore columns = new ColumnarTransactionStore(registry);
+        for (int i = 0; i < 50000; i++) {
+            LocalDate date = LocalDate.of(2022, 1, 1).plusDays(i % 900);
+            Transaction transaction = i % 25 == 0
+                    ? TransactionFactory.createIncome(1500.0, "Stipendio", categories[0], date)
+                    : TransactionFactory.createExpense(0.01 * (i % 5000) + 0.5, "Spesa", categories[i % 3], date);
+            objects.add(transaction);
+            columns.add(transaction);
+        }
+        
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelCalculationEngine engine = new ParallelCalculationEngine(pool, 1000);
+            MonthlyTotalStrategy totals = new MonthlyTotalStrategy();
+            CategorySummaryStrategy summary = new CategorySummaryStrategy();
+            
+            Map<String, Object> expectedTotals = totals.calculate(objects);
+            Map<String, Object> expectedSummary = summary.calculate(objects);
+            assertEquals(expectedTotals, engine.calculate(totals, objects));
+            assertEquals(expectedTotals, engine.calculate(totals, columns));
+            assertEquals(expectedSummary, engine.calculate(summary, objects));
+            assertEquals(expectedSummary, engine.calculate(summary, columns));
+            
+            // Anche i totali del mese sopravvivono all'unione delle parti
+            MonthlyTotalStrategy.Totals sequential = totals.createAccumulator();
+            for (Transaction transaction : objects) {
+                totals.accumulate(sequential, transaction);
+            }
+            assertEquals(totals.finishMonth(sequential, YearMonth.of(2023, 6)),
+                    totals.finishMonth(engine.accumulate(totals, columns), YearMonth.of(2023, 6)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    // Test Analisi in un passaggio - stessi risultati delle strategie singole, con i tempi
+    @Test
+    public void testFusedAnalytics() throws Exception {
+        CategoryRegistry registry = new CategoryRegistry();
+        Category food = registry.register("Cibo", "Spese per mangiare");
+        List<Transaction> objects = new ArrayList<>();
+        ColumnarTransactionStore columns = new ColumnarTransactionStore(registry);
+        for (int i = 0; i < 10000; i++) {
+            Transaction transaction = i % 10 == 0
+                    ? TransactionFactory.createIncome(100.0, "Entrata", food, LocalDate.of(2024, 1, 1 + i % 28))
+                    : TransactionFactory.createExpense(2.5, "Spesa", food, LocalDate.of(2024, 1, 1 + i % 28));
+            objects.add(transaction);
+            columns.add(transaction);
+        }
+        
+        // Strategia non in streaming: viene eseguita a parte
+        CalculationStrategy count = new CalculationStrategy() {
+            @Override
+            public Map<String, Object> calculate(List<Transaction> transactions) {
+                Map<String, Object> results = new HashMap<>();
+                results.put("righe", transactions.size());
+                return results;
+            }
+            @Override
+            public String getStrategyName() { return "Conteggio"; }
+            @Override
+            public String getDescription() { return "Conta le righe"; }
+        };
+        
+        AnalyticsEngine engine = new AnalyticsEngine(Arrays.asList(new MonthlyTotalStrategy(), new CategorySummaryStrategy(), count));
+        for (List<Transaction> list : Arrays.<List<Transaction>>asList(objects, columns)) {
+            AnalyticsReport report = engine.run(list);
+            assertEquals(new MonthlyTotalStrategy().calculate(objects), report.getResults("Totali"));
+            assertEquals(new CategorySummaryStrategy().calculate(objects), report.getResults("Categorie"));
+            assertEquals(10000, report.getResults("Conteggio").get("righe"));
+            assertEquals(10000, report.getRows());
+            assertTrue(report.getNanos("Totali") > 0);
+        }
+        
+        AnalyticsReport streamed = new AnalyticsEngine(Arrays.asList(new MonthlyTotalStrategy(), new CategorySummaryStrategy()))
+                .run(objects.stream());
+        assertEquals(new CategorySummaryStrategy().calculate(objects), streamed.getResults("Categorie"));
+        
+        // Nel servizio le statistiche registrate non rileggono le transazioni
+        ExpenseService service = new ExpenseService(new TransactionRepository(new File(folder.getRoot(), "analisi.csv").getPath()));
+        service.addExpense(10.0, "Pranzo", service.getCategory("Cibo"), LocalDate.of(2024, 2, 1));
+        AnalyticsReport statistics = service.getStatistics();
+        assertEquals(0, statistics.getRows());
+        assertEquals(service.getTotals(), statistics.getResults(service.getTotalsStrategy()));
+        assertEquals(1, service.runAnalytics(count, new MonthlyTotalStrategy()).getRows());
+        
+        // Strategie con lo stesso nome restano separate, si leggono per istanza
+        TopExpensesStrategy first = new TopExpensesStrategy(5);
+        TopExpensesStrategy second = new TopExpensesStrategy(5);
+        AnalyticsReport twice = service.runAnalytics(first, second);
+        assertEquals(Arrays.asList("Top 5", "Top 5"), twice.getStrategyNames());
+        assertNotNull(twice.getResults(first));
+        assertEquals(twice.getResults(first), twice.getResults(second));
+        service.close();
+    }
+    
+    // Test Serie mensile - intervalli con le somme cumulative, anche dopo aggiunte in mezzo
+    @Test
+    public void testMonthlyTimeSeries() throws Exception {
+        MonthlyTimeSeries series = new MonthlyTimeSeries();
+        series.add(YearMonth.of(2023, 3), true, 100000);
+        series.add(YearMonth.of(2023, 3), false, 2550);
+        series.add(YearMonth.of(2024, 1), false, 4000);
+        series.add(YearMonth.of(2025, 8), true, 50000);
+        
+        assertEquals(150000, series.getIncomeCents(YearMonth.of(2023, 3), YearMonth.of(2025, 8)));
+        assertEquals(2550, series.getExpenseCents(YearMonth.of(2023, 3), YearMonth.of(2023, 12)));
+        assertEquals(0, series.getIncomeCents(YearMonth.of(2023, 4), YearMonth.of(2025, 7)));
+        
+        // Aggiunta prima del primo mese e in un mese gia' sommato
+        series.add(YearMonth.of(2022, 12), false, 1000);
+        series.add(YearMonth.of(2024, 1), false, 500);
+        assertEquals(8050, series.getExpenseCents(null, null));
+        assertEquals(4500, series.getExpenseCents(YearMonth.of(2024, 1), YearMonth.of(2024, 1)));
+        assertEquals(150000 - 8050, series.getBalanceCents(null, null));
+        assertEquals(YearMonth.of(2022, 12), series.getFirstMonth());
+        assertEquals(4, series.toMap().size());
+        
+        ExpenseService service = new ExpenseService(new TransactionRepository(new File(folder.getRoot(), "serie.csv").getPath()));
+        Category food = service.getCategory("Cibo");
+        service.addExpense(30.0, "Spesa", food, LocalDate.of(2023, 3, 10));
+        service.addExpense(20.0, "Spesa", food, LocalDate.of(2024, 6, 1));
+        service.addIncome(1000.0, "Stipendio", service.getCategory("Stipendio"), LocalDate.of(2025, 8, 27));
+        
+        Map<String, Object> range = service.getTotals(YearMonth.of(2023, 3), YearMonth.of(2024, 12));
+        assertEquals(50.0, (Double) range.get("totaleSpese"), 0.0);
+        assertEquals(0.0, (Double) range.get("totaleEntrate"), 0.0);
+        assertEquals(950.0, (Double) service.getTotals(null, null).get("bilancio"), 0.0);
+        assertEquals(3, service.getMonthlySeries().toMap().size());
+        assertEquals(service.getMonthlySeries(), service.getTotals().get("serieMensile"));
+        service.close();
+    }
+    
+    // Test Indice per data - intervalli uguali a un filtro completo, anche dopo modifiche e ricaricamento
+    @Test
+    public void testDateRangeIndex() throws Exception {
+        String path = new File(folder.getRoot(), "intervalli.csv").getPath();
+        ExpenseService service = new ExpenseService(new TransactionRepository(path));
+        Category food = service.getCategory("Cibo");
+        Random random = new Random(42);
+        for (int i = 0; i < 300; i++) {
+            service.addExpense(1.0 + i, "Spesa " + i, food, LocalDate.of(2023, 1, 1).plusDays(random.nextInt(700)));
+        }
+        String moved = service.getAllTransactions().get(10).getId();
+        service.updateTransaction(moved, 5.0, "Spostata", food, LocalDate.of(2024, 2, 29));
+        service.deleteTransaction(service.getAllTransactions().get(20).getId());
+        service.close();
+        
+        LocalDate from = LocalDate.of(2023, 6, 1);
+        LocalDate to = LocalDate.of(2024, 2, 29);
+        for (ExpenseService current : Arrays.asList(service, new ExpenseService(new TransactionRepository(path)))) {
+            List<Transaction> expected = new ArrayList<>();
+            for (Transaction transaction : current.getAllTransactions()) {
+                if (!transaction.getDate().isBefore(from) && !transaction.getDate().isAfter(to)) {
+                    expected.add(transaction);
+                }
+            }
+            
+            List<Transaction> range = current.getTransactions(from, to);
+            assertEquals(expected.size(), range.size());
+            assertTrue(range.containsAll(expected));
+            assertTrue(range.contains(current.findTransaction(moved)));
+            for (int i = 1; i < range.size(); i++) {
+                assertFalse(range.get(i).getDate().isBefore(range.get(i - 1).getDate()));
+            }
+            
+            TransactionIterator iterator = current.getTransactionsByDate(from, to);
+            assertEquals(expected.size(), iterator.getTotalCount());
+            LocalDate previous = LocalDate.MAX;
+            while (iterator.hasNext()) {
+                LocalDate date = iterator.next().getDate();
+                assertFalse(date.isAfter(previous));
+                previous = date;
+            }
+            assertEquals(current.getAllTransactions().size(), current.getTransactions(null, null).size());
+        }
+    }
+    
+    // Test Albero categorie - totali dei gruppi aggiornati a ogni modifica e riepilogo per livello
+    @Test
+    public void testCategoryTree() throws Exception {
+        String path = new File(folder.getRoot(), "albero.csv").getPath();
+        ExpenseService service = new ExpenseService(new TransactionRepository(path));
+        Category house = service.getCategory("Casa");
+        Category rent = service.getCategory("Mutuo/Affitto");
+        assertSame(house, rent.getParent());
+        assertEquals(1, rent.getDepth());
+        assertTrue(house.getChildren().contains(service.getCategory("Utenze")));
+        
+        Category energy = service.addCategory("Luce", "Bolletta elettrica", "Utenze");
+        assertEquals(2, energy.getDepth());
+        assertSame(house, energy.getAncestorAt(0));
+        
+        service.addExpense(800.0, "Affitto", rent, LocalDate.of(2024, 1, 1));
+        service.addExpense(60.0, "Bolletta", energy, LocalDate.of(2024, 1, 5));
+        service.addExpense(25.0, "Spesa", service.getCategory("Cibo"), LocalDate.of(2024, 1, 6));
+        service.addIncome(2000.0, "Stipendio", service.getCategory("Stipendio"), LocalDate.of(2024, 1, 1));
+        assertEquals(860.0, service.getCategoryTotal("Casa"), 0.0);
+        assertEquals(60.0, service.getCategoryTotal("Utenze"), 0.0);
+        
+        String bill = service.getTransactionsByDescription("Bolletta").get(0).getId();
+        service.updateTransaction(bill, 75.0, "Bolletta", energy, LocalDate.of(2024, 1, 5));
+        assertEquals(875.0, service.getCategoryTotal("Casa"), 0.0);
+        
+        @SuppressWarnings("unchecked")
+        Map<String, Double> roots = (Map<String, Double>) service.getCategorySummary(0).get("categorieSpese");
+        assertEquals(875.0, roots.get("Casa"), 0.0);
+        assertEquals(25.0, roots.get("Cibo"), 0.0);
+        assertFalse(roots.containsKey("Luce"));
+        @SuppressWarnings("unchecked")
+        Map<String, Double> level1 = (Map<String, Double>) service.getCategorySummary(1).get("categorieSpese");
+        assertEquals(75.0, level1.get("Utenze"), 0.0);
+        
+        // Una categoria non puo' finire sotto una sua discendente
+        try {
+            service.addCategory("Casa", "Tutte le spese per la casa", "Luce");
+            fail("Doveva lanciare ValidationException");
+        } catch (ValidationException e) {
+            assertSame(house, rent.getParent());
+        }
+        service.close();
+        
+        // Dopo il caricamento i totali vengono ricostruiti
+        TransactionRepository repository = new TransactionRepository(path);
+        ExpenseService reloaded = new ExpenseService(repository, StoreMode.COLUMNAR);
+        assertEquals(800.0, reloaded.getCategoryTotal("Casa"), 0.0);
+        assertEquals(0.0, reloaded.getCategoryTotal("Stipendio"), 0.0);
+        
+        // Un secondo servizio sullo stesso registro non somma i suoi totali a quelli del primo,
+        // ma uno spostamento fatto da lui vale per entrambi
+        ExpenseService second = new ExpenseService(repository);
+        assertEquals(800.0, second.getCategoryTotal("Casa"), 0.0);
+        assertEquals(800.0, reloaded.getCategoryTotal("Casa"), 0.0);
+        second.addCategory("Luce", "Bolletta elettrica", "Utenze");
+        assertEquals(875.0, second.getCategoryTotal("Casa"), 0.0);
+        assertEquals(875.0, reloaded.getCategoryTotal("Casa"), 0.0);
+        reloaded.close();
+    }
+    
+    // Test Top N, percentili e mese maggiore - uguali a un ordinamento completo, anche in streaming
+    @Test
+    public void testTopNAndQuantiles() throws Exception {
+        CategoryRegistry registry = new CategoryRegistry();
+        Category food = registry.register("Cibo", "Spese per mangiare");
+        Category transport = registry.register("Trasporti", "Auto e mezzi");
+        Random random = new Random(7);
+        List<Transaction> objects = new ArrayList<>();
+        ColumnarTransactionStore columns = new ColumnarTransactionStore(registry);
+        for (int i = 0; i < 5001; i++) {
+            Transaction transaction = i % 50 == 0
+                    ? TransactionFactory.createIncome(5000.0, "Stipendio", food, LocalDate.of(2024, 1, 1).plusDays(i % 400))
+                    : TransactionFactory.createExpense(0.01 * (1 + random.nextInt(100000)), "Spesa",
+                            i % 3 == 0 ? transport : food, LocalDate.of(2024, 1, 1).plusDays(random.nextInt(400)));
+            objects.add(transaction);
+            columns.add(transaction);
+        }
+        
+        List<Transaction> expenses = new ArrayList<>();
+        for (Transaction transaction : objects) {
+            if (transaction.getType() == TransactionType.EXPENSE) {
+                expenses.add(transaction);
+            }
+        }
+        expenses.sort((a, b) -> Long.compare(b.getAmountCents(), a.getAmountCents()));
+        
+        TopExpensesStrategy top = new TopExpensesStrategy(10);
+        @SuppressWarnings("unchecked")
+        List<Transaction> largest = (List<Transaction>) top.calculate(objects).get("spesePiuGrandi");
+        assertEquals(10, largest.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(expenses.get(i).getAmountCents(), largest.get(i).getAmountCents());
+        }
+        assertEquals(top.calculate(objects), new ParallelCalculationEngine(ForkJoinPool.commonPool(), 500).calculate(top, columns));
+        
+        // Percentili "nearest rank" calcolati ordinando
+        long[] foodCents = expenses.stream().filter(t -> t.getCategory() == food).mapToLong(Transaction::getAmountCents).sorted().toArray();
+        Map<String, Object> quantiles = new CategoryQuantileStrategy().calculate(objects);
+        @SuppressWarnings("unchecked")
+        Map<String, Double> median = (Map<String, Double>) quantiles.get("medianaSpese");
+        @SuppressWarnings("unchecked")
+        Map<String, Double> p90 = (Map<String, Double>) quantiles.get("p90Spese");
+        assertEquals(Amounts.toDouble(foodCents[(foodCents.length + 1) / 2 - 1]), median.get("Cibo"), 0.0);
+        assertEquals(Amounts.toDouble(foodCents[(int) Math.ceil(0.9 * foodCents.length) - 1]), p90.get("Cibo"), 0.0);
+        assertEquals(quantiles, new CategoryQuantileStrategy().calculate(columns));
+        
+        Map<YearMonth, Long> perMonth = new TreeMap<>();
+        for (Transaction expense : expenses) {
+            perMonth.merge(YearMonth.from(expense.getDate()), expense.getAmountCents(), Long::sum);
+        }
+        Map.Entry<YearMonth, Long> best = perMonth.entrySet().stream().max(Map.Entry.comparingByValue()).get();
+        Map<String, Object> month = new LargestMonthStrategy().calculate(objects);
+        assertEquals(best.getKey(), month.get("meseMaggioreSpesa"));
+        assertEquals(Amounts.toDouble(best.getValue()), (Double) month.get("speseMeseMaggiore"), 0.0);
+        
+        // In streaming dal repository
+        TransactionRepository repository = new TransactionRepository(new File(folder.getRoot(), "topn.csv").getPath());
+        repository.saveTransactions(objects);
+        try (Stream<Transaction> stream = repository.streamTransactions()) {
+            @SuppressWarnings("unchecked")
+            List<Transaction> streamed = (List<Transaction>) top.calculate(stream).get("spesePiuGrandi");
+            assertEquals(largest, streamed);
+        }
+        repository.close();
+    }
+    
+    // Test Riassunti approssimati - quantili, distinti e piu' frequenti vicini ai valori esatti, anche per intervalli di mesi
+    @Test
+    public void testApproximateSketches() throws Exception {
+        CategoryRegistry registry = new CategoryRegistry();
+        Category food = registry.register("Cibo", "Alimentari");
+        Random random = new Random(11);
+        List<Transaction> objects = new ArrayList<>();
+        ColumnarTransactionStore columns = new ColumnarTransactionStore(registry);
+        for (int i = 0; i < 20000; i++) {
+            // 3000 descrizioni, le prime molto piu' frequenti
+            int shop = random.nextInt(10) < 5 ? random.nextInt(5) : random.nextInt(3000);
+            Transaction transaction = TransactionFactory.createExpense(0.01 * (1 + random.nextInt(100000)),
+                    "Negozio " + shop, food, LocalDate.of(2024, 1, 1).plusDays(random.nextInt(366)));
+            objects.add(transaction);
+            columns.add(transaction);
+        }
+        
+        long[] sorted = objects.stream().mapToLong(Transaction::getAmountCents).sorted().toArray();
+        Map<String, Object> quantiles = new ExpenseQuantileSketchStrategy().calculate(objects);
+        assertEquals(20000L, quantiles.get("speseStimate"));
+        assertEquals(Amounts.toDouble(sorted[10000]), (Double) quantiles.get("medianaStimata"), 20.0);
+        assertEquals(Amounts.toDouble(sorted[18000]), (Double) quantiles.get("p90Stimato"), 10.0);
+        assertEquals(Amounts.toDouble(sorted[19800]), (Double) quantiles.get("p99Stimato"), 2.0);
+        
+        DistinctCountStrategy distinct = DistinctCountStrategy.descriptions();
+        long exact = objects.stream().map(Transaction::getDescription).distinct().count();
+        long estimate = (Long) distinct.calculate(objects).get("distinti");
+        assertTrue(Math.abs(estimate - exact) < exact * 0.05);
+        
+        // Intervallo di mesi: solo il primo trimestre
+        MonthlySketches<HyperLogLog> perMonth = distinct.createAccumulator();
+        distinct.accumulateColumns(perMonth, columns);
+        long exactQuarter = objects.stream().filter(t -> t.getDate().isBefore(LocalDate.of(2024, 4, 1)))
+                .map(Transaction::getDescription).distinct().count();
+        long estimateQuarter = (Long) distinct.finishRange(perMonth, YearMonth.of(2024, 1), YearMonth.of(2024, 3)).get("distinti");
+        assertTrue(Math.abs(estimateQuarter - exactQuarter) < exactQuarter * 0.05);
+        assertEquals(12, perMonth.getMonths().size());
+        
+        HeavyHittersStrategy frequent = new HeavyHittersStrategy(5);
+        @SuppressWarnings("unchecked")
+        Map<String, Long> top = (Map<String, Long>) frequent.calculate(objects).get("piuFrequenti");
+        assertEquals(5, top.size());
+        for (int shop = 0; shop < 5; shop++) {
+            String description = "Negozio " + shop;
+            long count = objects.stream().filter(t -> t.getDescription().equals(description)).count();
+            assertTrue(top.containsKey(description));
+            assertTrue(top.get(description) >= count && top.get(description) < count + 100);
+        }
+        
+        // In parallelo i conteggi dei Count-Min sono identici
+        assertEquals(frequent.calculate(objects),
+                new ParallelCalculationEngine(ForkJoinPool.commonPool(), 1000).calculate(frequent, columns));
+        
+        // Nel servizio i riassunti restano aggiornati: le modifiche ricostruiscono solo il mese toccato
+        ExpenseService service = new ExpenseService(new TransactionRepository(new File(folder.getRoot(), "riassunti.csv").getPath()));
+        Category shop = service.getCategory("Cibo");
+        DistinctCountStrategy served = DistinctCountStrategy.descriptions();
+        ExpenseQuantileSketchStrategy servedQuantiles = new ExpenseQuantileSketchStrategy();
+        for (int i = 0; i < 300; i++) {
+            service.addExpense(1.0 + i, "Negozio " + (i % 40), shop, LocalDate.of(2024, 1, 1).plusDays(i));
+        }
+        service.registerSketches(served);
+        service.registerSketches(servedQuantiles);
+        service.addExpense(5.0, "Nuovo negozio", shop, LocalDate.of(2024, 2, 10));
+        List<Transaction> all = service.getAllTransactions();
+        service.updateTransaction(all.get(40).getId(), 3.0, "Spostato", shop, LocalDate.of(2024, 5, 5));
+        service.deleteTransaction(all.get(100).getId());
+        
+        List<Transaction> current = service.getAllTransactions();
+        MonthlySketches<HyperLogLog> expected = served.createAccumulator();
+        for (Transaction transaction : current) {
+            served.accumulate(expected, transaction);
+        }
+        assertEquals(served.finishRange(expected, YearMonth.of(2024, 2), YearMonth.of(2024, 5)),
+                service.getSketchResults(served, YearMonth.of(2024, 2), YearMonth.of(2024, 5)));
+        assertEquals(served.finish(expected), service.calculate(served));
+        assertEquals((long) current.size(), service.getSketchResults(servedQuantiles, null, null).get("speseStimate"));
+        assertNull(service.getSketchResults(new HeavyHittersStrategy(3), null, null));
+        service.close();
+    }
+    
+    // Test Cache risultati - richieste ripetute senza ricalcoli, una modifica invalida solo i mesi toccati
+    @Test
+    public void testStrategyResultCache() throws Exception {
+        ExpenseService service = new ExpenseService(new File(folder.getRoot(), "cache.csv").getPath());
+        Category food = service.getCategory("Cibo");
+        service.addExpense(100.0, "Spesa", food, LocalDate.of(2024, 1, 10));
+        service.addExpense(50.0, "Cena", food, LocalDate.of(2024, 2, 10));
+        StrategyResultCache cache = service.getResultCache();
+        
+        Map<String, Object> totals = service.getTotals();
+        assertSame(totals, service.getTotals());
+        Map<String, Object> january = service.getMonthTotals(YearMonth.of(2024, 1));
+        assertSame(january, service.getMonthTotals(YearMonth.of(2024, 1)));
+        service.getCategorySummary();
+        service.getCategorySummary();
+        assertEquals(3, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        
+        // Una spesa di febbraio: gennaio resta valido, i totali complessivi no
+        service.addExpense(30.0, "Pranzo", food, LocalDate.of(2024, 2, 20));
+        assertSame(january, service.getMonthTotals(YearMonth.of(2024, 1)));
+        assertNotSame(totals, service.getTotals());
+        assertEquals(180.0, (Double) service.getTotals().get("totaleSpese"), 0.001);
+        assertEquals(80.0, (Double) service.getMonthTotals(YearMonth.of(2024, 2)).get("totaleSpese"), 0.001);
+        
+        // Spostare la spesa a gennaio invalida entrambi i mesi
+        String id = service.getTransactions(LocalDate.of(2024, 2, 20), LocalDate.of(2024, 2, 20)).get(0).getId();
+        service.updateTransaction(id, 30.0, "Pranzo", food, LocalDate.of(2024, 1, 20));
+        assertEquals(130.0, (Double) service.getMonthTotals(YearMonth.of(2024, 1)).get("totaleSpese"), 0.001);
+        assertEquals(50.0, (Double) service.getMonthTotals(YearMonth.of(2024, 2)).get("totaleSpese"), 0.001);
+        
+        // Analisi: la seconda esecuzione usa solo la cache
+        TopExpensesStrategy top = new TopExpensesStrategy(2);
+        service.runAnalytics(top, new LargestMonthStrategy());
+        long hits = cache.getHits();
+        AnalyticsReport again = service.runAnalytics(top);
+        assertEquals(hits + 1, cache.getHits());
+        assertEquals(2, ((List<?>) again.getResults("Top 2").get("spesePiuGrandi")).size());
+        
+        // Un'istanza nuova con lo stesso limite ritrova il risultato, che nessuno puo' modificare
+        service.runAnalytics(new TopExpensesStrategy(2));
+        assertEquals(hits + 2, cache.getHits());
+        try {
+            ((List<?>) again.getResults(top).get("spesePiuGrandi")).clear();
+            fail("Risultato in cache modificabile");
+        } catch (UnsupportedOperationException e) {
+            assertEquals(2, ((List<?>) service.calculate(top).get("spesePiuGrandi")).size());
+        }
+        try {
+            ((MonthlyTimeSeries) service.getTotals().get("serieMensile")).add(YearMonth.of(2024, 3), false, 100);
+            fail("Serie in cache modificabile");
+        } catch (UnsupportedOperationException e) {
+            assertEquals(180.0, (Double) service.getTotals().get("totaleSpese"), 0.001);
+        }
+        service.close();
+        
+        // Il meno usato esce quando si supera la capacita'
+        StrategyResultCache small = new StrategyResultCache(2);
+        CalculationStrategy strategy = new MonthlyTotalStrategy();
+        Map<String, Object> first = small.get(strategy, HashMap::new, 1);
+        small.get(strategy, HashMap::new, 2);
+        small.get(strategy, HashMap::new, 1);
+        small.get(strategy, HashMap::new, 3);
+        assertEquals(2, small.size());
+        assertSame(first, small.get(strategy, HashMap::new, 1));
+        assertNull(small.find(strategy, 2));
+    }
+    
+    // Test Budget - avvisi solo quando una regola viene superata o rientra, anche per i gruppi di categorie
+    @Test
+    public void testBudgetAlerts() throws Exception {
+        ExpenseService service = new ExpenseService(new File(folder.getRoot(), "budget.csv").getPath());
+        Category food = service.getCategory("Cibo");
+        List<BudgetAlert> alerts = new ArrayList<>();
+        service.addBudgetListener(alerts::add);
+        BudgetRule foodBudget = service.addBudget("Cibo", 400.0);
+        BudgetRule home = service.addBudget("Casa", 1000.0);
+        BudgetRule overIncome = BudgetRule.expensesOverIncome();
+        service.addBudget(overIncome);
+        
+        service.addIncome(1500.0, "Stipendio", service.getCategory("Stipendio"), LocalDate.of(2024, 3, 1));
+        for (int i = 0; i < 5; i++) {
+            service.addExpense(90.0, "Spesa", food, LocalDate.of(2024, 3, 2 + i));
+        }
+        // Un solo avviso al passaggio sopra i 400€, non uno per spesa
+        assertEquals(1, alerts.size());
+        assertSame(foodBudget, alerts.get(0).getRule());
+        assertEquals(YearMonth.of(2024, 3), alerts.get(0).getMonth());
+        assertEquals(450.0, alerts.get(0).getSpent(), 0.0);
+        assertTrue(alerts.get(0).isExceeded());
+        service.addExpense(10.0, "Pane", food, LocalDate.of(2024, 3, 20));
+        assertEquals(1, alerts.size());
+        
+        // Le utenze contano per il gruppo Casa; il mese va anche oltre le entrate
+        service.addExpense(600.0, "Affitto", service.getCategory("Mutuo/Affitto"), LocalDate.of(2024, 3, 5));
+        service.addExpense(500.0, "Luce", service.getCategory("Utenze"), LocalDate.of(2024, 3, 6));
+        assertEquals(3, alerts.size());
+        assertSame(home, alerts.get(1).getRule());
+        assertSame(overIncome, alerts.get(2).getRule());
+        assertTrue(service.getBudgetMonitor().isExceeded(overIncome, YearMonth.of(2024, 3)));
+        assertFalse(service.getBudgetMonitor().isExceeded(foodBudget, YearMonth.of(2024, 4)));
+        
+        // Modifica che resta oltre il limite: nessun avviso; cancellazione che rientra: avviso
+        String luce = service.getTransactionsByDescription("Luce").get(0).getId();
+        service.updateTransaction(luce, 450.0, "Luce", service.getCategory("Utenze"), LocalDate.of(2024, 3, 6));
+        assertEquals(3, alerts.size());
+        service.deleteTransaction(luce);
+        assertEquals(5, alerts.size());
+        assertFalse(alerts.get(3).isExceeded());
+        assertFalse(alerts.get(4).isExceeded());
+        
+        try {
+            service.addBudget("Inesistente", 100.0);
+            fail("Categoria inesistente accettata");
+        } catch (ValidationException e) {
+            // Atteso
+        }
+        service.close();
+        
+        // Dopo il caricamento a colonne: la regola nuova legge i mesi gia' oltre il limite senza avvisi
+        ExpenseService columnar = new ExpenseService(new TransactionRepository(new File(folder.getRoot(), "budget.csv").getPath()),
+                StoreMode.COLUMNAR);
+        List<BudgetAlert> later = new ArrayList<>();
+        columnar.addBudgetListener(later::add);
+        BudgetRule reloadedFood = columnar.addBudget("Cibo", 400.0);
+        assertTrue(columnar.getBudgetMonitor().isExceeded(reloadedFood, YearMonth.of(2024, 3)));
+        columnar.addExpense(500.0, "Gas", columnar.getCategory("Utenze"), LocalDate.of(2024, 4, 2));
+        assertFalse(columnar.getBudgetMonitor().isExceeded(reloadedFood, YearMonth.of(2024, 4)));
+        
+        // Spostare Utenze sotto Cibo ricalcola solo i contatori delle categorie con regole
+        columnar.addCategory("Utenze", "Bollette varie", "Cibo");
+        assertTrue(columnar.getBudgetMonitor().isExceeded(reloadedFood, YearMonth.of(2024, 4)));
+        assertTrue(later.isEmpty());
+        columnar.close();
+    }
+    
+    // Test Snapshot dopo la compattazione - una riga modificata in mezzo al file non viene letta dal vecchio snapshot
+    @Test
+    public void testSnapshotAfterCompaction() throws Exception {
+        File file = new File(folder.getRoot(), "transactions.csv");
+        TransactionRepository repository = new TransactionRepository(file.getPath());
+        Category food = new Category("Cibo", "Spese cibo");
+        List<Transaction> rows = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            rows.add(TransactionFactory.createExpense(10.0, "Riga " + i, food, LocalDate.of(2024, 1, 1)));
+        }
+        repository.saveTransactions(rows);
+        repository.close();
+        
+        ExpenseService service = new ExpenseService(file.getPath());
+        String id = rows.get(300).getId();
+        service.updateTransaction(id, 19.0, "Riga 300", service.getCategory("Cibo"), LocalDate.of(2024, 1, 1));
+        service.close();
+        TransactionRepository compacting = new TransactionRepository(file.getPath());
+        compacting.compact();
+        compacting.close();
+        
+        ExpenseService reloaded = new ExpenseService(file.getPath());
+        assertEquals(19.0, reloaded.findTransaction(id).getAmount(), 0.0);
+        reloaded.close();
+    }
+    
+    // Test Caricamento fuori heap - file e log letti direttamente nelle colonne, posizioni per ID senza boxing
+    @Test
+    public void testOffHeapStreamingLoad() throws Exception {
+        File file = new File(folder.getRoot(), "transactions.csv");
+        ExpenseService service = new ExpenseService(file.getPath());
+        Category food = service.getCategory("Cibo");
+        for (int i = 0; i < 50; i++) {
+            service.addExpense(1.0 + i, "Spesa " + i, food, LocalDate.of(2024, 1, 1).plusDays(i));
+        }
+        service.saveAll();
+        List<Transaction> saved = service.getAllTransactions();
+        service.close();
+        new TransactionRepository(file.getPath()).compact();
+        
+        service = new ExpenseService(file.getPath());
+        service.updateTransaction(saved.get(10).getId(), 99.0, "Modificata", food, LocalDate.of(2024, 6, 1));
+        service.deleteTransaction(saved.get(20).getId());
+        service.addExpense(7.0, "Dal log", food, LocalDate.of(2024, 3, 1));
+        service.close();
+        
+        // Le colonne si riempiono dallo stesso caricamento degli oggetti, snapshot compreso
+        File snapshot = new File(file.getPath() + ".snap");
+        snapshot.delete();
+        ExpenseService offHeap = new ExpenseService(new TransactionRepository(file.getPath()), StoreMode.OFF_HEAP);
+        assertTrue(snapshot.exists());
+        ExpenseService objects = new ExpenseService(new TransactionRepository(file.getPath()));
+        assertEquals(objects.getAllTransactions(), offHeap.getAllTransactions());
+        assertEquals(50, offHeap.getAllTransactions().size());
+        assertEquals(99.0, offHeap.findTransaction(saved.get(10).getId()).getAmount(), 0.0);
+        assertNull(offHeap.findTransaction(saved.get(20).getId()));
+        assertEquals(objects.getTransactions(LocalDate.of(2024, 1, 10), LocalDate.of(2024, 1, 31)),
+                offHeap.getTransactions(LocalDate.of(2024, 1, 10), LocalDate.of(2024, 1, 31)));
+        objects.close();
+        offHeap.close();
+        
+        // Compattazione interrotta tra due partizioni: la riga spostata e' in entrambi i mesi
+        File partitioned = new File(folder.getRoot(), "interrotta.csv");
+        File directory = new File(folder.getRoot(), "interrotta");
+        ExpenseService monthly = new ExpenseService(new TransactionRepository(partitioned.getPath(),
+                StorageLayout.MONTHLY_PARTITIONS, LoadMode.SEQUENTIAL, CommitPolicy.defaultPolicy(), new CategoryRegistry()));
+        monthly.addExpense(10.0, "Pane", monthly.getCategory("Cibo"), LocalDate.of(2024, 1, 10));
+        monthly.addExpense(20.0, "Frutta", monthly.getCategory("Cibo"), LocalDate.of(2024, 1, 20));
+        monthly.close();
+        new TransactionRepository(partitioned.getPath(), StorageLayout.MONTHLY_PARTITIONS, LoadMode.SEQUENTIAL,
+                CommitPolicy.defaultPolicy(), new CategoryRegistry()).compact();
+        
+        monthly = new ExpenseService(new TransactionRepository(partitioned.getPath(),
+                StorageLayout.MONTHLY_PARTITIONS, LoadMode.SEQUENTIAL, CommitPolicy.defaultPolicy(), new CategoryRegistry()));
+        String fruit = monthly.getTransactionsByDescription("Frutta").get(0).getId();
+        monthly.updateTransaction(fruit, 25.0, "Frutta", monthly.getCategory("Cibo"), LocalDate.of(2024, 2, 1));
+        monthly.close();
+        File january = new File(directory, "2024-01.csv");
+        byte[] oldJanuary = Files.readAllBytes(january.toPath());
+        byte[] log = Files.readAllBytes(new File(directory, "transactions.wal").toPath());
+        TransactionRepository moved = new TransactionRepository(partitioned.getPath(), StorageLayout.MONTHLY_PARTITIONS,
+                LoadMode.SEQUENTIAL, CommitPolicy.defaultPolicy(), new CategoryRegistry());
+        moved.compact();
+        moved.close();
+        Files.write(january.toPath(), oldJanuary);
+        Files.write(new File(directory, "transactions.wal.compacting").toPath(), log);
+        
+        TransactionRepository interrupted = new TransactionRepository(partitioned.getPath(),
+                StorageLayout.MONTHLY_PARTITIONS, LoadMode.SEQUENTIAL, CommitPolicy.defaultPolicy(), new CategoryRegistry());
+        try (Stream<Transaction> stream = interrupted.streamTransactions()) {
+            assertEquals(2, stream.count());
+        }
+        ExpenseService columnar = new ExpenseService(interrupted, StoreMode.COLUMNAR);
+        assertEquals(2, columnar.getAllTransactions().size());
+        assertEquals(1, columnar.getTransactionsByDescription("Frutta").size());
+        assertEquals(LocalDate.of(2024, 2, 1), columnar.findTransaction(fruit).getDate());
+        assertEquals(35.0, columnar.getCategoryTotal("Cibo"), 0.0);
+        columnar.close();
+        
+        // Indice delle posizioni: cancellazioni in mezzo alle sequenze e ridimensionamenti
+        PositionIndex index = new PositionIndex();
+        for (int i = 0; i < 10000; i++) {
+            index.put(i * 1024L, i);
+        }
+        for (int i = 0; i < 10000; i += 2) {
+            assertEquals(i, index.remove(i * 1024L));
+        }
+        assertEquals(5000, index.size());
+        assertEquals(PositionIndex.NOT_FOUND, index.get(0));
+        assertEquals(PositionIndex.NOT_FOUND, index.remove(0));
+        for (int i = 1; i < 10000; i += 2) {
+            assertEquals(i, index.get(i * 1024L));
+        }
+    }
 }